@@ -9,4 +9,25 @@ import java.util.List;
 public interface AStarGraph<Vertex> {
     List<WeightedEdge<Vertex>> neighbors(Vertex v);
     double estimatedDistanceToGoal(Vertex s, Vertex goal);
+
+    /**
+     * Passes the target and weight of every outgoing edge of V to ACTION, in
+     * the order neighbors(V) lists them. This default just walks neighbors(V);
+     * graphs that can produce their edges without allocating should override it.
+     */
+    default void forEachNeighbor(Vertex v, EdgeConsumer<Vertex> action) {
+        for (WeightedEdge<Vertex> e : neighbors(v)) {
+            action.accept(e.to(), e.weight());
+        }
+    }
+
+    /**
+     * Returns true if edge weights are non-negative and the heuristic is
+     * consistent: for every edge v -> w, h(v, goal) <= weight + h(w, goal). A*
+     * then removes vertices in increasing order of priority, which lets it use
+     * a faster priority queue. Graphs have to opt in.
+     */
+    default boolean hasConsistentHeuristic() {
+        return false;
+    }
 }
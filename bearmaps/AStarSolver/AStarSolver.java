@@ -2,12 +2,13 @@ package bearmaps.proj2c;
 
 import java.util.*;
 
-import bearmaps.proj2ab.DoubleMapPQ;
-import edu.princeton.cs.algs4.Stopwatch;
+import bearmaps.DaryHeapMinPQ;
+import bearmaps.ExtrinsicMinPQ;
+import bearmaps.RadixHeapMinPQ;
 
 public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
     // private variables
-    private DoubleMapPQ<Vertex> pq;
+    private ExtrinsicMinPQ<Vertex> pq;
     private LinkedList<Vertex> solution;
     private SolverOutcome solvedOutcome;
     private HashMap<Vertex, Double> distTo;
@@ -19,6 +20,8 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
     private int numStates;
     private double weight;
     private double time;
+    /* relax, bound once so expanding a vertex allocates nothing for its edges. */
+    private final EdgeConsumer<Vertex> relaxer = this::relax;
 
     /* Constructor from Pseudocode
     - Create a PQ where each vertex v will have priority p equal to the sum of v’s
@@ -30,14 +33,28 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
         - relax all edges outgoing from p
      */
     public AStarSolver(AStarGraph<Vertex> input, Vertex start, Vertex end, double timeout) {
+        this(input, start, end, new CancellationToken(timeout));
+    }
+
+    /**
+     * Searches until TOKEN is cancelled or expires instead of for a fixed time.
+     * On TIMEOUT, numStatesExplored and explorationTime still report how far
+     * the search got.
+     */
+    public AStarSolver(AStarGraph<Vertex> input, Vertex start, Vertex end,
+                       CancellationToken token) {
         // Initialize variables
         numStates = 0;
         goal = end;
         solution = new LinkedList<Vertex>();
-        Stopwatch stopwatch = new Stopwatch();
 
         // Create a PQ where each vertex v will have priority p...
-        this.pq = new DoubleMapPQ<>();
+        // Priorities only grow when the heuristic is consistent, so a radix heap works.
+        if (input.hasConsistentHeuristic()) {
+            this.pq = new RadixHeapMinPQ<>();
+        } else {
+            this.pq = new DaryHeapMinPQ<>();
+        }
         this.input = input;
         distTo = new HashMap<>();
         edgeTo = new HashMap<>();
@@ -47,7 +64,12 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
         pq.add(start, distTo.get(start));
 
         // Repeat until the PQ is empty, PQ.getSmallest() is the goal, or timeout is exceeded:
-        while (stopwatch.elapsedTime() < timeout && pq.size() > 0) {
+        while (pq.size() > 0) {
+            if (token.shouldStop(numStates)) {
+                time = token.elapsedTime();
+                solvedOutcome = SolverOutcome.TIMEOUT;
+                return;
+            }
             this.current = pq.getSmallest();
             if (current.equals(goal)) {
                 solvedOutcome = SolverOutcome.SOLVED;
@@ -57,21 +79,14 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
                 }
                 solution.addFirst(start);
                 weight = distTo.get(current);
-                time = stopwatch.elapsedTime();
-                return;
-            } else if (stopwatch.elapsedTime() >= timeout) {
-                time = timeout;
-                solvedOutcome = SolverOutcome.TIMEOUT;
+                time = token.elapsedTime();
                 return;
-            } else {
-                numStates++;
-                pq.removeSmallest();
-                for (WeightedEdge<Vertex> e: input.neighbors(current)) {
-                    relax(e);
-                }
             }
+            numStates++;
+            pq.removeSmallest();
+            input.forEachNeighbor(current, relaxer);
         }
-        time = stopwatch.elapsedTime();
+        time = token.elapsedTime();
         solvedOutcome = SolverOutcome.UNSOLVABLE;
 
     }
@@ -81,16 +96,13 @@ public class AStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
     }
 
     /*
-    Relax pseudocode:
-    - p = e.from(), q = e.to(), w = e.weight()
+    Relax pseudocode, for an edge p -> q of weight w where p is current:
     - if distTo[p] + w < distTo[q]:
         - distTo[q] = distTo[p] + w
         - if q is in the PQ: changePriority(q, distTo[q] + h(q, goal))
         - if q is not in PQ: add(q, distTo[q] + h(q, goal))
      */
-    private void relax(WeightedEdge e) {
-        Vertex q = (Vertex) e.to();
-        double w = e.weight();
+    private void relax(Vertex q, double w) {
         double dist = distTo.get(current);
 
         if (!distTo.containsKey(q) || dist + w < distTo.get(q)) {
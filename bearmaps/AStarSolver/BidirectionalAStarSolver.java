@@ -0,0 +1,175 @@
+package bearmaps.proj2c;
+
+import java.util.*;
+
+import bearmaps.DaryHeapMinPQ;
+
+/**
+ * A* that searches forward from the start and backward from the goal at the
+ * same time, and stops once the two frontiers prove no shorter path can exist.
+ *
+ * Both searches use the average potential
+ *     p(v) = (h(v, goal) - h(start, v)) / 2
+ * (the forward search adds it to its distances, the backward search subtracts
+ * it), which keeps both searches consistent whenever h is. With it, the best
+ * path found through a vertex reached from both sides, of weight mu, is optimal
+ * as soon as the smallest forward priority plus the smallest backward priority
+ * is at least mu.
+ */
+public class BidirectionalAStarSolver<Vertex> implements ShortestPathsSolver<Vertex> {
+    // private variables
+    private ReversibleAStarGraph<Vertex> input;
+    private Vertex start;
+    private Vertex goal;
+    private DaryHeapMinPQ<Vertex> forwardPQ;
+    private DaryHeapMinPQ<Vertex> backwardPQ;
+    private HashMap<Vertex, Double> forwardDistTo;
+    private HashMap<Vertex, Double> backwardDistTo;
+    private HashMap<Vertex, Vertex> forwardEdgeTo;
+    private HashMap<Vertex, Vertex> backwardEdgeTo;
+    private LinkedList<Vertex> solution;
+    private SolverOutcome solvedOutcome;
+    private Vertex meeting;
+    private double mu;
+    private int numStates;
+    private double time;
+    /* The vertex whose edges are being relaxed, and relax bound for each side. */
+    private Vertex expanded;
+    private final EdgeConsumer<Vertex> forwardRelaxer = (q, w) ->
+            relax(q, w, forwardPQ, forwardDistTo, forwardEdgeTo, backwardDistTo, 1);
+    private final EdgeConsumer<Vertex> backwardRelaxer = (q, w) ->
+            relax(q, w, backwardPQ, backwardDistTo, backwardEdgeTo, forwardDistTo, -1);
+
+    public BidirectionalAStarSolver(ReversibleAStarGraph<Vertex> input, Vertex start,
+                                    Vertex end, double timeout) {
+        this(input, start, end, new CancellationToken(timeout));
+    }
+
+    /** Searches until TOKEN is cancelled or expires instead of for a fixed time. */
+    public BidirectionalAStarSolver(ReversibleAStarGraph<Vertex> input, Vertex start,
+                                    Vertex end, CancellationToken token) {
+        this.input = input;
+        this.start = start;
+        this.goal = end;
+        solution = new LinkedList<>();
+        numStates = 0;
+        mu = Double.POSITIVE_INFINITY;
+
+        forwardPQ = new DaryHeapMinPQ<>();
+        backwardPQ = new DaryHeapMinPQ<>();
+        forwardDistTo = new HashMap<>();
+        backwardDistTo = new HashMap<>();
+        forwardEdgeTo = new HashMap<>();
+        backwardEdgeTo = new HashMap<>();
+
+        forwardDistTo.put(start, 0.0);
+        backwardDistTo.put(end, 0.0);
+        forwardPQ.add(start, potential(start));
+        backwardPQ.add(end, -potential(end));
+        if (start.equals(end)) {
+            meeting = start;
+            mu = 0.0;
+        }
+
+        while (forwardPQ.size() > 0 && backwardPQ.size() > 0) {
+            if (token.shouldStop(numStates)) {
+                time = token.elapsedTime();
+                solvedOutcome = SolverOutcome.TIMEOUT;
+                return;
+            }
+            double forwardMin = forwardDistTo.get(forwardPQ.getSmallest())
+                    + potential(forwardPQ.getSmallest());
+            double backwardMin = backwardDistTo.get(backwardPQ.getSmallest())
+                    - potential(backwardPQ.getSmallest());
+            if (forwardMin + backwardMin >= mu) {
+                break;
+            }
+            numStates++;
+            /* Expand the side with the smaller fringe, which keeps the two balanced. */
+            if (forwardPQ.size() <= backwardPQ.size()) {
+                expanded = forwardPQ.removeSmallest();
+                input.forEachNeighbor(expanded, forwardRelaxer);
+            } else {
+                expanded = backwardPQ.removeSmallest();
+                input.forEachReverseNeighbor(expanded, backwardRelaxer);
+            }
+        }
+
+        time = token.elapsedTime();
+        if (meeting == null) {
+            solvedOutcome = SolverOutcome.UNSOLVABLE;
+            return;
+        }
+        solvedOutcome = SolverOutcome.SOLVED;
+        for (Vertex v = meeting; !v.equals(start); v = forwardEdgeTo.get(v)) {
+            solution.addFirst(v);
+        }
+        solution.addFirst(start);
+        for (Vertex v = meeting; !v.equals(end); ) {
+            v = backwardEdgeTo.get(v);
+            solution.addLast(v);
+        }
+    }
+
+    /* Returns the forward potential of V; the backward potential is its negation. */
+    private double potential(Vertex v) {
+        return (input.estimatedDistanceToGoal(v, goal)
+                - input.estimatedDistanceToGoal(start, v)) / 2;
+    }
+
+    /*
+    Relaxes the edge from expanded to Q of weight W for one side of the search,
+    SIGN picking the potential for that side. If the edge reaches a vertex the
+    other side has already reached, the path through it is a candidate for the
+    best start-to-goal path.
+     */
+    private void relax(Vertex q, double w, DaryHeapMinPQ<Vertex> pq,
+                       HashMap<Vertex, Double> distTo, HashMap<Vertex, Vertex> edgeTo,
+                       HashMap<Vertex, Double> otherDistTo, int sign) {
+        Vertex p = expanded;
+        double dist = distTo.get(p) + w;
+        if (distTo.containsKey(q) && dist >= distTo.get(q)) {
+            return;
+        }
+        distTo.put(q, dist);
+        edgeTo.put(q, p);
+        double priority = dist + sign * potential(q);
+        if (pq.contains(q)) {
+            pq.changePriority(q, priority);
+        } else {
+            pq.add(q, priority);
+        }
+        if (otherDistTo.containsKey(q) && dist + otherDistTo.get(q) < mu) {
+            mu = dist + otherDistTo.get(q);
+            meeting = q;
+        }
+    }
+
+    @Override
+    public SolverOutcome outcome() {
+        return solvedOutcome;
+    }
+
+    @Override
+    public List<Vertex> solution() {
+        return solution;
+    }
+
+    @Override
+    public double solutionWeight() {
+        if (meeting == null) {
+            return 0.0;
+        }
+        return mu;
+    }
+
+    @Override
+    public int numStatesExplored() {
+        return numStates;
+    }
+
+    @Override
+    public double explorationTime() {
+        return time;
+    }
+}
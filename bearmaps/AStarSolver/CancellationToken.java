@@ -0,0 +1,50 @@
+package bearmaps.proj2c;
+
+/**
+ * Tells a running search when to give up: either its deadline has passed or
+ * someone called cancel, possibly from another thread.
+ *
+ * Reading the clock on every expansion costs more than many expansions do, so
+ * solvers ask shouldStop with their expansion count and the token only looks at
+ * the clock once every CHECK_INTERVAL expansions. A search may therefore run up
+ * to CHECK_INTERVAL expansions past its deadline.
+ */
+public class CancellationToken {
+    /** How many expansions pass between two looks at the clock; a power of two. */
+    public static final int CHECK_INTERVAL = 1024;
+
+    private final long startNanos;
+    private final long deadlineNanos;
+    private volatile boolean cancelled;
+
+    /** Creates a token whose deadline is TIMEOUT seconds from now. */
+    public CancellationToken(double timeout) {
+        startNanos = System.nanoTime();
+        /* Clamp so that huge timeouts don't overflow into the past. */
+        deadlineNanos = startNanos + (long) Math.min(timeout * 1e9, Long.MAX_VALUE / 2);
+    }
+
+    /** Makes every search using this token stop at its next check. */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /** Returns true if cancel was called or the deadline has passed. */
+    public boolean isCancelled() {
+        return cancelled || System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    /**
+     * Returns true if a search that has made EXPANSIONS expansions should stop.
+     * Only checks once every CHECK_INTERVAL expansions, and always returns false
+     * in between.
+     */
+    public boolean shouldStop(int expansions) {
+        return (expansions & (CHECK_INTERVAL - 1)) == 0 && isCancelled();
+    }
+
+    /** Returns the number of seconds since this token was created. */
+    public double elapsedTime() {
+        return (System.nanoTime() - startNanos) / 1e9;
+    }
+}
@@ -0,0 +1,11 @@
+package bearmaps.proj2c;
+
+/**
+ * Receives the edges of a vertex one at a time, as the target and weight of
+ * each edge, so graphs can hand their edges to a search without building a
+ * WeightedEdge or a list for them.
+ */
+@FunctionalInterface
+public interface EdgeConsumer<Vertex> {
+    void accept(Vertex to, double weight);
+}
@@ -0,0 +1,25 @@
+package bearmaps.proj2c;
+
+import java.util.List;
+
+/**
+ * An AStarGraph that can also be walked backwards, as needed by searches that
+ * grow a second frontier from the goal.
+ */
+public interface ReversibleAStarGraph<Vertex> extends AStarGraph<Vertex> {
+    /**
+     * Returns one edge from V to U for every edge from U to V in this graph,
+     * with the same weight. That is, the outgoing edges of V in the reversed graph.
+     */
+    List<WeightedEdge<Vertex>> reverseNeighbors(Vertex v);
+
+    /**
+     * Passes the target and weight of every edge of reverseNeighbors(V) to
+     * ACTION, like forEachNeighbor does for neighbors(V).
+     */
+    default void forEachReverseNeighbor(Vertex v, EdgeConsumer<Vertex> action) {
+        for (WeightedEdge<Vertex> e : reverseNeighbors(v)) {
+            action.accept(e.to(), e.weight());
+        }
+    }
+}
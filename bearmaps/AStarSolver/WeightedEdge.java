@@ -1,5 +1,7 @@
 package bearmaps.proj2c;
 
+import java.util.Objects;
+
 /**
  * Utility class that represents a weighted edge.
  * Created by hug.
@@ -23,4 +25,19 @@ public class WeightedEdge<Vertex> {
     public double weight() {
         return weight;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof WeightedEdge)) {
+            return false;
+        }
+        WeightedEdge<?> other = (WeightedEdge<?>) o;
+        return Objects.equals(v, other.v) && Objects.equals(w, other.w)
+                && Double.compare(weight, other.weight) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(v, w, weight);
+    }
 }
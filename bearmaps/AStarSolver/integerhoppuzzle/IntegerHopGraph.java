@@ -1,6 +1,7 @@
 package bearmaps.proj2c.integerhoppuzzle;
 
 import bearmaps.proj2c.AStarGraph;
+import bearmaps.proj2c.EdgeConsumer;
 import bearmaps.proj2c.WeightedEdge;
 
 import java.util.ArrayList;
@@ -23,10 +24,26 @@ public class IntegerHopGraph implements AStarGraph<Integer> {
         return neighbors;
     }
 
+    /** Passes the same five hops as neighbors(V), without building edges. */
+    @Override
+    public void forEachNeighbor(Integer v, EdgeConsumer<Integer> action) {
+        action.accept(v * v, 10);
+        action.accept(v * 2, 5);
+        action.accept(v / 2, 5);
+        action.accept(v - 1, 1);
+        action.accept(v + 1, 1);
+    }
+
     @Override
     public double estimatedDistanceToGoal(Integer s, Integer goal) {
         // possibly fun challenge: Try to find an admissible heuristic that
         // speeds up your search. This is tough!
         return 0;
     }
+
+    /** Edge weights are positive and the heuristic is 0. */
+    @Override
+    public boolean hasConsistentHeuristic() {
+        return true;
+    }
 }
@@ -1,6 +1,6 @@
 package bearmaps.proj2c.lectureexample;
 
-import bearmaps.proj2c.AStarGraph;
+import bearmaps.proj2c.ReversibleAStarGraph;
 import bearmaps.proj2c.WeightedEdge;
 
 import java.util.ArrayList;
@@ -10,7 +10,7 @@ import java.util.List;
  * A very simple (and literal) example of an AStarGraph.
  * Created by hug.
  */
-public class WeightedDirectedGraph implements AStarGraph<Integer> {
+public class WeightedDirectedGraph implements ReversibleAStarGraph<Integer> {
     /* Represents the list of edges from a single vertex. */
     private class EdgeList {
         private List<WeightedEdge<Integer>> list;
@@ -20,11 +20,14 @@ public class WeightedDirectedGraph implements AStarGraph<Integer> {
     }
 
     private EdgeList[] adj;
+    private EdgeList[] reverseAdj;
 
     public WeightedDirectedGraph(int V) {
         adj = new EdgeList[V];
+        reverseAdj = new EdgeList[V];
         for (int i = 0; i < V; i += 1) {
             adj[i] = new EdgeList();
+            reverseAdj[i] = new EdgeList();
         }
     }
 
@@ -33,6 +36,11 @@ public class WeightedDirectedGraph implements AStarGraph<Integer> {
         return adj[v].list;
     }
 
+    @Override
+    public List<WeightedEdge<Integer>> reverseNeighbors(Integer v) {
+        return reverseAdj[v].list;
+    }
+
     /* Very crude heuristic that just returns the weight
        of the smallest edge out of vertex s.
      */
@@ -51,6 +59,7 @@ public class WeightedDirectedGraph implements AStarGraph<Integer> {
     public void addEdge(int p, int q, double w) {
         WeightedEdge<Integer> e = new WeightedEdge<>(p, q, w);
         adj[p].list.add(e);
+        reverseAdj[q].list.add(new WeightedEdge<>(q, p, w));
     }
 
 }
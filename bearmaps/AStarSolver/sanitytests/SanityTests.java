@@ -1,6 +1,8 @@
 package bearmaps.proj2c.sanitytests;
 
 import bearmaps.proj2c.AStarSolver;
+import bearmaps.proj2c.BidirectionalAStarSolver;
+import bearmaps.proj2c.CancellationToken;
 import bearmaps.proj2c.ShortestPathsSolver;
 import bearmaps.proj2c.SolverOutcome;
 import bearmaps.proj2c.lectureexample.WeightedDirectedGraph;
@@ -79,5 +81,54 @@ public class SanityTests {
         assertEquals(expectedOutcome, actualOutcome);
     }
 
+    @Test
+    public void testBidirectionalStart0Goal6() {
+        WeightedDirectedGraph wdg = lectureGraph();
+        ShortestPathsSolver<Integer> solver = new BidirectionalAStarSolver<>(wdg, 0, 6, 10);
+        assertEquals(List.of(0, 1, 4, 6), solver.solution());
+        assertEquals(10.0, solver.solutionWeight(), 1e-9);
+        assertEquals(SolverOutcome.SOLVED, solver.outcome());
+    }
+
+    @Test
+    public void testBidirectionalStart0Goal0() {
+        WeightedDirectedGraph wdg = lectureGraph();
+        ShortestPathsSolver<Integer> solver = new BidirectionalAStarSolver<>(wdg, 0, 0, 10);
+        assertEquals(List.of(0), solver.solution());
+        assertEquals(SolverOutcome.SOLVED, solver.outcome());
+    }
+
+    @Test
+    public void testBidirectionalStart6Goal0() {
+        WeightedDirectedGraph wdg = lectureGraph();
+        ShortestPathsSolver<Integer> solver = new BidirectionalAStarSolver<>(wdg, 6, 0, 10);
+        assertEquals(List.of(), solver.solution());
+        assertEquals(SolverOutcome.UNSOLVABLE, solver.outcome());
+    }
 
+    @Test
+    public void testBidirectionalMatchesAStar() {
+        WeightedDirectedGraph wdg = lectureGraph();
+        for (int start = 0; start < 7; start++) {
+            for (int goal = 0; goal < 7; goal++) {
+                ShortestPathsSolver<Integer> expected = new AStarSolver<>(wdg, start, goal, 10);
+                ShortestPathsSolver<Integer> actual =
+                        new BidirectionalAStarSolver<>(wdg, start, goal, 10);
+                assertEquals(expected.outcome(), actual.outcome());
+                assertEquals(expected.solutionWeight(), actual.solutionWeight(), 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testCancelledSearchStops() {
+        WeightedDirectedGraph wdg = lectureGraph();
+        CancellationToken token = new CancellationToken(10);
+        token.cancel();
+        ShortestPathsSolver<Integer> solver = new AStarSolver<>(wdg, 0, 6, token);
+        assertEquals(SolverOutcome.TIMEOUT, solver.outcome());
+        assertEquals(0, solver.numStatesExplored());
+        solver = new BidirectionalAStarSolver<>(wdg, 0, 6, token);
+        assertEquals(SolverOutcome.TIMEOUT, solver.outcome());
+    }
 }
@@ -64,4 +64,10 @@ public class BoardGraph implements AStarGraph<Board> {
 
         return Math.abs(b1row - b2row) + Math.abs(b1col - b2col);
     }
+
+    /** Every move shifts one tile by one square, so the Manhattan distance changes by 1. */
+    @Override
+    public boolean hasConsistentHeuristic() {
+        return true;
+    }
 }
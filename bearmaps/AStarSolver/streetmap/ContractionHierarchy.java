@@ -0,0 +1,224 @@
+package bearmaps.proj2c.streetmap;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A contraction hierarchy over an IndexedStreetGraph, as built by
+ * HierarchyBuilder. Every vertex has a rank, and every vertex keeps only its
+ * edges to higher ranked vertices (the upward graph). An edge is either an
+ * original road segment or a shortcut that stands for the two edges through
+ * the vertex it was contracted around.
+ *
+ * Because street graphs are symmetric, the same upward graph serves both the
+ * forward search from the start and the backward search from the goal; see
+ * HierarchySolver.
+ */
+public class ContractionHierarchy {
+    /** "BMCH" in ASCII, at the start of every hierarchy file. */
+    private static final int MAGIC = 0x424d4348;
+    private static final int VERSION = 1;
+
+    private final IndexedStreetGraph graph;
+    private final int[] rank;
+    private final int[] offsets;
+    private final int[] targets;
+    private final double[] weights;
+    private final int[] middles;
+
+    ContractionHierarchy(IndexedStreetGraph graph, int[] rank, int[] offsets,
+                         int[] targets, double[] weights, int[] middles) {
+        this.graph = graph;
+        this.rank = rank;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.middles = middles;
+    }
+
+    public IndexedStreetGraph graph() {
+        return graph;
+    }
+
+    /** Returns the first upward edge slot of vertex V; firstEdge(V + 1) ends them. */
+    int firstEdge(int v) {
+        return offsets[v];
+    }
+
+    int target(int e) {
+        return targets[e];
+    }
+
+    double weight(int e) {
+        return weights[e];
+    }
+
+    /**
+     * Appends to PATH the OSM ids of the original path that the hierarchy edge
+     * U - V stands for, excluding U and including V.
+     */
+    void unpack(int u, int v, List<Long> path) {
+        int low = rank[u] < rank[v] ? u : v;
+        int high = low == u ? v : u;
+        int end = offsets[low + 1];
+        int middle = -1;
+        boolean found = false;
+        for (int e = offsets[low]; e < end && !found; e++) {
+            if (targets[e] == high) {
+                middle = middles[e];
+                found = true;
+            }
+        }
+        if (!found) {
+            throw new IllegalStateException("No hierarchy edge between " + graph.id(u)
+                    + " and " + graph.id(v));
+        }
+        if (middle < 0) {
+            path.add(graph.id(v));
+        } else {
+            unpack(u, middle, path);
+            unpack(middle, v, path);
+        }
+    }
+
+    /**
+     * Writes this hierarchy to the file at path FILENAME. Vertices are stored by
+     * OSM id, so the file can be read back against any indexing of the same graph.
+     * The header records the graph's edge count and fingerprint, so that a
+     * hierarchy of an edited map over the same nodes is not read back.
+     */
+    public void write(String filename) throws IOException {
+        int n = rank.length;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(graph.firstEdge(n));
+            out.writeLong(fingerprint(graph));
+            out.writeInt(targets.length);
+            for (int v = 0; v < n; v++) {
+                out.writeLong(graph.id(v));
+                out.writeInt(rank[v]);
+                out.writeInt(offsets[v + 1] - offsets[v]);
+            }
+            for (int e = 0; e < targets.length; e++) {
+                out.writeInt(targets[e]);
+                out.writeDouble(weights[e]);
+                out.writeInt(middles[e]);
+            }
+        }
+    }
+
+    /**
+     * Reads the hierarchy in the file at path FILENAME and maps it onto GRAPH.
+     * Throws an IOException if the file is not a hierarchy of GRAPH, or if any
+     * count or index in it is out of range.
+     */
+    public static ContractionHierarchy read(String filename, IndexedStreetGraph graph)
+            throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(filename)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(filename + " is not a contraction hierarchy file");
+            }
+            int n = in.readInt();
+            if (n != graph.size() || in.readInt() != graph.firstEdge(n)
+                    || in.readLong() != fingerprint(graph)) {
+                throw new IOException(filename + " was built for a different graph");
+            }
+            int m = in.readInt();
+            if (m < 0) {
+                throw new IOException("negative edge count " + m + " in " + filename);
+            }
+
+            /* toGraph[i] is the graph index of the i-th vertex in the file. */
+            int[] toGraph = new int[n];
+            int[] fileDegree = new int[n];
+            int[] rank = new int[n];
+            int[] offsets = new int[n + 1];
+            boolean[] seen = new boolean[n];
+            boolean[] ranked = new boolean[n];
+            long total = 0;
+            for (int i = 0; i < n; i++) {
+                long id = in.readLong();
+                toGraph[i] = graph.indexOf(id);
+                if (toGraph[i] < 0) {
+                    throw new IOException(filename + " refers to unknown node " + id);
+                }
+                if (seen[toGraph[i]]) {
+                    throw new IOException(filename + " lists node " + id + " twice");
+                }
+                seen[toGraph[i]] = true;
+                int r = readIndex(in, n, filename);
+                if (ranked[r]) {
+                    throw new IOException(filename + " gives rank " + r + " twice");
+                }
+                ranked[r] = true;
+                rank[toGraph[i]] = r;
+                fileDegree[i] = in.readInt();
+                if (fileDegree[i] < 0) {
+                    throw new IOException("negative degree " + fileDegree[i] + " in " + filename);
+                }
+                total += fileDegree[i];
+                offsets[toGraph[i] + 1] = fileDegree[i];
+            }
+            if (total != m) {
+                throw new IOException(filename + " has " + m + " edges but degrees adding up to "
+                        + total);
+            }
+            for (int v = 0; v < n; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+
+            int[] targets = new int[m];
+            double[] weights = new double[m];
+            int[] middles = new int[m];
+            for (int i = 0; i < n; i++) {
+                int e = offsets[toGraph[i]];
+                for (int k = 0; k < fileDegree[i]; k++, e++) {
+                    targets[e] = toGraph[readIndex(in, n, filename)];
+                    weights[e] = in.readDouble();
+                    int middle = in.readInt();
+                    middles[e] = middle == -1 ? -1 : toGraph[checkIndex(middle, n, filename)];
+                }
+            }
+            return new ContractionHierarchy(graph, rank, offsets, targets, weights, middles);
+        }
+    }
+
+    /* Reads an index, throwing an IOException unless it is in [0, N). */
+    private static int readIndex(DataInputStream in, int n, String filename) throws IOException {
+        return checkIndex(in.readInt(), n, filename);
+    }
+
+    private static int checkIndex(int i, int n, String filename) throws IOException {
+        if (i < 0 || i >= n) {
+            throw new IOException("index " + i + " out of range in " + filename);
+        }
+        return i;
+    }
+
+    /*
+    Returns a hash of every edge of GRAPH by the OSM ids of its ends and its
+    weight. The edges are summed, so any indexing of the same graph gives the
+    same fingerprint, while moving, adding or removing a road changes it.
+     */
+    private static long fingerprint(IndexedStreetGraph graph) {
+        long sum = 0;
+        for (int v = 0; v < graph.size(); v++) {
+            for (int e = graph.firstEdge(v); e < graph.firstEdge(v + 1); e++) {
+                long h = graph.id(v) * 0x9e3779b97f4a7c15L + graph.id(graph.target(e));
+                h = h * 0x9e3779b97f4a7c15L + Double.doubleToLongBits(graph.weight(e));
+                sum += h ^ (h >>> 29);
+            }
+        }
+        return sum;
+    }
+}
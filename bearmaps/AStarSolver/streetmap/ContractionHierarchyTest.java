@@ -0,0 +1,175 @@
+package bearmaps.proj2c.streetmap;
+
+import bearmaps.proj2c.AStarSolver;
+import bearmaps.proj2c.ShortestPathsSolver;
+import bearmaps.proj2c.SolverOutcome;
+import bearmaps.proj2c.WeightedEdge;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class ContractionHierarchyTest {
+    private static final String BERKELEY = "bearmaps/AStarSolver/input/berkeley-street-data.simple";
+    private static final double DELTA = 1e-9;
+
+    /* Checks that ENGINE answers like plain A* on G for seeded random pairs. */
+    private static void assertMatchesAStar(StreetMapGraph g, RouteEngine engine, long seed) {
+        IndexedStreetGraph graph = g.indexed();
+        Random random = new Random(seed);
+        int solved = 0;
+        int unsolvable = 0;
+        for (int i = 0; i < 300; i++) {
+            long start = graph.id(random.nextInt(graph.size()));
+            long end = graph.id(random.nextInt(graph.size()));
+            ShortestPathsSolver<Long> expected = new AStarSolver<>(g, start, end, 60);
+            ShortestPathsSolver<Long> actual = engine.shortestPath(start, end, 60);
+            assertEquals(expected.outcome(), actual.outcome());
+            assertEquals(expected.solutionWeight(), actual.solutionWeight(), DELTA);
+            if (actual.outcome() == SolverOutcome.SOLVED) {
+                solved++;
+                assertPathWeighs(g, actual.solution(), start, end, actual.solutionWeight());
+            } else {
+                unsolvable++;
+                assertTrue(actual.solution().isEmpty());
+            }
+        }
+        /* The Berkeley graph has several components, so both kinds of pair come up. */
+        assertTrue(solved > 0);
+        assertTrue(unsolvable > 0);
+    }
+
+    /* Checks that PATH runs from START to END over edges of G adding up to WEIGHT. */
+    private static void assertPathWeighs(StreetMapGraph g, List<Long> path, long start,
+                                         long end, double weight) {
+        assertEquals(start, (long) path.get(0));
+        assertEquals(end, (long) path.get(path.size() - 1));
+        double total = 0;
+        for (int i = 0; i + 1 < path.size(); i++) {
+            double edge = Double.POSITIVE_INFINITY;
+            for (WeightedEdge<Long> e : g.neighbors(path.get(i))) {
+                if (e.to().equals(path.get(i + 1))) {
+                    edge = Math.min(edge, e.weight());
+                }
+            }
+            assertTrue("no edge " + path.get(i) + " - " + path.get(i + 1),
+                    edge < Double.POSITIVE_INFINITY);
+            total += edge;
+        }
+        assertEquals(weight, total, DELTA);
+    }
+
+    @Test
+    public void testMatchesAStar() {
+        StreetMapGraph g = StreetMapGraph.readFromSimpleFormat(BERKELEY);
+        ContractionHierarchy ch = new HierarchyBuilder(g.indexed()).build();
+        assertMatchesAStar(g, new RouteEngine(g, ch, null), 4);
+    }
+
+    @Test
+    public void testSameStartAndEnd() {
+        StreetMapGraph g = StreetMapGraph.readFromSimpleFormat(BERKELEY);
+        RouteEngine engine = new RouteEngine(g, new HierarchyBuilder(g.indexed()).build(), null);
+        long v = g.indexed().id(0);
+        ShortestPathsSolver<Long> solver = engine.shortestPath(v, v, 60);
+        assertEquals(SolverOutcome.SOLVED, solver.outcome());
+        assertEquals(List.of(v), solver.solution());
+        assertEquals(0.0, solver.solutionWeight(), 0.0);
+        assertEquals(SolverOutcome.UNSOLVABLE, engine.shortestPath(v, -1L, 60).outcome());
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        StreetMapGraph g = StreetMapGraph.readFromSimpleFormat(BERKELEY);
+        File file = File.createTempFile("berkeley", ".ch");
+        file.deleteOnExit();
+        new HierarchyBuilder(g.indexed()).build().write(file.getPath());
+        ContractionHierarchy ch = ContractionHierarchy.read(file.getPath(), g.indexed());
+        assertMatchesAStar(g, new RouteEngine(g, ch, null), 5);
+    }
+
+    /* Checks that reading BYTES as a hierarchy of GRAPH fails with an IOException. */
+    private static void assertCorrupt(byte[] bytes, IndexedStreetGraph graph) throws IOException {
+        File file = File.createTempFile("corrupt", ".ch");
+        file.deleteOnExit();
+        Files.write(file.toPath(), bytes);
+        try {
+            ContractionHierarchy.read(file.getPath(), graph);
+            fail("read a corrupt hierarchy");
+        } catch (IOException e) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testCorruptFile() throws IOException {
+        IndexedStreetGraph graph = StreetMapGraph.readFromSimpleFormat(BERKELEY).indexed();
+        File file = File.createTempFile("berkeley", ".ch");
+        file.deleteOnExit();
+        new HierarchyBuilder(graph).build().write(file.getPath());
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        /*
+        The header is the magic number, version, vertex count, graph edge count,
+        fingerprint and hierarchy edge count; then 16 bytes for each vertex (id,
+        rank, degree) and 16 for each edge (target, weight, middle).
+         */
+        int n = graph.size();
+        int vertices = 28;
+        int edges = vertices + 16 * n;
+        for (int m : new int[]{-1, Integer.MAX_VALUE, ByteBuffer.wrap(bytes).getInt(24) + 1}) {
+            byte[] corrupt = bytes.clone();
+            ByteBuffer.wrap(corrupt).putInt(24, m);
+            assertCorrupt(corrupt, graph);
+        }
+        byte[] corrupt = bytes.clone();
+        ByteBuffer.wrap(corrupt).putInt(vertices + 12, -1);
+        assertCorrupt(corrupt, graph);
+        corrupt = bytes.clone();
+        ByteBuffer.wrap(corrupt).putLong(vertices, ByteBuffer.wrap(bytes).getLong(vertices + 16));
+        assertCorrupt(corrupt, graph);
+        corrupt = bytes.clone();
+        ByteBuffer.wrap(corrupt).putInt(vertices + 8, n);
+        assertCorrupt(corrupt, graph);
+        for (int offset : new int[]{edges, edges + 12}) {
+            for (int index : new int[]{n, -2}) {
+                corrupt = bytes.clone();
+                ByteBuffer.wrap(corrupt).putInt(offset, index);
+                assertCorrupt(corrupt, graph);
+            }
+        }
+        assertCorrupt(Arrays.copyOf(bytes, bytes.length - 1), graph);
+        assertCorrupt(Arrays.copyOf(bytes, edges), graph);
+    }
+
+    @Test
+    public void testHierarchyOfEditedGraphIsRejected() throws IOException {
+        IndexedStreetGraph graph = StreetMapGraph.readFromSimpleFormat(BERKELEY).indexed();
+        File file = File.createTempFile("berkeley", ".ch");
+        file.deleteOnExit();
+        new HierarchyBuilder(graph).build().write(file.getPath());
+
+        /* The same nodes and roads, with one node moved, so some weights differ. */
+        List<String> lines = Files.readAllLines(new File(BERKELEY).toPath(),
+                StandardCharsets.US_ASCII);
+        String[] fields = lines.get(1).split(",");
+        fields[1] = " " + (Double.parseDouble(fields[1]) + 0.001);
+        lines.set(1, String.join(",", fields));
+        File edited = File.createTempFile("edited", ".simple");
+        edited.deleteOnExit();
+        Files.write(edited.toPath(), lines, StandardCharsets.US_ASCII);
+        IndexedStreetGraph moved = StreetMapGraph.readFromSimpleFormat(edited.getPath()).indexed();
+        assertEquals(graph.size(), moved.size());
+        try {
+            ContractionHierarchy.read(file.getPath(), moved);
+            fail("read the hierarchy of another graph");
+        } catch (IOException e) {
+            /* Expected. */
+        }
+    }
+}
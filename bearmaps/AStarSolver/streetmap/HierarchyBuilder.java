@@ -0,0 +1,240 @@
+package bearmaps.proj2c.streetmap;
+
+import bearmaps.IntMinPQ;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Offline preprocessing step that turns an IndexedStreetGraph into a
+ * ContractionHierarchy.
+ *
+ * Vertices are contracted one at a time, least important first. Contracting v
+ * removes it from the remaining graph; for every pair of remaining neighbors
+ * u, w whose shortest path may run through v, a shortcut edge u - w remembering
+ * v is inserted, unless a local "witness" search finds a path at least as short
+ * that avoids v. Importance is the usual edge difference (shortcuts added minus
+ * edges removed) plus the number of already contracted neighbors, kept up to
+ * date lazily.
+ *
+ * Run main to build the hierarchy for a map and write it next to it:
+ *     java bearmaps.proj2c.streetmap.HierarchyBuilder berkeley-2019.osm.xml berkeley-2019.ch
+ */
+public class HierarchyBuilder {
+    /** Witness searches give up (and keep the shortcut) after settling this many vertices. */
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+    private static final int INITIAL_DEGREE = 4;
+
+    private final IndexedStreetGraph graph;
+    private final int n;
+    /* Undirected working graph: original edges plus shortcuts, one entry per direction. */
+    private final int[][] adjTo;
+    private final double[][] adjWeight;
+    private final int[][] adjMiddle;
+    private final int[] degree;
+    private final boolean[] contracted;
+    private final int[] deletedNeighbors;
+    private final SearchWorkspace witness;
+
+    public HierarchyBuilder(IndexedStreetGraph graph) {
+        this.graph = graph;
+        n = graph.size();
+        adjTo = new int[n][];
+        adjWeight = new double[n][];
+        adjMiddle = new int[n][];
+        degree = new int[n];
+        contracted = new boolean[n];
+        deletedNeighbors = new int[n];
+        witness = new SearchWorkspace(n);
+
+        for (int v = 0; v < n; v++) {
+            adjTo[v] = new int[INITIAL_DEGREE];
+            adjWeight[v] = new double[INITIAL_DEGREE];
+            adjMiddle[v] = new int[INITIAL_DEGREE];
+        }
+        for (int v = 0; v < n; v++) {
+            int end = graph.firstEdge(v + 1);
+            for (int e = graph.firstEdge(v); e < end; e++) {
+                addEdge(v, graph.target(e), graph.weight(e), -1);
+            }
+        }
+    }
+
+    /** Contracts every vertex and returns the resulting hierarchy. */
+    public ContractionHierarchy build() {
+        IntMinPQ order = new IntMinPQ(n);
+        for (int v = 0; v < n; v++) {
+            order.add(v, priority(v));
+        }
+
+        int[] rank = new int[n];
+        int next = 0;
+        while (order.size() > 0) {
+            int v = order.removeSmallest();
+            /* Lazy update: if v got less attractive since it was queued, requeue it. */
+            double p = priority(v);
+            if (order.size() > 0 && p > order.smallestPriority()) {
+                order.add(v, p);
+                continue;
+            }
+            contract(v, false);
+            contracted[v] = true;
+            rank[v] = next;
+            next++;
+            for (int i = 0; i < degree[v]; i++) {
+                int u = adjTo[v][i];
+                if (!contracted[u]) {
+                    deletedNeighbors[u]++;
+                    order.changePriority(u, priority(u));
+                }
+            }
+        }
+        return upwardHierarchy(rank);
+    }
+
+    /* Importance of contracting V next; smaller is contracted earlier. */
+    private double priority(int v) {
+        int remaining = 0;
+        for (int i = 0; i < degree[v]; i++) {
+            if (!contracted[adjTo[v][i]]) {
+                remaining++;
+            }
+        }
+        return contract(v, true) - remaining + deletedNeighbors[v];
+    }
+
+    /*
+    Finds the shortcuts needed to contract V and returns how many there are.
+    Only inserts them if SIMULATE is false.
+     */
+    private int contract(int v, boolean simulate) {
+        int shortcuts = 0;
+        for (int i = 0; i < degree[v]; i++) {
+            int u = adjTo[v][i];
+            if (contracted[u]) {
+                continue;
+            }
+            double maxVia = Double.NEGATIVE_INFINITY;
+            for (int j = i + 1; j < degree[v]; j++) {
+                if (!contracted[adjTo[v][j]]) {
+                    maxVia = Math.max(maxVia, adjWeight[v][i] + adjWeight[v][j]);
+                }
+            }
+            if (maxVia == Double.NEGATIVE_INFINITY) {
+                continue;
+            }
+            witnessSearch(u, v, maxVia);
+            for (int j = i + 1; j < degree[v]; j++) {
+                int w = adjTo[v][j];
+                if (contracted[w] || w == u) {
+                    continue;
+                }
+                double via = adjWeight[v][i] + adjWeight[v][j];
+                if (witness.distTo(w) > via) {
+                    shortcuts++;
+                    if (!simulate) {
+                        addEdge(u, w, via, v);
+                        addEdge(w, u, via, v);
+                    }
+                }
+            }
+        }
+        return shortcuts;
+    }
+
+    /* Dijkstra from SOURCE over the remaining graph without VIA, up to distance MAXDIST. */
+    private void witnessSearch(int source, int via, double maxDist) {
+        witness.reset();
+        IntMinPQ pq = witness.pq();
+        witness.reach(source, 0.0, -1);
+        pq.add(source, 0.0);
+        int settled = 0;
+        while (pq.size() > 0 && settled < WITNESS_SETTLE_LIMIT) {
+            if (pq.smallestPriority() > maxDist) {
+                break;
+            }
+            int p = pq.removeSmallest();
+            settled++;
+            double dist = witness.distTo(p);
+            for (int i = 0; i < degree[p]; i++) {
+                int q = adjTo[p][i];
+                if (q == via || contracted[q]) {
+                    continue;
+                }
+                double d = dist + adjWeight[p][i];
+                if (d < witness.distTo(q)) {
+                    witness.reach(q, d, p);
+                    if (pq.contains(q)) {
+                        pq.changePriority(q, d);
+                    } else {
+                        pq.add(q, d);
+                    }
+                }
+            }
+        }
+    }
+
+    /* Adds the edge FROM - TO, or lowers the existing one if this one is shorter. */
+    private void addEdge(int from, int to, double weight, int middle) {
+        if (from == to) {
+            return;
+        }
+        for (int i = 0; i < degree[from]; i++) {
+            if (adjTo[from][i] == to) {
+                if (weight < adjWeight[from][i]) {
+                    adjWeight[from][i] = weight;
+                    adjMiddle[from][i] = middle;
+                }
+                return;
+            }
+        }
+        int d = degree[from];
+        if (d == adjTo[from].length) {
+            adjTo[from] = Arrays.copyOf(adjTo[from], d * 2);
+            adjWeight[from] = Arrays.copyOf(adjWeight[from], d * 2);
+            adjMiddle[from] = Arrays.copyOf(adjMiddle[from], d * 2);
+        }
+        adjTo[from][d] = to;
+        adjWeight[from][d] = weight;
+        adjMiddle[from][d] = middle;
+        degree[from] = d + 1;
+    }
+
+    /* Keeps, for every vertex, only the edges leading to higher ranked vertices. */
+    private ContractionHierarchy upwardHierarchy(int[] rank) {
+        int[] offsets = new int[n + 1];
+        for (int v = 0; v < n; v++) {
+            int up = 0;
+            for (int i = 0; i < degree[v]; i++) {
+                if (rank[adjTo[v][i]] > rank[v]) {
+                    up++;
+                }
+            }
+            offsets[v + 1] = offsets[v] + up;
+        }
+        int[] targets = new int[offsets[n]];
+        double[] weights = new double[offsets[n]];
+        int[] middles = new int[offsets[n]];
+        for (int v = 0; v < n; v++) {
+            int e = offsets[v];
+            for (int i = 0; i < degree[v]; i++) {
+                if (rank[adjTo[v][i]] > rank[v]) {
+                    targets[e] = adjTo[v][i];
+                    weights[e] = adjWeight[v][i];
+                    middles[e] = adjMiddle[v][i];
+                    e++;
+                }
+            }
+        }
+        return new ContractionHierarchy(graph, rank, offsets, targets, weights, middles);
+    }
+
+    public static void main(String[] args) throws IOException {
+        StreetMapGraph smg = args[0].endsWith(".xml")
+                ? StreetMapGraph.readFromXMLParallel(args[0], ForkJoinPool.commonPool())
+                : StreetMapGraph.readFromSimpleFormat(args[0]);
+        ContractionHierarchy ch = new HierarchyBuilder(smg.indexed()).build();
+        ch.write(args[1]);
+    }
+}
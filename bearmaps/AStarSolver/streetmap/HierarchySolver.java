@@ -0,0 +1,185 @@
+package bearmaps.proj2c.streetmap;
+
+import bearmaps.IntMinPQ;
+import bearmaps.proj2c.CancellationToken;
+import bearmaps.proj2c.ShortestPathsSolver;
+import bearmaps.proj2c.SolverOutcome;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Point-to-point query over a ContractionHierarchy. Runs Dijkstra from the start
+ * and from the goal at the same time, each only following edges up the
+ * hierarchy, and keeps the best vertex reached from both sides. A side stops
+ * once its smallest distance is no better than the best path found so far.
+ * The winning path is unpacked back into the original OSM node ids.
+ *
+ * Vertices whose distance can be beaten by coming down from an already reached
+ * higher vertex are "stalled": they can't be on a shortest path, so their edges
+ * are not relaxed.
+ */
+public class HierarchySolver implements ShortestPathsSolver<Long> {
+    // private variables
+    private ContractionHierarchy ch;
+    private SearchWorkspace forward;
+    private SearchWorkspace backward;
+    private List<Long> solution;
+    private SolverOutcome solvedOutcome;
+    private int meeting;
+    private double mu;
+    private int numStates;
+    private double time;
+
+    /** Searches CH using two distinct, freshly reset workspaces. */
+    HierarchySolver(ContractionHierarchy ch, SearchWorkspace forward, SearchWorkspace backward,
+                    long start, long end, CancellationToken token) {
+        this(ch, forward, backward, new long[]{start}, new double[]{0.0}, new long[]{end},
+                new double[]{0.0}, token);
+    }
+
+    /**
+     * Searches CH using two distinct, freshly reset workspaces, for the
+     * cheapest way to leave from any vertex STARTS[i] at a cost of
+     * STARTCOSTS[i] and arrive at any vertex ENDS[j], paying ENDCOSTS[j] more.
+     * The forward search starts from every start at its cost, the backward one
+     * from every end at its cost. Unknown ids are ignored.
+     */
+    HierarchySolver(ContractionHierarchy ch, SearchWorkspace forward, SearchWorkspace backward,
+                    long[] starts, double[] startCosts, long[] ends, double[] endCosts,
+                    CancellationToken token) {
+        this.ch = ch;
+        this.forward = forward;
+        this.backward = backward;
+        solution = new ArrayList<>();
+        numStates = 0;
+        meeting = -1;
+        mu = Double.POSITIVE_INFINITY;
+
+        seed(forward, starts, startCosts);
+        seed(backward, ends, endCosts);
+        IntMinPQ forwardPQ = forward.pq();
+        IntMinPQ backwardPQ = backward.pq();
+        if (forwardPQ.size() == 0 || backwardPQ.size() == 0) {
+            time = token.elapsedTime();
+            solvedOutcome = SolverOutcome.UNSOLVABLE;
+            return;
+        }
+
+        while (true) {
+            if (token.shouldStop(numStates)) {
+                time = token.elapsedTime();
+                solvedOutcome = SolverOutcome.TIMEOUT;
+                return;
+            }
+            boolean forwardDone = forwardPQ.size() == 0 || forwardPQ.smallestPriority() >= mu;
+            boolean backwardDone = backwardPQ.size() == 0 || backwardPQ.smallestPriority() >= mu;
+            if (forwardDone && backwardDone) {
+                break;
+            }
+            if (!forwardDone && (backwardDone || forwardPQ.size() <= backwardPQ.size())) {
+                settle(forward, backward);
+            } else {
+                settle(backward, forward);
+            }
+        }
+
+        time = token.elapsedTime();
+        if (meeting < 0) {
+            solvedOutcome = SolverOutcome.UNSOLVABLE;
+            return;
+        }
+        solvedOutcome = SolverOutcome.SOLVED;
+        unpackSolution();
+    }
+
+    /* Queues each of IDS that CH knows on SIDE at its cost in COSTS. */
+    private void seed(SearchWorkspace side, long[] ids, double[] costs) {
+        for (int i = 0; i < ids.length; i++) {
+            int v = ch.graph().indexOf(ids[i]);
+            if (v < 0 || costs[i] >= side.distTo(v)) {
+                continue;
+            }
+            side.reach(v, costs[i], -1);
+            if (side.pq().contains(v)) {
+                side.pq().changePriority(v, costs[i]);
+            } else {
+                side.pq().add(v, costs[i]);
+            }
+        }
+    }
+
+    /* Settles the closest vertex of SIDE and relaxes its upward edges. */
+    private void settle(SearchWorkspace side, SearchWorkspace other) {
+        IntMinPQ pq = side.pq();
+        int p = pq.removeSmallest();
+        double dist = side.distTo(p);
+        numStates++;
+        if (other.reached(p) && dist + other.distTo(p) < mu) {
+            mu = dist + other.distTo(p);
+            meeting = p;
+        }
+
+        int end = ch.firstEdge(p + 1);
+        for (int e = ch.firstEdge(p); e < end; e++) {
+            if (side.distTo(ch.target(e)) + ch.weight(e) < dist) {
+                return;
+            }
+        }
+        for (int e = ch.firstEdge(p); e < end; e++) {
+            int q = ch.target(e);
+            double d = dist + ch.weight(e);
+            if (d < side.distTo(q)) {
+                side.reach(q, d, p);
+                if (pq.contains(q)) {
+                    pq.changePriority(q, d);
+                } else {
+                    pq.add(q, d);
+                }
+            }
+        }
+    }
+
+    /* Turns the two hierarchy paths start -> meeting <- goal into OSM ids. */
+    private void unpackSolution() {
+        List<Integer> up = new ArrayList<>();
+        for (int v = meeting; v != -1; v = forward.edgeTo(v)) {
+            up.add(v);
+        }
+        solution.add(ch.graph().id(up.get(up.size() - 1)));
+        for (int i = up.size() - 1; i > 0; i--) {
+            ch.unpack(up.get(i), up.get(i - 1), solution);
+        }
+        for (int v = meeting; backward.edgeTo(v) != -1; v = backward.edgeTo(v)) {
+            ch.unpack(v, backward.edgeTo(v), solution);
+        }
+    }
+
+    @Override
+    public SolverOutcome outcome() {
+        return solvedOutcome;
+    }
+
+    @Override
+    public List<Long> solution() {
+        return solution;
+    }
+
+    @Override
+    public double solutionWeight() {
+        if (meeting < 0) {
+            return 0.0;
+        }
+        return mu;
+    }
+
+    @Override
+    public int numStatesExplored() {
+        return numStates;
+    }
+
+    @Override
+    public double explorationTime() {
+        return time;
+    }
+}
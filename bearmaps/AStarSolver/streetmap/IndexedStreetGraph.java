@@ -0,0 +1,130 @@
+package bearmaps.proj2c.streetmap;
+
+import bearmaps.LongIntHashMap;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Immutable, int-indexed form of a StreetMapGraph, and once the graph is
+ * loaded the only place its edges are kept. Every vertex is given a dense
+ * index in [0, size()) once, and its coordinates and outgoing edges are kept
+ * in primitive arrays (adjacency in compressed sparse row form), so that
+ * searches can run over arrays instead of boxed OSM ids and hash maps.
+ *
+ * The outgoing edges of vertex v are the edge slots firstEdge(v) (inclusive) to
+ * firstEdge(v + 1) (exclusive).
+ */
+public class IndexedStreetGraph {
+    private final long[] ids;
+    private final double[] lats;
+    private final double[] lons;
+    private final int[] offsets;
+    private final int[] targets;
+    private final double[] weights;
+    private final LongIntHashMap indexOf;
+
+    /**
+     * Wraps the arrays of a graph: vertex v has OSM id IDS[v] and coordinates
+     * LATS[v], LONS[v], and its edges are the slots OFFSETS[v] to
+     * OFFSETS[v + 1] - 1 of TARGETS and WEIGHTS.
+     */
+    IndexedStreetGraph(long[] ids, double[] lats, double[] lons, int[] offsets,
+                       int[] targets, double[] weights) {
+        this.ids = ids;
+        this.lats = lats;
+        this.lons = lons;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        indexOf = new LongIntHashMap(ids.length);
+        for (int v = 0; v < ids.length; v++) {
+            indexOf.put(ids[v], v);
+        }
+    }
+
+    /** Writes the arrays of this graph to OUT, to be read back by read. */
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(ids.length);
+        out.writeInt(targets.length);
+        SnapshotIO.writeLongs(out, ids);
+        SnapshotIO.writeDoubles(out, lats);
+        SnapshotIO.writeDoubles(out, lons);
+        SnapshotIO.writeInts(out, offsets);
+        SnapshotIO.writeInts(out, targets);
+        SnapshotIO.writeDoubles(out, weights);
+    }
+
+    /**
+     * Reads a graph written by write from IN, leaving IN just after it. Throws
+     * an IOException if the edges don't fit together.
+     */
+    static IndexedStreetGraph read(ByteBuffer in) throws IOException {
+        int n = SnapshotIO.readCount(in);
+        int m = SnapshotIO.readCount(in);
+        long[] ids = SnapshotIO.readLongs(in, n);
+        double[] lats = SnapshotIO.readDoubles(in, n);
+        double[] lons = SnapshotIO.readDoubles(in, n);
+        int[] offsets = SnapshotIO.readInts(in, n + 1);
+        int[] targets = SnapshotIO.readInts(in, m);
+        double[] weights = SnapshotIO.readDoubles(in, m);
+        if (offsets[0] != 0 || offsets[n] != m) {
+            throw new IOException("edge offsets don't cover the edges");
+        }
+        for (int v = 0; v < n; v++) {
+            if (offsets[v] > offsets[v + 1]) {
+                throw new IOException("edge offsets out of order at vertex " + v);
+            }
+        }
+        for (int e = 0; e < m; e++) {
+            if (targets[e] < 0 || targets[e] >= n) {
+                throw new IOException("edge " + e + " leads to no vertex");
+            }
+        }
+        return new IndexedStreetGraph(ids, lats, lons, offsets, targets, weights);
+    }
+
+    /** Returns the number of vertices. */
+    public int size() {
+        return ids.length;
+    }
+
+    /** Returns the dense index of the vertex with OSM id ID, or -1 if there is none. */
+    public int indexOf(long id) {
+        return indexOf.get(id);
+    }
+
+    /** Returns the OSM id of vertex V. */
+    public long id(int v) {
+        return ids[v];
+    }
+
+    public double lat(int v) {
+        return lats[v];
+    }
+
+    public double lon(int v) {
+        return lons[v];
+    }
+
+    /** Returns the first edge slot of vertex V; firstEdge(V + 1) ends its edges. */
+    public int firstEdge(int v) {
+        return offsets[v];
+    }
+
+    /** Returns the vertex that edge slot E points to. */
+    public int target(int e) {
+        return targets[e];
+    }
+
+    /** Returns the weight of edge slot E. */
+    public double weight(int e) {
+        return weights[e];
+    }
+
+    /** Returns the great-circle distance between vertices V and W. */
+    public double estimatedDistance(int v, int w) {
+        return StreetMapGraph.distance(lons[v], lons[w], lats[v], lats[w]);
+    }
+}
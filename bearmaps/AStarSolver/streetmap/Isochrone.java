@@ -0,0 +1,94 @@
+package bearmaps.proj2c.streetmap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The vertices reachable from a source within some network distance, as found
+ * by RouteEngine.isochrone, along with the convex hull of their locations.
+ */
+public class Isochrone {
+    private final IndexedStreetGraph graph;
+    private final int[] vertices;
+    private final int[] hull;
+
+    /** Wraps the first COUNT of VERTICES, which are indices into GRAPH. */
+    Isochrone(IndexedStreetGraph graph, int[] vertices, int count) {
+        this.graph = graph;
+        this.vertices = Arrays.copyOf(vertices, count);
+        this.hull = convexHull(graph, this.vertices);
+    }
+
+    /** Returns the OSM ids of the reachable vertices, closest first. */
+    public List<Long> nodes() {
+        List<Long> ids = new ArrayList<>(vertices.length);
+        for (int v : vertices) {
+            ids.add(graph.id(v));
+        }
+        return ids;
+    }
+
+    /**
+     * Returns the corners of the convex hull of the reachable vertices as
+     * {lon, lat} pairs, counter-clockwise and without repeating the first one.
+     */
+    public List<double[]> hull() {
+        List<double[]> corners = new ArrayList<>(hull.length);
+        for (int v : hull) {
+            corners.add(new double[]{graph.lon(v), graph.lat(v)});
+        }
+        return corners;
+    }
+
+    /*
+    Andrew's monotone chain: sorts the points by longitude, drops repeated
+    locations, then builds the lower and upper halves of the hull, popping
+    every corner that doesn't turn left. Collinear points are never corners.
+     */
+    private static int[] convexHull(IndexedStreetGraph graph, int[] vertices) {
+        Integer[] all = new Integer[vertices.length];
+        for (int i = 0; i < vertices.length; i++) {
+            all[i] = vertices[i];
+        }
+        Arrays.sort(all, (v, w) -> graph.lon(v) != graph.lon(w)
+                ? Double.compare(graph.lon(v), graph.lon(w))
+                : Double.compare(graph.lat(v), graph.lat(w)));
+        int[] sorted = new int[all.length];
+        int count = 0;
+        for (int v : all) {
+            if (count == 0 || graph.lon(v) != graph.lon(sorted[count - 1])
+                    || graph.lat(v) != graph.lat(sorted[count - 1])) {
+                sorted[count] = v;
+                count++;
+            }
+        }
+        if (count < 3) {
+            return Arrays.copyOf(sorted, count);
+        }
+
+        int[] hull = new int[2 * count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            while (size >= 2 && cross(graph, hull[size - 2], hull[size - 1], sorted[i]) <= 0) {
+                size--;
+            }
+            hull[size++] = sorted[i];
+        }
+        int lower = size + 1;
+        for (int i = count - 2; i >= 0; i--) {
+            while (size >= lower && cross(graph, hull[size - 2], hull[size - 1], sorted[i]) <= 0) {
+                size--;
+            }
+            hull[size++] = sorted[i];
+        }
+        /* The last corner is the first one again. */
+        return Arrays.copyOf(hull, size - 1);
+    }
+
+    /* Returns how far O -> A -> B turns left, as the cross product of OA and OB. */
+    private static double cross(IndexedStreetGraph graph, int o, int a, int b) {
+        return (graph.lon(a) - graph.lon(o)) * (graph.lat(b) - graph.lat(o))
+                - (graph.lat(a) - graph.lat(o)) * (graph.lon(b) - graph.lon(o));
+    }
+}
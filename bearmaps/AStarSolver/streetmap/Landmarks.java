@@ -0,0 +1,303 @@
+package bearmaps.proj2c.streetmap;
+
+import bearmaps.IntRadixMinPQ;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * ALT heuristic (A*, Landmarks, Triangle inequality). A handful of landmark
+ * vertices are chosen and the network distance from each of them to every
+ * vertex is precomputed. For any landmark L the triangle inequality gives
+ *     d(v, goal) >= |d(L, goal) - d(L, v)|
+ * (street graphs are symmetric), and the estimate is the largest of these
+ * bounds and the great-circle distance. Unlike the great-circle distance alone,
+ * this accounts for hills, the bay and missing roads.
+ *
+ * Distances are kept as floats, all landmarks of a vertex next to each other,
+ * and every bound is shrunk by the float rounding error so it stays admissible.
+ *
+ * Run main to precompute the tables for a map:
+ *     java bearmaps.proj2c.streetmap.Landmarks berkeley-2019.osm.xml berkeley-2019.alt 16 avoid
+ */
+public class Landmarks implements StreetHeuristic {
+    /** How landmarks are picked. */
+    public enum Selection {
+        /** Each landmark is the vertex farthest from the landmarks picked so far. */
+        FARTHEST,
+        /**
+         * Each landmark is a leaf of the shortest path tree of a random vertex,
+         * in the subtree where the current landmarks give the worst bounds.
+         */
+        AVOID
+    }
+
+    /** "BMLM" in ASCII, at the start of every landmark file. */
+    private static final int MAGIC = 0x424d4c4d;
+    private static final int VERSION = 1;
+    /** Relative error of storing a distance as a float, with room to spare. */
+    private static final double FLOAT_ERROR = 1e-6;
+
+    private final IndexedStreetGraph graph;
+    private final int[] landmarks;
+    /* distances[v * landmarks.length + i] is the distance from landmark i to v. */
+    private final float[] distances;
+
+    private Landmarks(IndexedStreetGraph graph, int[] landmarks, float[] distances) {
+        this.graph = graph;
+        this.landmarks = landmarks;
+        this.distances = distances;
+    }
+
+    /** Picks COUNT landmarks of GRAPH with the given strategy and computes their tables. */
+    public static Landmarks select(IndexedStreetGraph graph, int count, Selection selection) {
+        int n = graph.size();
+        int k = Math.min(count, n);
+        int[] chosen = new int[k];
+        float[] distances = new float[n * k];
+        SearchWorkspace ws = new SearchWorkspace(n);
+        int[] order = new int[n];
+        Random random = new Random(n);
+
+        for (int i = 0; i < k; i++) {
+            if (i == 0) {
+                /* Start from the vertex farthest away from an arbitrary one. */
+                dijkstra(graph, ws, random.nextInt(n), order);
+                chosen[i] = order[0];
+                for (int v = 0; v < n; v++) {
+                    if (ws.distTo(v) != Double.POSITIVE_INFINITY
+                            && ws.distTo(v) > ws.distTo(chosen[i])) {
+                        chosen[i] = v;
+                    }
+                }
+            } else if (selection == Selection.AVOID) {
+                chosen[i] = avoid(graph, ws, order, chosen, i, distances, random.nextInt(n));
+            } else {
+                chosen[i] = farthest(n, chosen, i, distances);
+            }
+
+            dijkstra(graph, ws, chosen[i], order);
+            for (int v = 0; v < n; v++) {
+                distances[v * k + i] = (float) ws.distTo(v);
+            }
+        }
+        return new Landmarks(graph, chosen, distances);
+    }
+
+    /* Returns the vertex whose closest of the first USED landmarks is farthest away. */
+    private static int farthest(int n, int[] chosen, int used, float[] distances) {
+        int k = chosen.length;
+        int best = chosen[0];
+        float bestDist = -1;
+        for (int v = 0; v < n; v++) {
+            float closest = Float.POSITIVE_INFINITY;
+            for (int i = 0; i < used; i++) {
+                closest = Math.min(closest, distances[v * k + i]);
+            }
+            if (closest > bestDist) {
+                best = v;
+                bestDist = closest;
+            }
+        }
+        return best;
+    }
+
+    /*
+    Builds the shortest path tree of ROOT and weighs every vertex by how much the
+    first USED landmarks underestimate its distance from ROOT. Subtrees that
+    already contain a landmark weigh nothing. Walks down from ROOT into the
+    heaviest subtree and returns the leaf it ends at.
+     */
+    private static int avoid(IndexedStreetGraph graph, SearchWorkspace ws, int[] order,
+                             int[] chosen, int used, float[] distances, int root) {
+        int n = graph.size();
+        int k = chosen.length;
+        int settled = dijkstra(graph, ws, root, order);
+        double[] size = new double[n];
+        boolean[] covered = new boolean[n];
+        int[] heaviestChild = new int[n];
+        Arrays.fill(heaviestChild, -1);
+        for (int i = 0; i < used; i++) {
+            covered[chosen[i]] = true;
+        }
+
+        for (int j = settled - 1; j >= 0; j--) {
+            int v = order[j];
+            double bound = 0.0;
+            for (int i = 0; i < used; i++) {
+                float dv = distances[v * k + i];
+                float dRoot = distances[root * k + i];
+                if (dv != Float.POSITIVE_INFINITY && dRoot != Float.POSITIVE_INFINITY) {
+                    bound = Math.max(bound, Math.abs(dv - dRoot));
+                }
+            }
+            size[v] = covered[v] ? 0.0 : size[v] + Math.max(0.0, ws.distTo(v) - bound);
+            int parent = ws.edgeTo(v);
+            if (parent >= 0) {
+                covered[parent] |= covered[v];
+                size[parent] += size[v];
+                if (size[v] > 0 && (heaviestChild[parent] < 0
+                        || size[v] > size[heaviestChild[parent]])) {
+                    heaviestChild[parent] = v;
+                }
+            }
+        }
+        if (covered[root] && heaviestChild[root] < 0) {
+            return farthest(n, chosen, used, distances);
+        }
+        int v = root;
+        while (heaviestChild[v] >= 0 && !covered[heaviestChild[v]]) {
+            v = heaviestChild[v];
+        }
+        return v;
+    }
+
+    /* Runs Dijkstra from SOURCE, filling ORDER with the vertices in the order they
+     * were settled. Returns how many were settled. */
+    private static int dijkstra(IndexedStreetGraph graph, SearchWorkspace ws,
+                                int source, int[] order) {
+        ws.reset();
+        IntRadixMinPQ pq = ws.radixPq();
+        ws.reach(source, 0.0, -1);
+        pq.add(source, 0.0);
+        int settled = 0;
+        while (pq.size() > 0) {
+            int p = pq.removeSmallest();
+            order[settled] = p;
+            settled++;
+            double dist = ws.distTo(p);
+            int end = graph.firstEdge(p + 1);
+            for (int e = graph.firstEdge(p); e < end; e++) {
+                int q = graph.target(e);
+                double d = dist + graph.weight(e);
+                if (d < ws.distTo(q)) {
+                    ws.reach(q, d, p);
+                    if (pq.contains(q)) {
+                        pq.changePriority(q, d);
+                    } else {
+                        pq.add(q, d);
+                    }
+                }
+            }
+        }
+        return settled;
+    }
+
+    /** Returns the number of landmarks. */
+    public int size() {
+        return landmarks.length;
+    }
+
+    /** Returns the OSM id of landmark I. */
+    public long landmark(int i) {
+        return graph.id(landmarks[i]);
+    }
+
+    @Override
+    public double estimate(int v, int goal) {
+        int k = landmarks.length;
+        int vRow = v * k;
+        int goalRow = goal * k;
+        double best = graph.estimatedDistance(v, goal);
+        for (int i = 0; i < k; i++) {
+            float dv = distances[vRow + i];
+            float dGoal = distances[goalRow + i];
+            if (dv == Float.POSITIVE_INFINITY || dGoal == Float.POSITIVE_INFINITY) {
+                continue;
+            }
+            double bound = Math.abs(dGoal - dv) - FLOAT_ERROR * (dGoal + dv);
+            if (bound > best) {
+                best = bound;
+            }
+        }
+        return best;
+    }
+
+    /** Writes the landmarks and their distance tables to the file at path FILENAME. */
+    public void write(String filename) throws IOException {
+        int n = graph.size();
+        int k = landmarks.length;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(n);
+            out.writeInt(k);
+            for (int i = 0; i < k; i++) {
+                out.writeLong(graph.id(landmarks[i]));
+            }
+            for (int v = 0; v < n; v++) {
+                out.writeLong(graph.id(v));
+                for (int i = 0; i < k; i++) {
+                    out.writeFloat(distances[v * k + i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads landmarks written by write and maps them onto GRAPH. Throws an
+     * IOException if the file is not a landmark file for GRAPH, or if its
+     * counts are out of range or it gives a vertex's distances twice.
+     */
+    public static Landmarks read(String filename, IndexedStreetGraph graph) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(filename)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(filename + " is not a landmark file");
+            }
+            int n = in.readInt();
+            int k = in.readInt();
+            if (n != graph.size()) {
+                throw new IOException(filename + " was built for a different graph");
+            }
+            if (k < 1 || (long) n * k > Integer.MAX_VALUE) {
+                throw new IOException("landmark count " + k + " out of range in " + filename);
+            }
+            int[] landmarks = new int[k];
+            for (int i = 0; i < k; i++) {
+                landmarks[i] = indexOf(graph, in.readLong(), filename);
+            }
+            float[] distances = new float[n * k];
+            boolean[] seen = new boolean[n];
+            for (int j = 0; j < n; j++) {
+                int v = indexOf(graph, in.readLong(), filename);
+                if (seen[v]) {
+                    throw new IOException(filename + " lists node " + graph.id(v) + " twice");
+                }
+                seen[v] = true;
+                for (int i = 0; i < k; i++) {
+                    distances[v * k + i] = in.readFloat();
+                }
+            }
+            return new Landmarks(graph, landmarks, distances);
+        }
+    }
+
+    private static int indexOf(IndexedStreetGraph graph, long id, String filename)
+            throws IOException {
+        int v = graph.indexOf(id);
+        if (v < 0) {
+            throw new IOException(filename + " refers to unknown node " + id);
+        }
+        return v;
+    }
+
+    public static void main(String[] args) throws IOException {
+        StreetMapGraph smg = args[0].endsWith(".xml")
+                ? StreetMapGraph.readFromXMLParallel(args[0], ForkJoinPool.commonPool())
+                : StreetMapGraph.readFromSimpleFormat(args[0]);
+        int count = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        Selection selection = args.length > 3 && args[3].equalsIgnoreCase("farthest")
+                ? Selection.FARTHEST : Selection.AVOID;
+        select(smg.indexed(), count, selection).write(args[1]);
+    }
+}
@@ -0,0 +1,138 @@
+package bearmaps.proj2c.streetmap;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+public class LandmarksTest {
+    private static final String BERKELEY = "bearmaps/AStarSolver/input/berkeley-street-data.simple";
+
+    /* Returns the network distances from SOURCE to every vertex of GRAPH, by plain Dijkstra. */
+    private static double[] distancesFrom(IndexedStreetGraph graph, int source) {
+        double[] dist = new double[graph.size()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        dist[source] = 0.0;
+        PriorityQueue<double[]> pq = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        pq.add(new double[]{0.0, source});
+        while (!pq.isEmpty()) {
+            double[] top = pq.poll();
+            int v = (int) top[1];
+            if (top[0] > dist[v]) {
+                continue;
+            }
+            for (int e = graph.firstEdge(v); e < graph.firstEdge(v + 1); e++) {
+                int w = graph.target(e);
+                if (dist[v] + graph.weight(e) < dist[w]) {
+                    dist[w] = dist[v] + graph.weight(e);
+                    pq.add(new double[]{dist[w], w});
+                }
+            }
+        }
+        return dist;
+    }
+
+    /* Checks that LANDMARKS never overestimate, and beat the great-circle distance somewhere. */
+    private static void assertAdmissible(IndexedStreetGraph graph, Landmarks landmarks) {
+        Random random = new Random(5);
+        int tighter = 0;
+        for (int i = 0; i < 20; i++) {
+            int goal = random.nextInt(graph.size());
+            double[] dist = distancesFrom(graph, goal);
+            for (int v = 0; v < graph.size(); v++) {
+                if (dist[v] == Double.POSITIVE_INFINITY) {
+                    continue;
+                }
+                double estimate = landmarks.estimate(v, goal);
+                assertTrue(v + " to " + goal + ": " + estimate + " > " + dist[v],
+                        estimate <= dist[v] + 1e-9);
+                assertTrue(estimate >= graph.estimatedDistance(v, goal));
+                if (estimate > graph.estimatedDistance(v, goal)) {
+                    tighter++;
+                }
+            }
+            assertEquals(0.0, landmarks.estimate(goal, goal), 0.0);
+        }
+        assertTrue(tighter > 0);
+    }
+
+    @Test
+    public void testFarthestNeverOverestimates() {
+        IndexedStreetGraph graph = StreetMapGraph.readFromSimpleFormat(BERKELEY).indexed();
+        Landmarks landmarks = Landmarks.select(graph, 8, Landmarks.Selection.FARTHEST);
+        assertEquals(8, landmarks.size());
+        assertAdmissible(graph, landmarks);
+    }
+
+    @Test
+    public void testAvoidNeverOverestimates() {
+        IndexedStreetGraph graph = StreetMapGraph.readFromSimpleFormat(BERKELEY).indexed();
+        Landmarks landmarks = Landmarks.select(graph, 8, Landmarks.Selection.AVOID);
+        assertEquals(8, landmarks.size());
+        assertAdmissible(graph, landmarks);
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        IndexedStreetGraph graph = StreetMapGraph.readFromSimpleFormat(BERKELEY).indexed();
+        Landmarks landmarks = Landmarks.select(graph, 4, Landmarks.Selection.AVOID);
+        File file = File.createTempFile("berkeley", ".alt");
+        file.deleteOnExit();
+        landmarks.write(file.getPath());
+        Landmarks read = Landmarks.read(file.getPath(), graph);
+
+        assertEquals(landmarks.size(), read.size());
+        for (int i = 0; i < landmarks.size(); i++) {
+            assertEquals(landmarks.landmark(i), read.landmark(i));
+        }
+        Random random = new Random(6);
+        for (int i = 0; i < 10000; i++) {
+            int v = random.nextInt(graph.size());
+            int goal = random.nextInt(graph.size());
+            assertEquals(landmarks.estimate(v, goal), read.estimate(v, goal), 0.0);
+        }
+    }
+
+    /* Checks that reading BYTES as landmarks of GRAPH fails with an IOException. */
+    private static void assertCorrupt(byte[] bytes, IndexedStreetGraph graph) throws IOException {
+        File file = File.createTempFile("corrupt", ".alt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), bytes);
+        try {
+            Landmarks.read(file.getPath(), graph);
+            fail("read corrupt landmarks");
+        } catch (IOException e) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testCorruptFile() throws IOException {
+        IndexedStreetGraph graph = StreetMapGraph.readFromSimpleFormat(BERKELEY).indexed();
+        File file = File.createTempFile("berkeley", ".alt");
+        file.deleteOnExit();
+        Landmarks.select(graph, 4, Landmarks.Selection.FARTHEST).write(file.getPath());
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        /*
+        The magic number, version, vertex count and landmark count, then the 4
+        landmark ids, then a row of an id and 4 distances for each vertex.
+         */
+        int n = graph.size();
+        int rows = 16 + 8 * 4;
+        int row = 8 + 4 * 4;
+        for (int k : new int[]{0, -1, Integer.MAX_VALUE, Integer.MAX_VALUE / n + 1}) {
+            byte[] corrupt = bytes.clone();
+            ByteBuffer.wrap(corrupt).putInt(12, k);
+            assertCorrupt(corrupt, graph);
+        }
+        byte[] corrupt = bytes.clone();
+        ByteBuffer.wrap(corrupt).putLong(rows + row, ByteBuffer.wrap(bytes).getLong(rows));
+        assertCorrupt(corrupt, graph);
+        assertCorrupt(Arrays.copyOf(bytes, bytes.length - 1), graph);
+    }
+}
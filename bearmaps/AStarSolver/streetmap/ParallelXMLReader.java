@@ -0,0 +1,374 @@
+package bearmaps.proj2c.streetmap;
+
+import bearmaps.LongHashSet;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Reads an OSM XML file into a StreetMapGraph on several threads, building
+ * the same graph as GraphBuildingHandler does.
+ *
+ * The file is cut into chunks where top-level elements (node, way, relation)
+ * start. Those never nest in OSM XML and attribute values escape their '<',
+ * so every chunk wrapped in an osm element is a document of its own. The
+ * text of comments, CDATA sections and processing instructions is not
+ * escaped, so the search for cuts skips them. Chunks are read and parsed
+ * concurrently, each into primitive arrays of its nodes and of the pairs of
+ * consecutive nodes on its allowed roads. The chunks are then merged in file
+ * order: the nodes on roads are added to the graph, the road edges are
+ * weighed in parallel, and the edges are added.
+ *
+ * Chunks are parsed without the file's XML declaration, so any encoding it
+ * names is ignored and the file has to be in UTF-8, as OSM extracts are.
+ */
+class ParallelXMLReader {
+    /* Chunks are at most this long, so the bytes being parsed at once stay bounded. */
+    private static final long MAX_CHUNK_BYTES = 32 << 20;
+    /* Files are not cut into chunks shorter than this. */
+    private static final long MIN_CHUNK_BYTES = 1 << 20;
+    /* More chunks than threads, so threads that finish early can take more. */
+    private static final int CHUNKS_PER_THREAD = 4;
+    /* How much of the file a search for an element start reads at a time. */
+    private static final int SCAN_WINDOW = 1 << 16;
+    private static final byte[][] ELEMENTS = {bytes("<node"), bytes("<way"),
+        bytes("<relation"), bytes("</osm")};
+    private static final byte[] CLOSE = bytes("</osm");
+    /* The starts and ends of markup whose text may look like elements. */
+    private static final byte[][][] SKIPPED = {{bytes("<!--"), bytes("-->")},
+        {bytes("<![CDATA["), bytes("]]>")}, {bytes("<?"), bytes("?>")}};
+
+    private final String filename;
+    private final ForkJoinPool pool;
+
+    ParallelXMLReader(String filename, ForkJoinPool pool) {
+        this.filename = filename;
+        this.pool = pool;
+    }
+
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Adds the nodes on allowed roads and the roads of the file to G. */
+    void readInto(StreetMapGraph g) throws IOException, SAXException {
+        List<Chunk> chunks = parseChunks();
+
+        LongHashSet roadNodes = new LongHashSet();
+        for (Chunk chunk : chunks) {
+            for (int i = 0; i < 2 * chunk.edgeCount; i++) {
+                roadNodes.add(chunk.edgeEnds[i]);
+            }
+        }
+        for (Chunk chunk : chunks) {
+            for (int i = 0; i < chunk.nodeCount; i++) {
+                if (roadNodes.contains(chunk.nodeIds[i])) {
+                    g.addNode(Node.of(chunk.nodeIds[i], chunk.lats[i], chunk.lons[i]));
+                }
+            }
+        }
+
+        List<Callable<Void>> weighings = new ArrayList<>();
+        for (Chunk chunk : chunks) {
+            weighings.add(() -> {
+                chunk.weigh(g);
+                return null;
+            });
+        }
+        runAll(weighings);
+        for (Chunk chunk : chunks) {
+            for (int i = 0; i < chunk.edgeCount; i++) {
+                double weight = chunk.weights[i];
+                if (!Double.isNaN(weight)) {
+                    long from = chunk.edgeEnds[2 * i];
+                    long to = chunk.edgeEnds[2 * i + 1];
+                    g.addWeightedEdge(from, to, weight);
+                    g.addWeightedEdge(to, from, weight);
+                }
+            }
+        }
+    }
+
+    /* Cuts the file into chunks and parses them on the pool, returning them in file order. */
+    private List<Chunk> parseChunks() throws IOException, SAXException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ)) {
+            long size = channel.size();
+            ElementScanner scanner = new ElementScanner(channel, size);
+            long start = scanner.next(0);
+            long length = size - start;
+            long count = Math.max((long) pool.getParallelism() * CHUNKS_PER_THREAD,
+                    (length + MAX_CHUNK_BYTES - 1) / MAX_CHUNK_BYTES);
+            count = Math.max(1, Math.min(count, length / MIN_CHUNK_BYTES));
+
+            List<Callable<Chunk>> tasks = new ArrayList<>();
+            long from = start;
+            for (long i = 1; i <= count; i++) {
+                /* The last chunk runs up to the closing osm tag. */
+                long to = scanner.next(i == count ? size
+                        : Math.max(from + 1, start + length * i / count));
+                if (to > from) {
+                    long chunkStart = from;
+                    tasks.add(() -> parse(channel, chunkStart, to));
+                    from = to;
+                }
+            }
+            return runAll(tasks);
+        }
+    }
+
+    /*
+    Finds where top-level elements start, reading the file forward in windows.
+    Every byte from the start of the file is looked at once, in order, so the
+    scanner always knows whether it is inside a comment, CDATA section or
+    processing instruction, and never takes their text for an element.
+     */
+    private static class ElementScanner {
+        private final FileChannel channel;
+        private final long end;
+        private final ByteBuffer window = ByteBuffer.allocate(SCAN_WINDOW);
+        /* The window holds bytes windowStart .. windowStart + windowLength - 1. */
+        private long windowStart;
+        private int windowLength;
+        /* Everything before pos has been scanned. */
+        private long pos;
+        /* Where the closing osm tag starts, once it has been found, or -1. */
+        private long close = -1;
+
+        ElementScanner(FileChannel channel, long end) {
+            this.channel = channel;
+            this.end = end;
+        }
+
+        /*
+        Returns where the first top-level element at or after FROM starts, or
+        the closing osm tag if that comes first, or END if there is neither.
+        FROM must be after where the previous call returned.
+         */
+        long next(long from) throws IOException {
+            if (close >= 0) {
+                return close;
+            }
+            while (pos < end) {
+                if (byteAt(pos) == '<' && skip()) {
+                    continue;
+                }
+                long p = pos++;
+                if (byteAt(p) == '<' && startsElement(p)) {
+                    if (matches(p, CLOSE)) {
+                        close = p;
+                        return close;
+                    } else if (p >= from) {
+                        return p;
+                    }
+                }
+            }
+            return end;
+        }
+
+        /* If markup in SKIPPED starts at pos, moves pos past its end and returns true. */
+        private boolean skip() throws IOException {
+            for (byte[][] markup : SKIPPED) {
+                if (matches(pos, markup[0])) {
+                    pos += markup[0].length;
+                    while (pos < end && !matches(pos, markup[1])) {
+                        pos++;
+                    }
+                    pos = Math.min(end, pos + markup[1].length);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /* Returns true if an element name in ELEMENTS, followed by a delimiter, starts at P. */
+        private boolean startsElement(long p) throws IOException {
+            for (byte[] name : ELEMENTS) {
+                if (p + name.length < end && matches(p, name)) {
+                    byte next = byteAt(p + name.length);
+                    if (next == ' ' || next == '>' || next == '/' || next == '\t'
+                            || next == '\n' || next == '\r') {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private boolean matches(long p, byte[] name) throws IOException {
+            if (p + name.length > end) {
+                return false;
+            }
+            for (int j = 0; j < name.length; j++) {
+                if (byteAt(p + j) != name[j]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /* Returns the byte at P, which must be before end, reading a new window if needed. */
+        private byte byteAt(long p) throws IOException {
+            if (p < windowStart || p >= windowStart + windowLength) {
+                window.clear();
+                windowStart = p;
+                windowLength = read(channel, window, p, end);
+            }
+            return window.array()[(int) (p - windowStart)];
+        }
+    }
+
+    /* Reads from POS into BUFFER until it is full or END is reached, and returns how much it read. */
+    private static int read(FileChannel channel, ByteBuffer buffer, long pos, long end)
+            throws IOException {
+        buffer.limit((int) Math.min(buffer.capacity(), end - pos));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, pos + buffer.position()) < 0) {
+                throw new EOFException("file ended at " + (pos + buffer.position()));
+            }
+        }
+        return buffer.position();
+    }
+
+    /* Parses bytes START .. END - 1 of the file as the children of an osm element. */
+    private static Chunk parse(FileChannel channel, long start, long end)
+            throws IOException, SAXException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+        read(channel, buffer, start, end);
+        InputStream in = new SequenceInputStream(Collections.enumeration(Arrays.asList(
+                new ByteArrayInputStream(bytes("<osm>")),
+                new ByteArrayInputStream(buffer.array()),
+                new ByteArrayInputStream(bytes("</osm>")))));
+        Chunk chunk = new Chunk();
+        try {
+            SAXParserFactory.newInstance().newSAXParser().parse(in, chunk);
+        } catch (ParserConfigurationException e) {
+            throw new SAXException(e);
+        }
+        return chunk;
+    }
+
+    /* Runs TASKS on the pool and returns their results in order, rethrowing the first failure. */
+    private <T> List<T> runAll(List<Callable<T>> tasks) throws IOException, SAXException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while reading " + filename, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof SAXException) {
+                throw (SAXException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        }
+        return results;
+    }
+
+    /*
+    The nodes of one chunk, and the pairs of consecutive nodes on its allowed
+    roads: road edge i joins edgeEnds[2i] and edgeEnds[2i + 1].
+     */
+    private static class Chunk extends DefaultHandler {
+        private long[] nodeIds = new long[1024];
+        private double[] lats = new double[1024];
+        private double[] lons = new double[1024];
+        private int nodeCount;
+        private long[] edgeEnds = new long[1024];
+        private int edgeCount;
+        /* Filled in by weigh, NaN where an end isn't in the graph. */
+        private double[] weights;
+
+        private boolean inWay;
+        private boolean validWay;
+        private long[] path = new long[64];
+        private int pathLength;
+
+        @Override
+        public void startElement(String uri, String localName, String qName,
+                                 Attributes attributes) {
+            if (qName.equals("node")) {
+                inWay = false;
+                if (nodeCount == nodeIds.length) {
+                    nodeIds = Arrays.copyOf(nodeIds, 2 * nodeCount);
+                    lats = Arrays.copyOf(lats, 2 * nodeCount);
+                    lons = Arrays.copyOf(lons, 2 * nodeCount);
+                }
+                nodeIds[nodeCount] = Long.parseLong(attributes.getValue("id"));
+                lats[nodeCount] = Double.parseDouble(attributes.getValue("lat"));
+                lons[nodeCount] = Double.parseDouble(attributes.getValue("lon"));
+                nodeCount++;
+            } else if (qName.equals("way")) {
+                inWay = true;
+                validWay = false;
+                pathLength = 0;
+            } else if (inWay && qName.equals("nd")) {
+                if (pathLength == path.length) {
+                    path = Arrays.copyOf(path, 2 * pathLength);
+                }
+                path[pathLength] = Long.parseLong(attributes.getValue("ref"));
+                pathLength++;
+            } else if (inWay && qName.equals("tag")) {
+                if (attributes.getValue("k").equals("highway")) {
+                    validWay = GraphBuildingHandler.isAllowedHighway(attributes.getValue("v"));
+                }
+            }
+        }
+
+        @Override
+        public void endElement(String uri, String localName, String qName) {
+            if (qName.equals("way")) {
+                if (validWay) {
+                    for (int i = 0; i < pathLength - 1; i++) {
+                        if (2 * edgeCount + 2 > edgeEnds.length) {
+                            edgeEnds = Arrays.copyOf(edgeEnds, 2 * edgeEnds.length);
+                        }
+                        edgeEnds[2 * edgeCount] = path[i];
+                        edgeEnds[2 * edgeCount + 1] = path[i + 1];
+                        edgeCount++;
+                    }
+                }
+                inWay = false;
+            } else if (qName.equals("node")) {
+                inWay = false;
+            }
+        }
+
+        /* Weighs every road edge by the nodes of G. */
+        void weigh(StreetMapGraph g) {
+            weights = new double[edgeCount];
+            for (int i = 0; i < edgeCount; i++) {
+                weights[i] = g.edgeWeight(edgeEnds[2 * i], edgeEnds[2 * i + 1]);
+            }
+        }
+    }
+}
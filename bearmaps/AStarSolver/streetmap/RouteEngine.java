@@ -0,0 +1,205 @@
+package bearmaps.proj2c.streetmap;
+
+import bearmaps.IntRadixMinPQ;
+import bearmaps.proj2c.CancellationToken;
+import bearmaps.proj2c.ShortestPathsSolver;
+
+import java.util.Arrays;
+
+/**
+ * Long-lived entry point for shortest path queries over one StreetMapGraph.
+ * Each thread that asks for a route gets its own SearchWorkspaces, created the
+ * first time and reused afterwards, so steady-state queries don't allocate any
+ * per-vertex state.
+ *
+ * If the engine is given a ContractionHierarchy for the graph, queries run over
+ * it; otherwise they run A* over the graph itself, guided by the engine's
+ * StreetHeuristic (the great-circle distance unless told otherwise).
+ */
+public class RouteEngine {
+    private final IndexedStreetGraph graph;
+    private final ContractionHierarchy hierarchy;
+    private final StreetHeuristic heuristic;
+    private final ThreadLocal<SearchWorkspace> workspaces;
+    private final ThreadLocal<SearchWorkspace> backwardWorkspaces;
+
+    public RouteEngine(StreetMapGraph g) {
+        this(g, null, null);
+    }
+
+    /**
+     * Creates an engine that answers queries with HIERARCHY, unless it is null,
+     * in which case it runs A* with HEURISTIC, or the great-circle distance if
+     * that is null too.
+     */
+    public RouteEngine(StreetMapGraph g, ContractionHierarchy hierarchy,
+                       StreetHeuristic heuristic) {
+        graph = g.indexed();
+        this.hierarchy = hierarchy;
+        this.heuristic = heuristic != null ? heuristic : graph::estimatedDistance;
+        workspaces = ThreadLocal.withInitial(() -> new SearchWorkspace(graph.size()));
+        backwardWorkspaces = ThreadLocal.withInitial(() -> new SearchWorkspace(graph.size()));
+    }
+
+    public IndexedStreetGraph graph() {
+        return graph;
+    }
+
+    /** Returns the hierarchy queries run over, or null if there is none. */
+    public ContractionHierarchy hierarchy() {
+        return hierarchy;
+    }
+
+    /**
+     * Returns the calling thread's workspace, reset and ready for a new search.
+     * It must not be handed to other threads.
+     */
+    public SearchWorkspace workspace() {
+        SearchWorkspace ws = workspaces.get();
+        ws.reset();
+        return ws;
+    }
+
+    /** Routes between the vertices with OSM ids START and END. */
+    public ShortestPathsSolver<Long> shortestPath(long start, long end, double timeout) {
+        return shortestPath(start, end, new CancellationToken(timeout));
+    }
+
+    /**
+     * Routes between the vertices with OSM ids START and END, giving up with
+     * TIMEOUT once TOKEN is cancelled or expires.
+     */
+    public ShortestPathsSolver<Long> shortestPath(long start, long end, CancellationToken token) {
+        if (hierarchy != null) {
+            SearchWorkspace backward = backwardWorkspaces.get();
+            backward.reset();
+            return new HierarchySolver(hierarchy, workspace(), backward, start, end, token);
+        }
+        return new StreetMapAStarSolver(graph, workspace(), heuristic, start, end, token);
+    }
+
+    /**
+     * Routes from whichever of STARTS is cheapest to leave from, at a cost of
+     * STARTCOSTS[i] for STARTS[i], to whichever of ENDS is cheapest to arrive
+     * at, paying ENDCOSTS[j] more for ENDS[j], all in one search. The solution
+     * runs from the start used to the end used and its weight includes both
+     * costs. Unknown ids are ignored.
+     */
+    public ShortestPathsSolver<Long> shortestPath(long[] starts, double[] startCosts, long[] ends,
+                                                  double[] endCosts, CancellationToken token) {
+        if (hierarchy != null) {
+            SearchWorkspace backward = backwardWorkspaces.get();
+            backward.reset();
+            return new HierarchySolver(hierarchy, workspace(), backward, starts, startCosts,
+                    ends, endCosts, token);
+        }
+        return new StreetMapAStarSolver(graph, workspace(), heuristic, starts, startCosts,
+                ends, endCosts, token);
+    }
+
+    /**
+     * Returns the matrix of network distances from each vertex in SOURCES (rows)
+     * to each vertex in TARGETS (columns), given as OSM ids. Unknown or
+     * unreachable pairs are infinite. Runs one Dijkstra search per source, each
+     * stopping as soon as every target has been settled.
+     */
+    public double[][] distanceMatrix(long[] sources, long[] targets) {
+        int[] targetIndices = new int[targets.length];
+        for (int j = 0; j < targets.length; j++) {
+            targetIndices[j] = graph.indexOf(targets[j]);
+        }
+        double[][] matrix = new double[sources.length][];
+        for (int i = 0; i < sources.length; i++) {
+            matrix[i] = new double[targets.length];
+            distancesFrom(graph.indexOf(sources[i]), targetIndices, matrix[i]);
+        }
+        return matrix;
+    }
+
+    /* Fills ROW with the distances from vertex SOURCE to the vertices in TARGETS. */
+    private void distancesFrom(int source, int[] targets, double[] row) {
+        SearchWorkspace ws = workspace();
+        if (source < 0) {
+            Arrays.fill(row, Double.POSITIVE_INFINITY);
+            return;
+        }
+        int remaining = 0;
+        for (int t : targets) {
+            if (t >= 0 && !ws.marked(t)) {
+                ws.mark(t);
+                remaining++;
+            }
+        }
+
+        IntRadixMinPQ pq = ws.radixPq();
+        ws.reach(source, 0.0, -1);
+        pq.add(source, 0.0);
+        while (pq.size() > 0 && remaining > 0) {
+            int p = pq.removeSmallest();
+            if (ws.marked(p)) {
+                remaining--;
+            }
+            double dist = ws.distTo(p);
+            int end = graph.firstEdge(p + 1);
+            for (int e = graph.firstEdge(p); e < end; e++) {
+                int q = graph.target(e);
+                double d = dist + graph.weight(e);
+                if (d < ws.distTo(q)) {
+                    ws.reach(q, d, p);
+                    if (pq.contains(q)) {
+                        pq.changePriority(q, d);
+                    } else {
+                        pq.add(q, d);
+                    }
+                }
+            }
+        }
+
+        /* Every target is either settled or unreachable, so these are final. */
+        for (int j = 0; j < targets.length; j++) {
+            row[j] = targets[j] < 0 ? Double.POSITIVE_INFINITY : ws.distTo(targets[j]);
+        }
+    }
+
+    /**
+     * Returns every vertex whose network distance from the vertex with OSM id
+     * SOURCE is at most BOUND. The search never settles or queues anything
+     * farther than BOUND, so its cost depends only on the size of the answer.
+     */
+    public Isochrone isochrone(long source, double bound) {
+        SearchWorkspace ws = workspace();
+        int s = graph.indexOf(source);
+        int[] order = new int[16];
+        int settled = 0;
+        if (s < 0 || !(bound >= 0.0)) {
+            return new Isochrone(graph, order, settled);
+        }
+
+        IntRadixMinPQ pq = ws.radixPq();
+        ws.reach(s, 0.0, -1);
+        pq.add(s, 0.0);
+        while (pq.size() > 0) {
+            int p = pq.removeSmallest();
+            if (settled == order.length) {
+                order = Arrays.copyOf(order, 2 * settled);
+            }
+            order[settled] = p;
+            settled++;
+            double dist = ws.distTo(p);
+            int end = graph.firstEdge(p + 1);
+            for (int e = graph.firstEdge(p); e < end; e++) {
+                int q = graph.target(e);
+                double d = dist + graph.weight(e);
+                if (d <= bound && d < ws.distTo(q)) {
+                    ws.reach(q, d, p);
+                    if (pq.contains(q)) {
+                        pq.changePriority(q, d);
+                    } else {
+                        pq.add(q, d);
+                    }
+                }
+            }
+        }
+        return new Isochrone(graph, order, settled);
+    }
+}
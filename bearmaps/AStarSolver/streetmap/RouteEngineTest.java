@@ -0,0 +1,211 @@
+package bearmaps.proj2c.streetmap;
+
+import bearmaps.proj2c.AStarSolver;
+import bearmaps.proj2c.ShortestPathsSolver;
+import bearmaps.proj2c.SolverOutcome;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+
+public class RouteEngineTest {
+    private static final String BERKELEY = "bearmaps/AStarSolver/input/berkeley-street-data.simple";
+    /* No node in the Berkeley graph has this id. */
+    private static final long UNKNOWN = 1L;
+
+    @Test
+    public void testDistanceMatrixMatchesAStar() {
+        StreetMapGraph g = StreetMapGraph.readFromSimpleFormat(BERKELEY);
+        IndexedStreetGraph graph = g.indexed();
+        assertEquals(-1, graph.indexOf(UNKNOWN));
+        RouteEngine engine = new RouteEngine(g);
+        Random random = new Random(6);
+
+        long[] sources = new long[12];
+        for (int i = 0; i < sources.length - 1; i++) {
+            sources[i] = graph.id(random.nextInt(graph.size()));
+        }
+        sources[sources.length - 1] = UNKNOWN;
+        /* A repeated target, an unknown one, and a source as a target. */
+        long[] targets = new long[15];
+        for (int j = 0; j < 12; j++) {
+            targets[j] = graph.id(random.nextInt(graph.size()));
+        }
+        targets[12] = targets[3];
+        targets[13] = UNKNOWN;
+        targets[14] = sources[0];
+
+        /* Twice, so the second run starts from reused workspaces. */
+        for (int run = 0; run < 2; run++) {
+            double[][] matrix = engine.distanceMatrix(sources, targets);
+            assertEquals(sources.length, matrix.length);
+            int reachable = 0;
+            int unreachable = 0;
+            for (int i = 0; i < sources.length; i++) {
+                assertEquals(targets.length, matrix[i].length);
+                for (int j = 0; j < targets.length; j++) {
+                    if (sources[i] == UNKNOWN || targets[j] == UNKNOWN) {
+                        assertEquals(Double.POSITIVE_INFINITY, matrix[i][j], 0.0);
+                        continue;
+                    }
+                    ShortestPathsSolver<Long> solver =
+                            new AStarSolver<>(g, sources[i], targets[j], 60);
+                    if (solver.outcome() == SolverOutcome.SOLVED) {
+                        assertEquals(solver.solutionWeight(), matrix[i][j], 1e-9);
+                        reachable++;
+                    } else {
+                        assertEquals(Double.POSITIVE_INFINITY, matrix[i][j], 0.0);
+                        unreachable++;
+                    }
+                }
+                assertEquals(matrix[i][3], matrix[i][12], 0.0);
+            }
+            assertEquals(0.0, matrix[0][14], 0.0);
+            assertTrue(reachable > 0);
+            assertTrue(unreachable > 0);
+        }
+    }
+
+    @Test
+    public void testDistanceMatrixEmpty() {
+        RouteEngine engine = new RouteEngine(StreetMapGraph.readFromSimpleFormat(BERKELEY));
+        long v = engine.graph().id(0);
+        assertEquals(0, engine.distanceMatrix(new long[0], new long[]{v}).length);
+        double[][] matrix = engine.distanceMatrix(new long[]{v}, new long[0]);
+        assertEquals(1, matrix.length);
+        assertEquals(0, matrix[0].length);
+    }
+
+    /* Returns the network distances from SOURCE to every vertex of GRAPH, by plain Dijkstra. */
+    private static double[] distancesFrom(IndexedStreetGraph graph, int source) {
+        double[] dist = new double[graph.size()];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        dist[source] = 0.0;
+        PriorityQueue<double[]> pq = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        pq.add(new double[]{0.0, source});
+        while (!pq.isEmpty()) {
+            double[] top = pq.poll();
+            int v = (int) top[1];
+            if (top[0] > dist[v]) {
+                continue;
+            }
+            for (int e = graph.firstEdge(v); e < graph.firstEdge(v + 1); e++) {
+                int w = graph.target(e);
+                if (dist[v] + graph.weight(e) < dist[w]) {
+                    dist[w] = dist[v] + graph.weight(e);
+                    pq.add(new double[]{dist[w], w});
+                }
+            }
+        }
+        return dist;
+    }
+
+    @Test
+    public void testIsochroneMatchesDijkstra() {
+        StreetMapGraph g = StreetMapGraph.readFromSimpleFormat(BERKELEY);
+        IndexedStreetGraph graph = g.indexed();
+        RouteEngine engine = new RouteEngine(g);
+        Random random = new Random(7);
+        for (int i = 0; i < 20; i++) {
+            int source = random.nextInt(graph.size());
+            double[] dist = distancesFrom(graph, source);
+            double[] sorted = dist.clone();
+            Arrays.sort(sorted);
+            /* Exactly the distance of some vertex, so the bound itself is tested. */
+            double bound = sorted[Math.min(random.nextInt(200), graph.size() - 1)];
+            if (bound == Double.POSITIVE_INFINITY) {
+                continue;
+            }
+
+            Set<Long> expected = new HashSet<>();
+            for (int v = 0; v < graph.size(); v++) {
+                if (dist[v] <= bound) {
+                    expected.add(graph.id(v));
+                }
+            }
+            List<Long> nodes = engine.isochrone(graph.id(source), bound).nodes();
+            assertEquals(expected.size(), nodes.size());
+            assertEquals(expected, new HashSet<>(nodes));
+            assertEquals(graph.id(source), (long) nodes.get(0));
+            for (int j = 1; j < nodes.size(); j++) {
+                assertTrue(dist[graph.indexOf(nodes.get(j - 1))]
+                        <= dist[graph.indexOf(nodes.get(j))]);
+            }
+        }
+    }
+
+    @Test
+    public void testIsochroneDegenerateBounds() {
+        RouteEngine engine = new RouteEngine(StreetMapGraph.readFromSimpleFormat(BERKELEY));
+        long v = engine.graph().id(0);
+        assertEquals(List.of(v), engine.isochrone(v, 0.0).nodes());
+        assertTrue(engine.isochrone(v, -1.0).nodes().isEmpty());
+        assertTrue(engine.isochrone(v, Double.NaN).nodes().isEmpty());
+        assertTrue(engine.isochrone(UNKNOWN, 1.0).nodes().isEmpty());
+    }
+
+    /* Returns an edgeless graph of the points (LONS[i], LATS[i]), with ids i + 1. */
+    private static IndexedStreetGraph points(double[] lons, double[] lats) {
+        long[] ids = new long[lons.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i + 1;
+        }
+        return new IndexedStreetGraph(ids, lats, lons, new int[lons.length + 1], new int[0],
+                new double[0]);
+    }
+
+    /* Returns the hull of all the points of GRAPH as "lon,lat" strings. */
+    private static List<String> hull(IndexedStreetGraph graph) {
+        int[] all = new int[graph.size()];
+        for (int v = 0; v < all.length; v++) {
+            all[v] = v;
+        }
+        List<String> corners = new ArrayList<>();
+        for (double[] corner : new Isochrone(graph, all, all.length).hull()) {
+            corners.add((int) corner[0] + "," + (int) corner[1]);
+        }
+        return corners;
+    }
+
+    @Test
+    public void testHull() {
+        /* A square with points inside, collinear points on its sides and a repeated corner. */
+        IndexedStreetGraph square = points(
+                new double[]{2, 0, 1, 2, 0, 1, 2, 0, 1, 2, 0},
+                new double[]{2, 0, 1, 0, 2, 0, 1, 1, 2, 2, 0});
+        assertEquals(List.of("0,0", "2,0", "2,2", "0,2"), hull(square));
+
+        IndexedStreetGraph line = points(new double[]{3, 1, 2, 1, 0}, new double[]{3, 1, 2, 1, 0});
+        assertEquals(List.of("0,0", "3,3"), hull(line));
+
+        IndexedStreetGraph same = points(new double[]{1, 1, 1}, new double[]{5, 5, 5});
+        assertEquals(List.of("1,5"), hull(same));
+
+        IndexedStreetGraph empty = points(new double[0], new double[0]);
+        assertEquals(List.of(), hull(empty));
+    }
+
+    @Test
+    public void testHullEnclosesIsochrone() {
+        StreetMapGraph g = StreetMapGraph.readFromSimpleFormat(BERKELEY);
+        Isochrone isochrone = new RouteEngine(g).isochrone(g.indexed().id(100), 1.0);
+        List<double[]> hull = isochrone.hull();
+        assertTrue(hull.size() >= 3);
+        for (long id : isochrone.nodes()) {
+            int v = g.indexed().indexOf(id);
+            for (int i = 0; i < hull.size(); i++) {
+                double[] a = hull.get(i);
+                double[] b = hull.get((i + 1) % hull.size());
+                double cross = (b[0] - a[0]) * (g.indexed().lat(v) - a[1])
+                        - (b[1] - a[1]) * (g.indexed().lon(v) - a[0]);
+                /* Counter-clockwise, so every node is on the left of every side. */
+                assertTrue(cross >= -1e-15);
+            }
+        }
+    }
+}
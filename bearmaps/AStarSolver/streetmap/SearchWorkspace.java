@@ -0,0 +1,107 @@
+package bearmaps.proj2c.streetmap;
+
+import bearmaps.IntMinPQ;
+import bearmaps.IntRadixMinPQ;
+
+import java.util.Arrays;
+
+/**
+ * Per-vertex scratch state for one search over an IndexedStreetGraph: the best
+ * known distance to each vertex, the vertex it was reached from, and the fringe.
+ *
+ * A workspace is meant to be reused query after query by a single thread (see
+ * RouteEngine). Instead of clearing its arrays, reset() bumps a generation
+ * counter; an entry only counts as set if its stamp equals the current
+ * generation, so starting a new search is O(1) in the size of the graph.
+ * Searches can also mark vertices they care about, e.g. the targets of a
+ * one-to-many search; marks are forgotten the same way.
+ *
+ * Searches without a heuristic pop their fringe in increasing order, and can
+ * use the radix heap from radixPq() instead of the binary heap from pq().
+ */
+public class SearchWorkspace {
+    private final double[] distTo;
+    private final int[] edgeTo;
+    private final int[] stamp;
+    private final int[] markStamp;
+    private final IntMinPQ pq;
+    private IntRadixMinPQ radixPq;
+    private int generation;
+
+    public SearchWorkspace(int size) {
+        distTo = new double[size];
+        edgeTo = new int[size];
+        stamp = new int[size];
+        markStamp = new int[size];
+        pq = new IntMinPQ(size);
+        /* Stamps start at 0, so nothing counts as reached yet. */
+        generation = 1;
+    }
+
+    /** Forgets the previous search. */
+    public void reset() {
+        generation++;
+        if (generation == 0) {
+            /* The counter wrapped around, so old stamps could look current again. */
+            Arrays.fill(stamp, 0);
+            Arrays.fill(markStamp, 0);
+            generation = 1;
+        }
+        pq.clear();
+        if (radixPq != null) {
+            radixPq.clear();
+        }
+    }
+
+    /** Returns true if V has been reached since the last reset. */
+    public boolean reached(int v) {
+        return stamp[v] == generation;
+    }
+
+    /** Returns the best known distance to V, or infinity if V hasn't been reached. */
+    public double distTo(int v) {
+        return reached(v) ? distTo[v] : Double.POSITIVE_INFINITY;
+    }
+
+    /** Returns the vertex V was reached from, or -1 for a source. Assumes V was reached. */
+    public int edgeTo(int v) {
+        return edgeTo[v];
+    }
+
+    /** Records that V is reachable at distance DIST through vertex FROM (-1 for a source). */
+    public void reach(int v, double dist, int from) {
+        stamp[v] = generation;
+        distTo[v] = dist;
+        edgeTo[v] = from;
+    }
+
+    /** Marks V until the next reset. */
+    public void mark(int v) {
+        markStamp[v] = generation;
+    }
+
+    /** Returns true if V has been marked since the last reset. */
+    public boolean marked(int v) {
+        return markStamp[v] == generation;
+    }
+
+    public IntMinPQ pq() {
+        return pq;
+    }
+
+    /**
+     * Returns the radix heap fringe, for searches whose priorities never drop
+     * below the last one removed. It is created the first time it is asked for.
+     */
+    public IntRadixMinPQ radixPq() {
+        if (radixPq == null) {
+            radixPq = new IntRadixMinPQ(stamp.length);
+        }
+        return radixPq;
+    }
+
+    /** Returns the number of vertices this workspace can hold. */
+    public int size() {
+        return stamp.length;
+    }
+}
@@ -0,0 +1,305 @@
+package bearmaps.proj2c.streetmap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Reads and writes graphs in the simple format (see
+ * StreetMapGraph.writeToFile) straight through a FileChannel and a fixed
+ * buffer. Numbers are parsed from and printed to bytes by hand, so neither
+ * direction builds lines, strings or the whole file in memory.
+ */
+class SimpleFormat {
+    private static final int BUFFER_BYTES = 1 << 16;
+    /* Longest number printed or parsed through the fast paths, with room to spare. */
+    private static final int MAX_NUMBER_BYTES = 64;
+    private static final double[] POWERS_OF_TEN = new double[23];
+    private static final long FIXED_SCALE = 10_000_000_000L;
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    private final byte[] number = new byte[MAX_NUMBER_BYTES];
+    private int line = 1;
+
+    private SimpleFormat(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /** Adds the nodes and edges in the simple-format file at path FILENAME to GRAPH. */
+    static void read(String filename, StreetMapGraph graph) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ)) {
+            SimpleFormat in = new SimpleFormat(channel);
+            in.buffer.limit(0);
+            long n = in.readLong();
+            in.endLine();
+            for (long i = 0; i < n; i++) {
+                in.expect('(');
+                long id = in.readLong();
+                in.expect(',');
+                double lat = in.readDouble();
+                in.expect(',');
+                double lon = in.readDouble();
+                in.expect(')');
+                in.endLine();
+                graph.addNode(Node.of(id, lat, lon));
+            }
+            for (long i = 0; i < n; i++) {
+                long from = in.readLong();
+                in.expect(':');
+                while (in.skipSpaces() != '\n' && in.peek() >= 0) {
+                    graph.addWeightedEdge(from, in.readLong());
+                }
+                in.endLine();
+            }
+        }
+    }
+
+    /** Writes the frozen graph GRAPH to the file at path FILENAME in the simple format. */
+    static void write(String filename, IndexedStreetGraph graph) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            SimpleFormat out = new SimpleFormat(channel);
+            out.writeLong(graph.size());
+            out.write('\n');
+            for (int v = 0; v < graph.size(); v++) {
+                out.write('(');
+                out.writeLong(graph.id(v));
+                out.write(',');
+                out.write(' ');
+                out.writeFixed(graph.lat(v));
+                out.write(',');
+                out.write(' ');
+                out.writeFixed(graph.lon(v));
+                out.write(')');
+                out.write('\n');
+            }
+            for (int v = 0; v < graph.size(); v++) {
+                out.writeLong(graph.id(v));
+                out.write(' ');
+                out.write(':');
+                out.write(' ');
+                for (int e = graph.firstEdge(v); e < graph.firstEdge(v + 1); e++) {
+                    out.writeLong(graph.id(graph.target(e)));
+                    out.write(' ');
+                }
+                out.write('\n');
+            }
+            out.flush();
+        }
+    }
+
+    /* Returns the next byte without consuming it, or -1 at the end of the file. */
+    private int peek() throws IOException {
+        if (!buffer.hasRemaining()) {
+            buffer.clear();
+            if (channel.read(buffer) < 0) {
+                buffer.limit(0);
+                return -1;
+            }
+            buffer.flip();
+            if (!buffer.hasRemaining()) {
+                return peek();
+            }
+        }
+        return buffer.get(buffer.position());
+    }
+
+    private void skip() {
+        buffer.position(buffer.position() + 1);
+    }
+
+    /* Skips spaces, tabs and carriage returns, and returns the next byte. */
+    private int skipSpaces() throws IOException {
+        int b = peek();
+        while (b == ' ' || b == '\t' || b == '\r') {
+            skip();
+            b = peek();
+        }
+        return b;
+    }
+
+    /* Skips to the start of the next line. */
+    private void endLine() throws IOException {
+        int b = skipSpaces();
+        if (b == '\n') {
+            skip();
+            line++;
+        } else if (b >= 0) {
+            throw error("expected the end of the line");
+        }
+    }
+
+    private void expect(char c) throws IOException {
+        if (skipSpaces() != c) {
+            throw error("expected '" + c + "'");
+        }
+        skip();
+    }
+
+    private IOException error(String message) throws IOException {
+        int b = peek();
+        return new IOException("line " + line + ": " + message + ", found "
+                + (b < 0 ? "the end of the file" : "'" + (char) b + "'"));
+    }
+
+    /* Copies the characters of the next number into number and returns how many there are. */
+    private int readNumber() throws IOException {
+        int b = skipSpaces();
+        int length = 0;
+        while (b >= 0 && (b >= '0' && b <= '9' || b == '-' || b == '+' || b == '.'
+                || b == 'e' || b == 'E')) {
+            if (length == number.length) {
+                throw error("number too long");
+            }
+            number[length] = (byte) b;
+            length++;
+            skip();
+            b = peek();
+        }
+        if (length == 0) {
+            throw error("expected a number");
+        }
+        return length;
+    }
+
+    private long readLong() throws IOException {
+        int length = readNumber();
+        boolean negative = number[0] == '-';
+        int i = negative ? 1 : 0;
+        if (i == length) {
+            throw error("expected digits");
+        }
+        /* Accumulated negatively, so Long.MIN_VALUE fits. */
+        long value = 0;
+        for (; i < length; i++) {
+            int digit = number[i] - '0';
+            if (digit < 0 || digit > 9 || value < (Long.MIN_VALUE + digit) / 10) {
+                throw error("bad integer " + new String(number, 0, length,
+                        StandardCharsets.US_ASCII));
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative && value == Long.MIN_VALUE) {
+            throw error("integer too large");
+        }
+        return negative ? value : -value;
+    }
+
+    /*
+    Parses a decimal number. When its digits fit in 2^53 and it has at most 22
+    decimals, digits / 10^decimals is exactly what Double.parseDouble returns,
+    since both are exact doubles and division rounds correctly. Anything else
+    goes through Double.parseDouble.
+     */
+    private double readDouble() throws IOException {
+        int length = readNumber();
+        int i = number[0] == '-' || number[0] == '+' ? 1 : 0;
+        long digits = 0;
+        int decimals = -1;
+        boolean sawDigit = false;
+        boolean fast = true;
+        for (; i < length && fast; i++) {
+            byte b = number[i];
+            if (b == '.' && decimals < 0) {
+                decimals = 0;
+            } else if (b >= '0' && b <= '9') {
+                digits = digits * 10 + (b - '0');
+                decimals += decimals >= 0 ? 1 : 0;
+                sawDigit = true;
+                fast = digits <= 1L << 53;
+            } else {
+                fast = false;
+            }
+        }
+        if (fast && sawDigit && decimals < POWERS_OF_TEN.length) {
+            double value = decimals > 0 ? digits / POWERS_OF_TEN[decimals] : digits;
+            return number[0] == '-' ? -value : value;
+        }
+        String s = new String(number, 0, length, StandardCharsets.US_ASCII);
+        try {
+            return Double.parseDouble(s);
+        } catch (NumberFormatException e) {
+            throw error("bad number " + s);
+        }
+    }
+
+    private void write(char c) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put((byte) c);
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private void writeLong(long value) throws IOException {
+        if (buffer.remaining() < MAX_NUMBER_BYTES) {
+            flush();
+        }
+        if (value < 0) {
+            buffer.put((byte) '-');
+        } else {
+            value = -value;
+        }
+        /* Digits are produced from the negative value, so Long.MIN_VALUE works too. */
+        int length = 0;
+        do {
+            number[length] = (byte) ('0' - value % 10);
+            length++;
+            value /= 10;
+        } while (value != 0);
+        while (length > 0) {
+            length--;
+            buffer.put(number[length]);
+        }
+    }
+
+    /*
+    Writes VALUE with 10 decimals, like String.format("%.10f", VALUE). Values
+    of coordinate size are scaled to an exact long and printed by hand; others
+    go through String.format.
+     */
+    private void writeFixed(double value) throws IOException {
+        if (!(Math.abs(value) < 1e8)) {
+            for (byte b : String.format(Locale.ROOT, "%.10f", value)
+                    .getBytes(StandardCharsets.US_ASCII)) {
+                write((char) b);
+            }
+            return;
+        }
+        if (buffer.remaining() < MAX_NUMBER_BYTES) {
+            flush();
+        }
+        if (value < 0 || 1 / value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        long scaled = Math.round(value * FIXED_SCALE);
+        writeLong(scaled / FIXED_SCALE);
+        buffer.put((byte) '.');
+        long fraction = scaled % FIXED_SCALE;
+        for (long unit = FIXED_SCALE / 10; unit > 0; unit /= 10) {
+            buffer.put((byte) ('0' + fraction / unit % 10));
+        }
+    }
+}
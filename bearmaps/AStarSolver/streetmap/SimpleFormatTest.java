@@ -0,0 +1,87 @@
+package bearmaps.proj2c.streetmap;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class SimpleFormatTest {
+    private static final String BERKELEY = "bearmaps/AStarSolver/input/berkeley-street-data.simple";
+    /* Three nodes in a line, 10 - 20 - 30. */
+    private static final String LINE = "3\n"
+            + "(10, 37.87, -122.26)\n"
+            + "(20, 37.871, -122.261)\n"
+            + "(30, 37.872, -122.262)\n"
+            + "10 : 20 \n"
+            + "20 : 10 30 \n"
+            + "30 : 20 \n";
+
+    /* Returns a temporary file holding TEXT. */
+    private static File file(String text) throws IOException {
+        File file = File.createTempFile("graph", ".simple");
+        file.deleteOnExit();
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.US_ASCII));
+        return file;
+    }
+
+    /* Reads TEXT into a new graph, and cleans it. */
+    private static StreetMapGraph read(String text) throws IOException {
+        StreetMapGraph graph = new StreetMapGraph();
+        SimpleFormat.read(file(text).getPath(), graph);
+        graph.clean();
+        return graph;
+    }
+
+    /* Checks that reading TEXT fails with an IOException. */
+    private static void assertMalformed(String text) {
+        try {
+            SimpleFormat.read(file(text).getPath(), new StreetMapGraph());
+            fail("read malformed input: " + text);
+        } catch (IOException e) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        StreetMapGraph graph = StreetMapGraph.readFromSimpleFormat(BERKELEY);
+        assertTrue(graph.indexed().size() > 0);
+        File first = File.createTempFile("berkeley", ".simple");
+        first.deleteOnExit();
+        SimpleFormat.write(first.getPath(), graph.indexed());
+        StreetMapGraph read = StreetMapGraph.readFromSimpleFormat(first.getPath());
+        assertEquals(graph, read);
+
+        File second = File.createTempFile("berkeley", ".simple");
+        second.deleteOnExit();
+        SimpleFormat.write(second.getPath(), read.indexed());
+        assertArrayEquals(Files.readAllBytes(first.toPath()), Files.readAllBytes(second.toPath()));
+    }
+
+    @Test
+    public void testLineEndings() throws IOException {
+        StreetMapGraph expected = read(LINE);
+        assertEquals(3, expected.indexed().size());
+        assertEquals(expected, read(LINE.replace("\n", "\r\n")));
+        assertEquals(expected, read(LINE.substring(0, LINE.length() - 1)));
+        assertEquals(expected, read(LINE.replace(" \n", "\n")));
+        assertEquals(expected, read(LINE.replace(" ", "\t")));
+    }
+
+    @Test
+    public void testMalformed() {
+        assertMalformed(LINE.replace("37.871", "37.8x71"));
+        assertMalformed(LINE.replace("-122.262", "abc"));
+        assertMalformed(LINE.replace("(20", "(2a0"));
+        assertMalformed(LINE.replace("20 : 10", "20 : 1a0"));
+        assertMalformed(LINE.replace("-122.26)", "-122.26"));
+        assertMalformed(LINE.replace("(30", "30"));
+        assertMalformed(LINE.replace("20 : ", "20 "));
+        assertMalformed(LINE.replace("3\n", "x\n"));
+        assertMalformed(LINE.replace("(10, 37.87, -122.26)\n", "(10, 37.87, -122.26) 7\n"));
+        assertMalformed("4" + LINE.substring(1));
+        assertMalformed("");
+    }
+}
@@ -0,0 +1,121 @@
+package bearmaps.proj2c.streetmap;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Helpers for binary snapshot files. Snapshots are written with a
+ * DataOutputStream, so they are big-endian, and read back from a read-only
+ * memory mapping of the whole file. Arrays are copied out of the mapping in
+ * bulk instead of being read value by value, so loading one costs little more
+ * than paging the file in.
+ */
+public final class SnapshotIO {
+    private SnapshotIO() {}
+
+    /** Maps the whole file at path FILENAME read-only. */
+    public static ByteBuffer map(String filename) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(filename),
+                StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(filename + " is too large to map");
+            }
+            /* The mapping stays valid after the channel is closed. */
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    /**
+     * Reads a count written with writeInt, throwing an IOException if it is
+     * negative or missing.
+     */
+    public static int readCount(ByteBuffer in) throws IOException {
+        if (in.remaining() < Integer.BYTES) {
+            throw new IOException("snapshot ends before a count");
+        }
+        int n = in.getInt();
+        if (n < 0) {
+            throw new IOException("negative count " + n + " in snapshot");
+        }
+        return n;
+    }
+
+    /*
+    Throws an IOException unless N values of SIZE bytes each are left in IN,
+    so a corrupt count fails here instead of allocating a huge array.
+     */
+    private static void checkRemaining(ByteBuffer in, int n, int size) throws IOException {
+        if (n < 0 || n > in.remaining() / size) {
+            throw new IOException("count " + n + " runs past the end of the snapshot");
+        }
+    }
+
+    /** Reads N longs, throwing an IOException if fewer are left. */
+    public static long[] readLongs(ByteBuffer in, int n) throws IOException {
+        checkRemaining(in, n, Long.BYTES);
+        long[] values = new long[n];
+        in.asLongBuffer().get(values);
+        in.position(in.position() + n * Long.BYTES);
+        return values;
+    }
+
+    /** Reads N ints, throwing an IOException if fewer are left. */
+    public static int[] readInts(ByteBuffer in, int n) throws IOException {
+        checkRemaining(in, n, Integer.BYTES);
+        int[] values = new int[n];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + n * Integer.BYTES);
+        return values;
+    }
+
+    /** Reads N doubles, throwing an IOException if fewer are left. */
+    public static double[] readDoubles(ByteBuffer in, int n) throws IOException {
+        checkRemaining(in, n, Double.BYTES);
+        double[] values = new double[n];
+        in.asDoubleBuffer().get(values);
+        in.position(in.position() + n * Double.BYTES);
+        return values;
+    }
+
+    /** Reads a string written by writeString. */
+    public static String readString(ByteBuffer in) throws IOException {
+        int n = readCount(in);
+        checkRemaining(in, n, 1);
+        byte[] bytes = new byte[n];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        for (long v : values) {
+            out.writeLong(v);
+        }
+    }
+
+    public static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int v : values) {
+            out.writeInt(v);
+        }
+    }
+
+    public static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+        for (double v : values) {
+            out.writeDouble(v);
+        }
+    }
+
+    /**
+     * Writes S as its length in bytes followed by its UTF-8 bytes. Unlike
+     * DataOutputStream.writeUTF, it has no length limit.
+     */
+    public static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
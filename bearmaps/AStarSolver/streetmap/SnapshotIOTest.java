@@ -0,0 +1,103 @@
+package bearmaps.proj2c.streetmap;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public class SnapshotIOTest {
+    private static final String BERKELEY = "bearmaps/AStarSolver/input/berkeley-street-data.simple";
+
+    /* Returns what GRAPH.write writes, followed by a marker. */
+    private static byte[] written(IndexedStreetGraph graph) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        graph.write(out);
+        out.writeInt(0x12345678);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /* Checks that reading IN fails with an IOException. */
+    private static void assertCorrupt(byte[] in) {
+        try {
+            IndexedStreetGraph.read(ByteBuffer.wrap(in));
+            fail("read a corrupt graph");
+        } catch (IOException e) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        IndexedStreetGraph graph = StreetMapGraph.readFromSimpleFormat(BERKELEY).indexed();
+        ByteBuffer in = ByteBuffer.wrap(written(graph));
+        IndexedStreetGraph read = IndexedStreetGraph.read(in);
+        /* Reading stops right after the graph. */
+        assertEquals(0x12345678, in.getInt());
+        assertEquals(0, in.remaining());
+
+        assertEquals(graph.size(), read.size());
+        for (int v = 0; v < graph.size(); v++) {
+            assertEquals(graph.id(v), read.id(v));
+            assertEquals(v, read.indexOf(graph.id(v)));
+            assertEquals(graph.lat(v), read.lat(v), 0.0);
+            assertEquals(graph.lon(v), read.lon(v), 0.0);
+        }
+        for (int v = 0; v <= graph.size(); v++) {
+            assertEquals(graph.firstEdge(v), read.firstEdge(v));
+        }
+        for (int e = 0; e < graph.firstEdge(graph.size()); e++) {
+            assertEquals(graph.target(e), read.target(e));
+            assertEquals(graph.weight(e), read.weight(e), 0.0);
+        }
+    }
+
+    @Test
+    public void testCorruptCounts() throws IOException {
+        byte[] bytes = written(StreetMapGraph.readFromSimpleFormat(BERKELEY).indexed());
+        /* The vertex count is first, then the edge count. */
+        for (int count : new int[]{Integer.MAX_VALUE, Integer.MAX_VALUE / 8, -1}) {
+            byte[] corrupt = bytes.clone();
+            ByteBuffer.wrap(corrupt).putInt(0, count);
+            assertCorrupt(corrupt);
+            corrupt = bytes.clone();
+            ByteBuffer.wrap(corrupt).putInt(4, count);
+            assertCorrupt(corrupt);
+        }
+        assertCorrupt(Arrays.copyOf(bytes, bytes.length / 2));
+        assertCorrupt(new byte[0]);
+    }
+
+    @Test
+    public void testReadPastEnd() throws IOException {
+        ByteBuffer in = ByteBuffer.allocate(16);
+        assertEquals(2, SnapshotIO.readLongs(in.duplicate(), 2).length);
+        assertEquals(4, SnapshotIO.readInts(in.duplicate(), 4).length);
+        try {
+            SnapshotIO.readDoubles(in.duplicate(), 3);
+            fail("read past the end");
+        } catch (IOException e) {
+            /* Expected. */
+        }
+        try {
+            SnapshotIO.readInts(in.duplicate(), 5);
+            fail("read past the end");
+        } catch (IOException e) {
+            /* Expected. */
+        }
+        /* A string claiming to be longer than what is left. */
+        in.putInt(0, 13);
+        try {
+            SnapshotIO.readString(in.duplicate());
+            fail("read past the end");
+        } catch (IOException e) {
+            /* Expected. */
+        }
+        in.putInt(0, 12);
+        assertEquals(12, SnapshotIO.readString(in.duplicate()).length());
+    }
+}
@@ -0,0 +1,11 @@
+package bearmaps.proj2c.streetmap;
+
+/**
+ * A* heuristic over the vertex indices of an IndexedStreetGraph. The default is
+ * the great-circle distance, IndexedStreetGraph::estimatedDistance; Landmarks
+ * gives tighter bounds.
+ */
+public interface StreetHeuristic {
+    /** Returns a lower bound on the length of any path from vertex V to vertex GOAL. */
+    double estimate(int v, int goal);
+}
@@ -0,0 +1,186 @@
+package bearmaps.proj2c.streetmap;
+
+import bearmaps.IntMinPQ;
+import bearmaps.proj2c.CancellationToken;
+import bearmaps.proj2c.ShortestPathsSolver;
+import bearmaps.proj2c.SolverOutcome;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A* solver specialised for StreetMapGraph. Runs the same search as AStarSolver,
+ * but over the graph's IndexedStreetGraph: vertices are dense int indices, and
+ * distTo, edgeTo and the fringe live in a SearchWorkspace, so relaxing an edge
+ * neither boxes nor hashes. Use RouteEngine to reuse workspaces across queries.
+ *
+ * The heuristic defaults to the great-circle distance; any StreetHeuristic,
+ * such as Landmarks, can be used instead.
+ */
+public class StreetMapAStarSolver implements ShortestPathsSolver<Long> {
+    // private variables
+    private IndexedStreetGraph graph;
+    private SearchWorkspace ws;
+    private StreetHeuristic heuristic;
+    private List<Long> solution;
+    private SolverOutcome solvedOutcome;
+    /* The reachable ends and what arriving at each costs on top. */
+    private int[] goals;
+    private double[] goalCosts;
+    private int goalCount;
+    /* The cheapest arrival found so far, and the end it arrived at. */
+    private double best;
+    private int bestGoal;
+    private int numStates;
+    private double weight;
+    private double time;
+
+    public StreetMapAStarSolver(StreetMapGraph input, long start, long end, double timeout) {
+        this(input, start, end, timeout, input.indexed()::estimatedDistance);
+    }
+
+    public StreetMapAStarSolver(StreetMapGraph input, long start, long end, double timeout,
+                                StreetHeuristic heuristic) {
+        this(input.indexed(), new SearchWorkspace(input.indexed().size()), heuristic,
+                start, end, new CancellationToken(timeout));
+    }
+
+    /** Searches GRAPH using WS, which must be freshly reset and not shared. */
+    StreetMapAStarSolver(IndexedStreetGraph graph, SearchWorkspace ws, StreetHeuristic heuristic,
+                         long start, long end, CancellationToken token) {
+        this(graph, ws, heuristic, new long[]{start}, new double[]{0.0}, new long[]{end},
+                new double[]{0.0}, token);
+    }
+
+    /**
+     * Searches GRAPH using WS, which must be freshly reset and not shared, for
+     * the cheapest way to leave from any vertex STARTS[i] at a cost of
+     * STARTCOSTS[i] and arrive at any vertex ENDS[j], paying ENDCOSTS[j] more.
+     * The solution runs from the start used to the end used, and its weight
+     * includes both costs. Unknown ids are ignored.
+     */
+    StreetMapAStarSolver(IndexedStreetGraph graph, SearchWorkspace ws, StreetHeuristic heuristic,
+                         long[] starts, double[] startCosts, long[] ends, double[] endCosts,
+                         CancellationToken token) {
+        this.graph = graph;
+        this.ws = ws;
+        this.heuristic = heuristic;
+        solution = new ArrayList<>();
+        numStates = 0;
+        goals = new int[ends.length];
+        goalCosts = new double[ends.length];
+        for (int j = 0; j < ends.length; j++) {
+            int t = graph.indexOf(ends[j]);
+            if (t >= 0) {
+                goals[goalCount] = t;
+                goalCosts[goalCount] = endCosts[j];
+                goalCount++;
+            }
+        }
+        best = Double.POSITIVE_INFINITY;
+        bestGoal = -1;
+
+        if (goalCount > 0) {
+            for (int i = 0; i < starts.length; i++) {
+                int s = graph.indexOf(starts[i]);
+                if (s >= 0 && startCosts[i] < ws.distTo(s)) {
+                    reach(s, startCosts[i], -1);
+                }
+            }
+        }
+
+        /*
+        Stops once nothing left can beat the best arrival found, since
+        priorities never overestimate what arriving through a vertex costs.
+         */
+        IntMinPQ pq = ws.pq();
+        while (pq.size() > 0 && pq.smallestPriority() < best) {
+            if (token.shouldStop(numStates)) {
+                time = token.elapsedTime();
+                solvedOutcome = SolverOutcome.TIMEOUT;
+                return;
+            }
+            int current = pq.removeSmallest();
+            numStates++;
+            relaxAll(current);
+        }
+
+        time = token.elapsedTime();
+        if (bestGoal < 0) {
+            solvedOutcome = SolverOutcome.UNSOLVABLE;
+            return;
+        }
+        for (int v = bestGoal; v != -1; v = ws.edgeTo(v)) {
+            solution.add(graph.id(v));
+        }
+        Collections.reverse(solution);
+        weight = best;
+        solvedOutcome = SolverOutcome.SOLVED;
+    }
+
+    /* Returns a lower bound on the cost of arriving at an end from V. */
+    private double estimate(int v) {
+        double h = Double.POSITIVE_INFINITY;
+        for (int j = 0; j < goalCount; j++) {
+            h = Math.min(h, heuristic.estimate(v, goals[j]) + goalCosts[j]);
+        }
+        return h;
+    }
+
+    /* Records that V can be reached at distance D coming from FROM, and queues it. */
+    private void reach(int v, double d, int from) {
+        IntMinPQ pq = ws.pq();
+        ws.reach(v, d, from);
+        double priority = d + estimate(v);
+        if (pq.contains(v)) {
+            pq.changePriority(v, priority);
+        } else {
+            pq.add(v, priority);
+        }
+        for (int j = 0; j < goalCount; j++) {
+            if (goals[j] == v && d + goalCosts[j] < best) {
+                best = d + goalCosts[j];
+                bestGoal = v;
+            }
+        }
+    }
+
+    /* Relaxes every edge leaving P, see AStarSolver.relax. */
+    private void relaxAll(int p) {
+        double dist = ws.distTo(p);
+        int end = graph.firstEdge(p + 1);
+        for (int e = graph.firstEdge(p); e < end; e++) {
+            int q = graph.target(e);
+            double d = dist + graph.weight(e);
+            if (d < ws.distTo(q)) {
+                reach(q, d, p);
+            }
+        }
+    }
+
+    @Override
+    public SolverOutcome outcome() {
+        return solvedOutcome;
+    }
+
+    @Override
+    public List<Long> solution() {
+        return solution;
+    }
+
+    @Override
+    public double solutionWeight() {
+        return weight;
+    }
+
+    @Override
+    public int numStatesExplored() {
+        return numStates;
+    }
+
+    @Override
+    public double explorationTime() {
+        return time;
+    }
+}
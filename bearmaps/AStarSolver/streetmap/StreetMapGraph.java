@@ -1,60 +1,149 @@
 package bearmaps.proj2c.streetmap;
 
-import bearmaps.proj2c.AStarGraph;
+import bearmaps.LongHashSet;
+import bearmaps.LongIntHashMap;
+import bearmaps.proj2c.EdgeConsumer;
+import bearmaps.proj2c.ReversibleAStarGraph;
 import bearmaps.proj2c.WeightedEdge;
 import org.xml.sax.SAXException;
 
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Scanner;
 import java.util.Set;
-
-public class StreetMapGraph implements AStarGraph<Long> {
-    private Map<Long, Node> nodes = new HashMap<>();
-    private Map<Long, Set<WeightedEdge<Long>>> neighbors = new HashMap<>();
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * The street graph of an OSM region. While a factory method is loading it,
+ * nodes and edges go into primitive arrays, with OSM ids mapped to array
+ * indices by a LongIntHashMap and duplicate edges dropped through a
+ * LongHashSet, so no boxed ids or hash map entries are made per node or edge.
+ * clean() then freezes the graph into an IndexedStreetGraph, whose compressed
+ * sparse row arrays are from then on the only copy of the graph; neighbors()
+ * reads them back as WeightedEdges for the generic solvers.
+ */
+public class StreetMapGraph implements ReversibleAStarGraph<Long> {
+    /* The nodes and edges while loading; null once the graph is frozen. */
+    private Loading loading = new Loading();
+    private IndexedStreetGraph indexed;
 
 
     /**
-     * Private empty constructor. StreetMapGraphs should only be
-     * instantiated by clients using static creation methods
+     * Empty constructor, for the readers and tests in this package. Clients
+     * should only instantiate StreetMapGraphs using static creation methods
      * readFromXML and readFromSimpleFormat.
      */
-    private StreetMapGraph() {}
+    StreetMapGraph() {}
 
     /**
-     * Returns a list of outgoing edges for V. Assumes V exists in this
-     * graph.
+     * Creates a graph that shares the frozen arrays of LOADED, which has to
+     * come from one of the factory methods, so that a subclass can be built
+     * from a file. Throws an IllegalArgumentException if LOADED isn't frozen.
+     */
+    protected StreetMapGraph(StreetMapGraph loaded) {
+        if (loaded.indexed == null) {
+            throw new IllegalArgumentException("graph has not been cleaned");
+        }
+        indexed = loaded.indexed;
+        loading = null;
+    }
+
+    /**
+     * Creates a graph from the part of a snapshot written by writeGraph,
+     * leaving IN just after it. The graph comes back cleaned and frozen.
+     * Throws an IOException if that part of the snapshot is corrupt.
+     */
+    protected StreetMapGraph(ByteBuffer in) throws IOException {
+        indexed = IndexedStreetGraph.read(in);
+        loading = null;
+    }
+
+    /**
+     * Writes the nodes and edges of this graph to OUT, for a subclass's
+     * snapshot. StreetMapGraph(ByteBuffer) reads them back.
+     */
+    protected void writeGraph(DataOutputStream out) throws IOException {
+        indexed.write(out);
+    }
+
+    /**
+     * Returns a list of outgoing edges for V, built from the frozen graph.
+     * Throws an IllegalArgumentException if V is not in this graph.
      **/
     @Override
     public List<WeightedEdge<Long>> neighbors(Long v) {
-        Set<WeightedEdge<Long>> incidentSet = neighbors.get(v);
-        List<WeightedEdge<Long>> incidentList = new ArrayList<>();
-        for (WeightedEdge<Long> e : incidentSet) {
-            incidentList.add(e);
+        int i = indexed.indexOf(v);
+        if (i < 0) {
+            throw new IllegalArgumentException("no vertex " + v);
+        }
+        int end = indexed.firstEdge(i + 1);
+        List<WeightedEdge<Long>> incidentList = new ArrayList<>(end - indexed.firstEdge(i));
+        for (int e = indexed.firstEdge(i); e < end; e++) {
+            incidentList.add(new WeightedEdge<>(v, indexed.id(indexed.target(e)),
+                    indexed.weight(e)));
         }
 
         return incidentList;
     }
 
+    /**
+     * Passes the outgoing edges of V to ACTION straight from the frozen graph,
+     * without building WeightedEdges. Throws an IllegalArgumentException if V
+     * is not in this graph.
+     */
+    @Override
+    public void forEachNeighbor(Long v, EdgeConsumer<Long> action) {
+        int i = indexed.indexOf(v);
+        if (i < 0) {
+            throw new IllegalArgumentException("no vertex " + v);
+        }
+        int end = indexed.firstEdge(i + 1);
+        for (int e = indexed.firstEdge(i); e < end; e++) {
+            action.accept(indexed.id(indexed.target(e)), indexed.weight(e));
+        }
+    }
+
+    /** Every road goes both ways, so these are the outgoing edges of V. */
+    @Override
+    public void forEachReverseNeighbor(Long v, EdgeConsumer<Long> action) {
+        forEachNeighbor(v, action);
+    }
+
+    /**
+     * Returns the edges of the reversed graph leaving V. GraphBuildingHandler
+     * always adds both directions of a road with the same weight, so these are
+     * just the outgoing edges of V.
+     */
+    @Override
+    public List<WeightedEdge<Long>> reverseNeighbors(Long v) {
+        return neighbors(v);
+    }
+
     /**
      * Returns the great-circle distance between S and GOAL. Assumes
      * S and GOAL exist in this graph.
      */
     @Override
     public double estimatedDistanceToGoal(Long s, Long goal) {
-        Node sNode = nodes.get(s);
-        Node goalNode = nodes.get(goal);
-        return distance(sNode.lon(), goalNode.lon(), sNode.lat(), goalNode.lat());
+        return indexed.estimatedDistance(indexed.indexOf(s), indexed.indexOf(goal));
+    }
+
+    /**
+     * Every edge weighs the great-circle distance between its ends, so by the
+     * triangle inequality the great-circle heuristic is consistent.
+     */
+    @Override
+    public boolean hasConsistentHeuristic() {
+        return true;
     }
 
     /**
@@ -63,13 +152,22 @@ public class StreetMapGraph implements AStarGraph<Long> {
      **/
     public Set<Long> vertices() {
         Set<Long> vertices = new HashSet<>();
-        for (long id : nodes.keySet()) {
-            vertices.add(id);
+        for (int v = 0; v < indexed.size(); v++) {
+            vertices.add(indexed.id(v));
         }
 
         return vertices;
     }
 
+    /**
+     * Returns the int-indexed snapshot of this graph that is built once the
+     * graph has been loaded. Searches that want to avoid boxing and hashing
+     * should run over it instead of neighbors().
+     */
+    public IndexedStreetGraph indexed() {
+        return indexed;
+    }
+
     /**
      * Writes this graph to the file at path FILENAME, in "simple-format";
      * creates file if it does not exist. The file is formatted as follows:
@@ -79,10 +177,7 @@ public class StreetMapGraph implements AStarGraph<Long> {
      */
     public void writeToFile(String filename) {
         try {
-            File file = new File(filename);
-            FileOutputStream out = new FileOutputStream(file);
-            out.write(getSimpleFormat().getBytes());
-            out.close();
+            SimpleFormat.write(filename, indexed);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -109,6 +204,48 @@ public class StreetMapGraph implements AStarGraph<Long> {
         return smg;
     }
 
+    /**
+     * Factory method. Creates and returns the same graph as readFromXML, but
+     * reads the file twice: once to find the nodes on roads, and once to add
+     * only those nodes and the roads. Other nodes are never created, so peak
+     * memory is a small fraction of readFromXML's on a typical extract.
+     */
+    public static StreetMapGraph readFromXMLStreaming(String filename) {
+        StreetMapGraph smg = new StreetMapGraph();
+        try {
+            SAXParser saxParser = SAXParserFactory.newInstance().newSAXParser();
+            LongHashSet roadNodes = new LongHashSet();
+            try (FileInputStream inputStream = new FileInputStream(filename)) {
+                saxParser.parse(inputStream, GraphBuildingHandler.collecting(roadNodes));
+            }
+            saxParser.reset();
+            try (FileInputStream inputStream = new FileInputStream(filename)) {
+                saxParser.parse(inputStream, new GraphBuildingHandler(smg, roadNodes));
+            }
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            e.printStackTrace();
+        }
+
+        smg.clean();
+        return smg;
+    }
+
+    /**
+     * Factory method. Creates and returns the same graph as readFromXML,
+     * parsing chunks of the file in parallel on POOL. See ParallelXMLReader.
+     */
+    public static StreetMapGraph readFromXMLParallel(String filename, ForkJoinPool pool) {
+        StreetMapGraph smg = new StreetMapGraph();
+        try {
+            new ParallelXMLReader(filename, pool).readInto(smg);
+        } catch (SAXException | IOException e) {
+            e.printStackTrace();
+        }
+
+        smg.clean();
+        return smg;
+    }
+
     /**
      * Factory method. Creates and returns a graph from the simple-format
      * file at path FILENAME; assumes file is correctly formatted.
@@ -117,28 +254,7 @@ public class StreetMapGraph implements AStarGraph<Long> {
     public static StreetMapGraph readFromSimpleFormat(String filename) {
         StreetMapGraph graph = new StreetMapGraph();
         try {
-            File file = new File(filename);
-            Scanner in = new Scanner(file);
-            int n = Integer.parseInt(in.nextLine());
-            for (int i = 0; i < n; ++i) {
-                String nodeString = in.nextLine().replace("(", "");
-                String[] tokens = nodeString.split("[,)]");
-                Node node = Node.of(Long.parseLong(tokens[0]),
-                                    Double.parseDouble(tokens[1]),
-                                    Double.parseDouble(tokens[2]));
-                graph.addNode(node);
-            }
-
-            for (int i = 0; i < n; ++i) {
-                String neighborsString = in.nextLine();
-                String[] tokens = neighborsString.split("[^\\[0-9\\]]+");
-                long fromID = Long.parseLong(tokens[0]);
-                for (int j = 1; j < tokens.length; ++j) {
-                    graph.addWeightedEdge(fromID, Long.parseLong(tokens[j]));
-                }
-            }
-
-            in.close();
+            SimpleFormat.read(filename, graph);
         } catch (IOException e) {
             e.printStackTrace();
         }
@@ -149,43 +265,92 @@ public class StreetMapGraph implements AStarGraph<Long> {
 
     /** Adds a node to this graph, if it doesn't yet exist. **/
     void addNode(Node node) {
-        if (!nodes.containsKey(node.id())) {
-            nodes.put(node.id(), node);
-            neighbors.put(node.id(), new HashSet<>());
-        }
+        loading.addNode(node.id(), node.lat(), node.lon());
     }
 
     /** Adds an edge to this graph, if FROMID and TOID are in this graph. Does
      *  not add additional edge if edge already exists.
      **/
     void addWeightedEdge(long fromID, long toID) {
-        if (nodes.containsKey(fromID) && nodes.containsKey(toID)) {
-            Node from = nodes.get(fromID);
-            Node to = nodes.get(toID);
-            double weight = distance(from.lon(), to.lon(), from.lat(), to.lat());
+        double weight = edgeWeight(fromID, toID);
+        if (!Double.isNaN(weight)) {
+            addWeightedEdge(fromID, toID, weight);
+        }
+    }
 
-            Set<WeightedEdge<Long>> edgeSet = neighbors.get(fromID);
-            edgeSet.add(new WeightedEdge<Long>(from.id(), to.id(), weight));
+    /**
+     * Returns the weight an edge from FROMID to TOID gets, or NaN if either is
+     * not in this graph. Only reads the graph, so threads may call it at once
+     * while nothing is being added.
+     */
+    double edgeWeight(long fromID, long toID) {
+        int from = loading.nodeIndex.get(fromID);
+        int to = loading.nodeIndex.get(toID);
+        if (from < 0 || to < 0) {
+            return Double.NaN;
         }
+        return distance(loading.lons[from], loading.lons[to],
+                loading.lats[from], loading.lats[to]);
+    }
+
+    /**
+     * Adds an edge of weight WEIGHT from FROMID to TOID, which have to be in
+     * this graph, unless there already is one.
+     */
+    void addWeightedEdge(long fromID, long toID, double weight) {
+        loading.addEdge(loading.nodeIndex.get(fromID), loading.nodeIndex.get(toID), weight);
     }
 
     /**
-     * Removes vertices with 0 out-degree from graph. Note that this will
-     * cause issues if edges are not bidirectional.
+     * Removes vertices with 0 out-degree from graph, then freezes what remains
+     * into the indexed graph and drops the loading arrays. Edges can't be
+     * added afterwards. Vertices keep the order they were added in, and each
+     * vertex's edges too. Throws an IllegalStateException if an edge leads to
+     * a removed vertex, i.e. if edges are not bidirectional.
      **/
     StreetMapGraph clean() {
-        List<Long> toRemove = new ArrayList<>();
-        for (long id : nodes.keySet()) {
-            if (neighbors(id).size() == 0) {
-                toRemove.add(id);
+        Loading l = loading;
+        int[] offsets = new int[l.nodeCount + 1];
+        for (int e = 0; e < l.edgeCount; e++) {
+            offsets[l.edgeFrom[e] + 1]++;
+        }
+        /* Renumber the vertices that have edges, in order. */
+        int[] newIndex = new int[l.nodeCount];
+        int n = 0;
+        for (int v = 0; v < l.nodeCount; v++) {
+            newIndex[v] = offsets[v + 1] > 0 ? n++ : -1;
+        }
+        long[] ids = new long[n];
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        int[] newOffsets = new int[n + 1];
+        for (int v = 0; v < l.nodeCount; v++) {
+            int w = newIndex[v];
+            if (w >= 0) {
+                ids[w] = l.ids[v];
+                lats[w] = l.lats[v];
+                lons[w] = l.lons[v];
+                newOffsets[w + 1] = newOffsets[w] + offsets[v + 1];
             }
         }
 
-        for (long id : toRemove) {
-            nodes.remove(id);
-            neighbors.remove(id);
+        /* Counting sort of the edges by source, which keeps each source's edges in order. */
+        int[] fill = Arrays.copyOf(newOffsets, n);
+        int[] targets = new int[l.edgeCount];
+        double[] weights = new double[l.edgeCount];
+        for (int e = 0; e < l.edgeCount; e++) {
+            int to = newIndex[l.edgeTo[e]];
+            if (to < 0) {
+                throw new IllegalStateException("edge to vertex " + l.ids[l.edgeTo[e]]
+                        + ", which has no edges of its own");
+            }
+            int slot = fill[newIndex[l.edgeFrom[e]]]++;
+            targets[slot] = to;
+            weights[slot] = l.weights[e];
         }
 
+        indexed = new IndexedStreetGraph(ids, lats, lons, newOffsets, targets, weights);
+        loading = null;
         return this;
     }
 
@@ -241,7 +406,7 @@ public class StreetMapGraph implements AStarGraph<Long> {
      *
      * @source Kevin Lowe & Antares Chen, and https://www.movable-type.co.uk/scripts/latlong.html
      **/
-    private double distance(double lonV, double lonW, double latV, double latW) {
+    static double distance(double lonV, double lonW, double latV, double latW) {
         double phi1 = Math.toRadians(latV);
         double phi2 = Math.toRadians(latW);
         double dphi = Math.toRadians(latW - latV);
@@ -253,27 +418,53 @@ public class StreetMapGraph implements AStarGraph<Long> {
         return 3963 * c;
     }
 
-    /**
-     * Returns the human-readable string format of this graph. See
-     * writeToFile for format.
+    /*
+    The nodes and edges of a graph being loaded. Node i has OSM id ids[i], and
+    edge e goes from node edgeFrom[e] to node edgeTo[e]. edgeKeys holds both
+    ends of every edge packed into a long, to drop duplicates.
      */
-    private String getSimpleFormat() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(nodes.keySet().size() + "\n");
-        for (long id : nodes.keySet()) {
-            Node node = nodes.get(id);
-            sb.append(String.format("(%d, %.10f, %.10f)%n", id, node.lat(), node.lon()));
+    private static class Loading {
+        private final LongIntHashMap nodeIndex = new LongIntHashMap();
+        private long[] ids = new long[16];
+        private double[] lats = new double[16];
+        private double[] lons = new double[16];
+        private int nodeCount;
+        private final LongHashSet edgeKeys = new LongHashSet();
+        private int[] edgeFrom = new int[16];
+        private int[] edgeTo = new int[16];
+        private double[] weights = new double[16];
+        private int edgeCount;
+
+        void addNode(long id, double lat, double lon) {
+            if (nodeIndex.containsKey(id)) {
+                return;
+            }
+            if (nodeCount == ids.length) {
+                ids = Arrays.copyOf(ids, 2 * nodeCount);
+                lats = Arrays.copyOf(lats, 2 * nodeCount);
+                lons = Arrays.copyOf(lons, 2 * nodeCount);
+            }
+            nodeIndex.put(id, nodeCount);
+            ids[nodeCount] = id;
+            lats[nodeCount] = lat;
+            lons[nodeCount] = lon;
+            nodeCount++;
         }
 
-        for (long id : nodes.keySet()) {
-            sb.append(String.format("%d : ", id));
-            for (WeightedEdge<Long> e : neighbors(id)) {
-                sb.append(e.to() + " ");
+        void addEdge(int from, int to, double weight) {
+            if (!edgeKeys.add((long) from << 32 | to)) {
+                return;
             }
-            sb.append("\n");
+            if (edgeCount == edgeFrom.length) {
+                edgeFrom = Arrays.copyOf(edgeFrom, 2 * edgeCount);
+                edgeTo = Arrays.copyOf(edgeTo, 2 * edgeCount);
+                weights = Arrays.copyOf(weights, 2 * edgeCount);
+            }
+            edgeFrom[edgeCount] = from;
+            edgeTo[edgeCount] = to;
+            weights[edgeCount] = weight;
+            edgeCount++;
         }
-
-        return sb.toString();
     }
 
     /*public static void main(String[] args) {
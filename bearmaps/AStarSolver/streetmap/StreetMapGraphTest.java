@@ -0,0 +1,234 @@
+package bearmaps.proj2c.streetmap;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class StreetMapGraphTest {
+    private static final String[] HIGHWAYS = {"residential", "primary", "tertiary_link",
+        "living_street", "footway", "service", "cycleway"};
+
+    /*
+    Writes a made-up OSM extract of several MB to a temporary file, so that
+    ParallelXMLReader cuts it into several chunks. It has elements spread over
+    lines and indented with tabs, '<' escaped in names, ways that aren't
+    allowed roads or have no highway tag at all, relations between the nodes
+    and the ways, ways that refer to nodes that aren't in the file, and
+    comments, CDATA sections and processing instructions full of elements.
+     */
+    private static File generateOSM(long seed) throws IOException {
+        File file = File.createTempFile("generated", ".osm.xml");
+        file.deleteOnExit();
+        Random random = new Random(seed);
+        int nodes = 40000;
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            out.write("<osm version=\"0.6\" generator=\"StreetMapGraphTest\">\n");
+            out.write(" <bounds minlat=\"37.82\" minlon=\"-122.30\" maxlat=\"37.89\""
+                    + " maxlon=\"-122.21\"/>\n");
+            for (int i = 0; i < nodes; i++) {
+                long id = 1000 + 3L * i;
+                String lat = String.valueOf(37.82 + random.nextDouble() * 0.07);
+                String lon = String.valueOf(-122.30 + random.nextDouble() * 0.09);
+                switch (random.nextInt(4)) {
+                    case 0:
+                        out.write(" <node id=\"" + id + "\" lat=\"" + lat + "\" lon=\"" + lon
+                                + "\"/>\n");
+                        break;
+                    case 1:
+                        out.write("\t<node\n\t\tid=\"" + id + "\"\n\t\tlat=\"" + lat
+                                + "\"\n\t\tlon=\"" + lon + "\"\n\t/>\n");
+                        break;
+                    case 2:
+                        out.write(" <node id=\"" + id + "\" version=\"2\" lat=\"" + lat
+                                + "\" lon=\"" + lon + "\">\n  <tag k=\"name\" v=\"A &lt;node"
+                                + " id=&quot;" + id + "&quot;&gt; &amp; &lt;/osm&gt;\"/>\n"
+                                + " </node>\n");
+                        break;
+                    default:
+                        out.write(" <node\tid=\"" + id + "\"\tlat=\"" + lat + "\"\tlon=\"" + lon
+                                + "\">\n\t<tag\tk=\"amenity\"\tv=\"cafe\"/>\n </node>\n");
+                        break;
+                }
+                if (random.nextInt(500) == 0) {
+                    writeRelation(out, random, i);
+                }
+                if (random.nextInt(2000) == 0) {
+                    writeHidden(out, random, nodes);
+                }
+            }
+            for (int i = 0; i < 9000; i++) {
+                out.write(random.nextBoolean() ? " <way id=\"" + i + "\">\n"
+                        : "\t<way\n\t\tid=\"" + i + "\"\n\t>\n");
+                int length = 2 + random.nextInt(8);
+                long ref = 1000 + 3L * random.nextInt(nodes);
+                for (int j = 0; j < length; j++) {
+                    /* Mostly neighbouring nodes, some far away, and some not in the file. */
+                    int kind = random.nextInt(20);
+                    long next = kind == 0 ? 1001 + 3L * random.nextInt(nodes)
+                            : kind == 1 ? 1000 + 3L * random.nextInt(nodes)
+                            : ref + 3 * (random.nextInt(7) - 3);
+                    out.write("  <nd ref=\"" + next + "\"/>\n");
+                    ref = next;
+                }
+                if (random.nextInt(10) > 0) {
+                    out.write("  <tag k=\"highway\" v=\""
+                            + HIGHWAYS[random.nextInt(HIGHWAYS.length)] + "\"/>\n");
+                }
+                out.write("  <tag k=\"name\" v=\"Way &lt;way&gt; " + i + "\"/>\n </way>\n");
+                if (random.nextInt(300) == 0) {
+                    writeRelation(out, random, i);
+                }
+            }
+            out.write("</osm>\n<!-- </osm> -->\n");
+        }
+        return file;
+    }
+
+    /*
+    Writes a comment, CDATA section or processing instruction holding
+    elements that would move real nodes and join them by roads if they were
+    parsed. It is tens of KB long, so chunks are likely to be cut inside it.
+     */
+    private static void writeHidden(Writer out, Random random, int nodes) throws IOException {
+        String[][] markup = {{"<!-- ", " -->"}, {"<![CDATA[", "]]>"}, {"<?hidden ", "?>"}};
+        String[] kind = markup[random.nextInt(markup.length)];
+        out.write(kind[0] + "\n");
+        for (int i = 0; i < 1000; i++) {
+            long ref = 1000 + 3L * random.nextInt(nodes);
+            out.write(" <node id=\"" + ref + "\" lat=\"0.0\" lon=\"0.0\"/>\n");
+            out.write(" <way id=\"" + i + "\">\n  <nd ref=\"" + ref + "\"/>\n  <nd ref=\""
+                    + (ref + 3) + "\"/>\n  <tag k=\"highway\" v=\"primary\"/>\n </way>\n");
+        }
+        out.write("</osm>\n" + kind[1] + "\n");
+    }
+
+    /* Writes a relation with a highway tag, which must not make a road of anything. */
+    private static void writeRelation(Writer out, Random random, int i) throws IOException {
+        out.write(" <relation id=\"" + i + "\">\n");
+        out.write("  <member type=\"way\" ref=\"" + random.nextInt(9000) + "\" role=\"\"/>\n");
+        out.write("  <member\n\ttype=\"node\"\n\tref=\"" + (1000 + 3L * random.nextInt(40000))
+                + "\"\n\trole=\"stop\"/>\n");
+        out.write("  <tag k=\"highway\" v=\"primary\"/>\n");
+        out.write("  <tag k=\"name\" v=\"Route &lt;relation&gt;\"/>\n");
+        out.write(" </relation>\n");
+    }
+
+    /* Checks that ACTUAL has the very same arrays as EXPECTED. */
+    private static void assertSameGraph(IndexedStreetGraph expected, IndexedStreetGraph actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int v = 0; v < expected.size(); v++) {
+            assertEquals(expected.id(v), actual.id(v));
+            assertEquals(expected.lat(v), actual.lat(v), 0.0);
+            assertEquals(expected.lon(v), actual.lon(v), 0.0);
+        }
+        for (int v = 0; v <= expected.size(); v++) {
+            assertEquals(expected.firstEdge(v), actual.firstEdge(v));
+        }
+        for (int e = 0; e < expected.firstEdge(expected.size()); e++) {
+            assertEquals(expected.target(e), actual.target(e));
+            assertEquals(expected.weight(e), actual.weight(e), 0.0);
+        }
+    }
+
+    @Test
+    public void testReadFromXMLParallel() throws IOException {
+        File file = generateOSM(23);
+        assertTrue(file.length() > 4 << 20);
+        IndexedStreetGraph expected = StreetMapGraph.readFromXML(file.getPath()).indexed();
+        /* Only nodes on allowed roads are kept, and there are roads. */
+        assertTrue(expected.size() > 1000 && expected.size() < 40000);
+        assertTrue(expected.firstEdge(expected.size()) > 0);
+        for (int threads : new int[]{1, 3, 8}) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                assertSameGraph(expected,
+                        StreetMapGraph.readFromXMLParallel(file.getPath(), pool).indexed());
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testReadFromXMLStreaming() throws IOException {
+        File file = generateOSM(22);
+        IndexedStreetGraph expected = StreetMapGraph.readFromXML(file.getPath()).indexed();
+        assertTrue(expected.firstEdge(expected.size()) > 0);
+        assertSameGraph(expected, StreetMapGraph.readFromXMLStreaming(file.getPath()).indexed());
+    }
+
+    @Test
+    public void testClean() {
+        StreetMapGraph g = new StreetMapGraph();
+        g.addNode(Node.of(50, 37.870, -122.260));
+        g.addNode(Node.of(10, 37.871, -122.261));
+        g.addNode(Node.of(40, 37.872, -122.262));
+        g.addNode(Node.of(30, 37.873, -122.263));
+        g.addNode(Node.of(20, 37.874, -122.264));
+        /* Already there, so ignored. */
+        g.addNode(Node.of(10, 0.0, 0.0));
+        double weight = g.edgeWeight(10, 30);
+        g.addWeightedEdge(10, 30);
+        g.addWeightedEdge(30, 10);
+        g.addWeightedEdge(10, 20);
+        g.addWeightedEdge(20, 10);
+        g.addWeightedEdge(20, 30);
+        g.addWeightedEdge(30, 20);
+        /* Duplicates, even with another weight, and an edge to a node that isn't there. */
+        g.addWeightedEdge(10, 30);
+        g.addWeightedEdge(30, 10, 99.0);
+        g.addWeightedEdge(10, 99);
+        IndexedStreetGraph graph = g.clean().indexed();
+
+        /* The nodes without edges are gone, and the rest keep the order they came in. */
+        assertEquals(3, graph.size());
+        assertEquals(10, graph.id(0));
+        assertEquals(30, graph.id(1));
+        assertEquals(20, graph.id(2));
+        assertEquals(37.871, graph.lat(0), 0.0);
+        assertEquals(-122.261, graph.lon(0), 0.0);
+        for (long id : new long[]{50, 40, 99, 0}) {
+            assertEquals(-1, graph.indexOf(id));
+        }
+        assertEquals(1, graph.indexOf(30));
+
+        /* Each node's edges also keep their order, once each. */
+        int[][] targets = {{1, 2}, {0, 2}, {0, 1}};
+        for (int v = 0; v < targets.length; v++) {
+            assertEquals(2 * v, graph.firstEdge(v));
+            for (int i = 0; i < targets[v].length; i++) {
+                assertEquals(targets[v][i], graph.target(graph.firstEdge(v) + i));
+            }
+        }
+        assertEquals(6, graph.firstEdge(3));
+        assertEquals(weight, graph.weight(graph.firstEdge(1)), 0.0);
+        assertEquals(2, g.neighbors(10L).size());
+    }
+
+    @Test
+    public void testCleanOneWayEdge() {
+        StreetMapGraph g = new StreetMapGraph();
+        g.addNode(Node.of(1, 37.870, -122.260));
+        g.addNode(Node.of(2, 37.871, -122.261));
+        g.addNode(Node.of(3, 37.872, -122.262));
+        g.addWeightedEdge(1, 2);
+        g.addWeightedEdge(2, 1);
+        g.addWeightedEdge(2, 3);
+        try {
+            g.clean();
+            fail("cleaned a graph with a one-way edge");
+        } catch (IllegalStateException e) {
+            /* Expected. */
+        }
+    }
+}
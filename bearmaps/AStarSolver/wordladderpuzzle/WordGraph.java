@@ -83,4 +83,10 @@ public class WordGraph implements AStarGraph<String> {
     public double estimatedDistanceToGoal(String s, String goal) {
         return editDistance(s, goal);
     }
+
+    /** Every edge is one edit, which changes the edit distance to the goal by at most 1. */
+    @Override
+    public boolean hasConsistentHeuristic() {
+        return true;
+    }
 }
@@ -0,0 +1,83 @@
+package bearmaps;
+import java.util.Arrays;
+
+/**
+ * The CAPACITY smallest of the (id, distance) pairs offered to it, kept in a
+ * binary max-heap on distance so the largest one kept is at the root and can
+ * be replaced in O(log k) time. Point sets use one per k-nearest or radius
+ * query to collect results and to know how far a candidate may still be.
+ */
+class BoundedMaxHeap {
+    private final int capacity;
+    private int[] ids;
+    private double[] distances;
+    private int size;
+
+    /* Keeps the CAPACITY smallest pairs; Integer.MAX_VALUE keeps them all. */
+    BoundedMaxHeap(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.capacity = capacity;
+        ids = new int[Math.min(capacity, 16)];
+        distances = new double[ids.length];
+    }
+
+    /* Returns the distance a new pair must be below to be kept. */
+    double bound() {
+        return size < capacity ? Double.POSITIVE_INFINITY : distances[0];
+    }
+
+    void offer(int id, double distance) {
+        if (size < capacity) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, 2 * size);
+                distances = Arrays.copyOf(distances, 2 * size);
+            }
+            int i = size;
+            size++;
+            while (i > 0 && distances[(i - 1) / 2] < distance) {
+                ids[i] = ids[(i - 1) / 2];
+                distances[i] = distances[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            ids[i] = id;
+            distances[i] = distance;
+        } else if (distance < distances[0]) {
+            siftDown(0, size, id, distance);
+        }
+    }
+
+    /* Moves the hole at I down the first N entries until (ID, DISTANCE) fits in it. */
+    private void siftDown(int i, int n, int id, double distance) {
+        while (2 * i + 1 < n) {
+            int child = 2 * i + 1;
+            if (child + 1 < n && distances[child + 1] > distances[child]) {
+                child++;
+            }
+            if (distances[child] <= distance) {
+                break;
+            }
+            ids[i] = ids[child];
+            distances[i] = distances[child];
+            i = child;
+        }
+        ids[i] = id;
+        distances[i] = distance;
+    }
+
+    /* Empties the heap and returns the ids it kept, nearest first. */
+    int[] drain() {
+        int n = size;
+        /* Heapsort: move the largest to the end of the shrinking heap. */
+        for (int end = n - 1; end > 0; end--) {
+            int id = ids[end];
+            double distance = distances[end];
+            ids[end] = ids[0];
+            distances[end] = distances[0];
+            siftDown(0, end, id, distance);
+        }
+        size = 0;
+        return Arrays.copyOf(ids, n);
+    }
+}
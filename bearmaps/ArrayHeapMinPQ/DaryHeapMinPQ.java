@@ -0,0 +1,207 @@
+package bearmaps;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * Indexed d-ary min-heap. Items and priorities live in two parallel arrays
+ * rather than in per-entry objects, so comparing children only reads a run of
+ * adjacent doubles. With the default arity of 4 the heap is half as deep as a
+ * binary one, and the four children of a node share a cache line or two.
+ *
+ * Sifting moves a hole instead of swapping, so each level costs one array
+ * write and one index update. A heap can also be built from a whole map of
+ * items at once in linear time.
+ */
+public class DaryHeapMinPQ<T> implements ExtrinsicMinPQ<T> {
+    /** The arity used unless another one is given. */
+    public static final int DEFAULT_ARITY = 4;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // private instance variables
+    private final int arity;
+    private Object[] items;
+    private double[] priorities;
+    private HashMap<T, Integer> index;
+    private int size;
+
+    public DaryHeapMinPQ() {
+        this(DEFAULT_ARITY);
+    }
+
+    /* Creates an empty heap in which every node has up to ARITY children. */
+    public DaryHeapMinPQ(int arity) {
+        if (arity < 2) {
+            throw new IllegalArgumentException("arity must be at least 2");
+        }
+        this.arity = arity;
+        items = new Object[DEFAULT_CAPACITY];
+        priorities = new double[DEFAULT_CAPACITY];
+        index = new HashMap<>();
+    }
+
+    /* Creates a 4-ary heap holding every key of ITEMS, with its value as priority. */
+    public DaryHeapMinPQ(Map<? extends T, Double> items) {
+        this(items, DEFAULT_ARITY);
+    }
+
+    /* Creates a heap holding every key of ITEMS in linear time. */
+    public DaryHeapMinPQ(Map<? extends T, Double> items, int arity) {
+        this(arity);
+        addAll(items);
+    }
+
+    @Override
+    public void add(T item, double priority) {
+        if (contains(item)) {
+            throw new IllegalArgumentException();
+        }
+        ensureCapacity(size + 1);
+        size++;
+        siftUp(size - 1, item, priority);
+    }
+
+    /* Adds every key of ITEMS with its value as priority. Throws an
+     * IllegalArgumentException, leaving the heap unchanged, if any of them is
+     * already present. Appends them all and restores the heap bottom-up, which
+     * takes time linear in the new size of the heap. */
+    public void addAll(Map<? extends T, Double> newItems) {
+        for (T item : newItems.keySet()) {
+            if (contains(item)) {
+                throw new IllegalArgumentException();
+            }
+        }
+        ensureCapacity(size + newItems.size());
+        for (Map.Entry<? extends T, Double> entry : newItems.entrySet()) {
+            items[size] = entry.getKey();
+            priorities[size] = entry.getValue();
+            index.put(entry.getKey(), size);
+            size++;
+        }
+        heapify();
+    }
+
+    /* Restores the heap property bottom-up, starting from the last parent. */
+    private void heapify() {
+        for (int i = (size - 2) / arity; i >= 0; i--) {
+            siftDown(i, item(i), priorities[i]);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > items.length) {
+            int newLength = Math.max(capacity, 2 * items.length);
+            items = Arrays.copyOf(items, newLength);
+            priorities = Arrays.copyOf(priorities, newLength);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private T item(int i) {
+        return (T) items[i];
+    }
+
+    /* Moves the entry at FROM into the hole at TO. */
+    private void move(int from, int to) {
+        items[to] = items[from];
+        priorities[to] = priorities[from];
+        index.put(item(to), to);
+    }
+
+    private void place(int i, T item, double priority) {
+        items[i] = item;
+        priorities[i] = priority;
+        index.put(item, i);
+    }
+
+    /* Moves the hole at I up until ITEM can be placed in it. */
+    private void siftUp(int i, T item, double priority) {
+        while (i > 0) {
+            int parent = (i - 1) / arity;
+            if (priorities[parent] <= priority) {
+                break;
+            }
+            move(parent, i);
+            i = parent;
+        }
+        place(i, item, priority);
+    }
+
+    /* Moves the hole at I down until ITEM can be placed in it. */
+    private void siftDown(int i, T item, double priority) {
+        while (true) {
+            int first = i * arity + 1;
+            if (first >= size) {
+                break;
+            }
+            int end = Math.min(first + arity, size);
+            int smallest = first;
+            for (int c = first + 1; c < end; c++) {
+                if (priorities[c] < priorities[smallest]) {
+                    smallest = c;
+                }
+            }
+            if (priorities[smallest] >= priority) {
+                break;
+            }
+            move(smallest, i);
+            i = smallest;
+        }
+        place(i, item, priority);
+    }
+
+    @Override
+    public boolean contains(T item) {
+        return index.containsKey(item);
+    }
+
+    @Override
+    public T getSmallest() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return item(0);
+    }
+
+    /* Returns the priority of the minimum item. Throws NoSuchElementException
+     * if the PQ is empty. */
+    public double smallestPriority() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return priorities[0];
+    }
+
+    @Override
+    public T removeSmallest() {
+        T removed = getSmallest();
+        index.remove(removed);
+        size--;
+        T last = item(size);
+        double lastPriority = priorities[size];
+        items[size] = null;
+        if (size > 0) {
+            siftDown(0, last, lastPriority);
+        }
+        return removed;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void changePriority(T item, double priority) {
+        Integer i = index.get(item);
+        if (i == null) {
+            throw new NoSuchElementException();
+        }
+        if (priority < priorities[i]) {
+            siftUp(i, item, priority);
+        } else {
+            siftDown(i, item, priority);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package bearmaps;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class DaryHeapMinPQTest {
+
+    @Test
+    public void testEquivalenceRandom() {
+        Random random = new Random(61);
+        for (int arity = 2; arity <= 5; arity++) {
+            NaiveMinPQ<Integer> naive = new NaiveMinPQ<>();
+            DaryHeapMinPQ<Integer> heap = new DaryHeapMinPQ<>(arity);
+            for (int i = 0; i < 1000; i++) {
+                double p = random.nextDouble();
+                naive.add(i, p);
+                heap.add(i, p);
+            }
+            for (int i = 0; i < 1000; i++) {
+                assertEquals((int) naive.removeSmallest(), (int) heap.removeSmallest());
+            }
+            assertEquals(0, heap.size());
+        }
+    }
+
+    @Test
+    public void testChangePriority() {
+        DaryHeapMinPQ<Integer> heap = new DaryHeapMinPQ<>();
+        for (int i = 0; i < 100; i++) {
+            heap.add(i, 100 - i);
+        }
+        assertEquals(99, (int) heap.removeSmallest());
+        heap.changePriority(10, 0);
+        assertEquals(10, (int) heap.getSmallest());
+        assertEquals(0.0, heap.smallestPriority(), 0.0);
+        heap.changePriority(10, 1000);
+        assertEquals(98, (int) heap.removeSmallest());
+        assertEquals(98, heap.size());
+        int last = -1;
+        while (heap.size() > 0) {
+            last = heap.removeSmallest();
+        }
+        assertEquals(10, last);
+    }
+
+    @Test
+    public void testContains() {
+        DaryHeapMinPQ<String> heap = new DaryHeapMinPQ<>();
+        heap.add("a", 2);
+        heap.add("b", 1);
+        assertTrue(heap.contains("a"));
+        assertFalse(heap.contains("c"));
+        assertEquals("b", heap.removeSmallest());
+        assertFalse(heap.contains("b"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddDuplicate() {
+        DaryHeapMinPQ<Integer> heap = new DaryHeapMinPQ<>();
+        heap.add(1, 1);
+        heap.add(1, 2);
+    }
+
+    @Test
+    public void testHeapify() {
+        Random random = new Random(62);
+        Map<Integer, Double> items = new HashMap<>();
+        NaiveMinPQ<Integer> naive = new NaiveMinPQ<>();
+        for (int i = 0; i < 1000; i++) {
+            double p = random.nextDouble();
+            items.put(i, p);
+            naive.add(i, p);
+        }
+        DaryHeapMinPQ<Integer> heap = new DaryHeapMinPQ<>(items);
+        assertEquals(1000, heap.size());
+        heap.changePriority(500, -1);
+        assertEquals(500, (int) heap.removeSmallest());
+        naive.changePriority(500, -1);
+        naive.removeSmallest();
+
+        Map<Integer, Double> more = new HashMap<>();
+        for (int i = 1000; i < 1500; i++) {
+            double p = random.nextDouble();
+            more.put(i, p);
+            naive.add(i, p);
+        }
+        heap.addAll(more);
+        for (int i = 0; i < 1499; i++) {
+            assertEquals((int) naive.removeSmallest(), (int) heap.removeSmallest());
+        }
+    }
+}
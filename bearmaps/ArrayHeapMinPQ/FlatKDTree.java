@@ -0,0 +1,357 @@
+package bearmaps;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * 2-d tree kept in flat arrays instead of linked nodes. The points are
+ * reordered once so that the root of the subtree over positions lo .. hi - 1
+ * is at (lo + hi) / 2, with its left subtree before it and its right subtree
+ * after it; children are never stored, only computed. Like KDTree, each root
+ * is the median of its subtree along its axis, starting with x.
+ *
+ * nearestIndex walks the tree with an explicit stack instead of recursion and
+ * compares squared distances, so a query allocates nothing. It returns the
+ * position of the winning point in the list the tree was built from, which
+ * lets callers keep whatever they know about the points in parallel arrays.
+ * kNearestIndices and withinRadiusIndices walk it the same way, collecting
+ * into a bounded max-heap, and forEachInBox visits the k points in a
+ * rectangle in O(sqrt(n) + k) time.
+ */
+public class FlatKDTree implements PointSet {
+    private final Point[] points;
+    /* Tree order: position i holds point ids[i] of the original list, at (xs[i], ys[i]). */
+    private final double[] xs;
+    private final double[] ys;
+    private final int[] ids;
+    private final ThreadLocal<SearchStack> stacks;
+
+    /*
+    Subtrees still to visit: lo, hi and axis of each, and the smallest squared
+    distance a point in it can have from the goal. Every subtree on the stack
+    lies deeper than the ones below it, so one entry per level is enough.
+     */
+    private static class SearchStack {
+        private final int[] ranges;
+        private final double[] bounds;
+
+        SearchStack(int height) {
+            ranges = new int[3 * height];
+            bounds = new double[height];
+        }
+    }
+
+    public FlatKDTree(List<Point> points) {
+        if (points.isEmpty()) {
+            throw new IllegalArgumentException("a FlatKDTree needs at least one point");
+        }
+        this.points = points.toArray(new Point[0]);
+        int n = this.points.length;
+        xs = new double[n];
+        ys = new double[n];
+        ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = this.points[i].getX();
+            ys[i] = this.points[i].getY();
+            ids[i] = i;
+        }
+        build(0, n, true);
+        int height = 32 - Integer.numberOfLeadingZeros(n);
+        stacks = ThreadLocal.withInitial(() -> new SearchStack(height));
+    }
+
+    /**
+     * Rebuilds the tree that treeOrder() described for the same POINTS,
+     * without sorting them again, e.g. from a snapshot on disk. Throws an
+     * IllegalArgumentException if ORDER is not an ordering of POINTS.
+     */
+    public FlatKDTree(List<Point> points, int[] order) {
+        if (points.isEmpty() || order.length != points.size()) {
+            throw new IllegalArgumentException("order does not match the points");
+        }
+        this.points = points.toArray(new Point[0]);
+        int n = this.points.length;
+        xs = new double[n];
+        ys = new double[n];
+        ids = order.clone();
+        boolean[] seen = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            if (ids[i] < 0 || ids[i] >= n || seen[ids[i]]) {
+                throw new IllegalArgumentException("order is not a permutation");
+            }
+            seen[ids[i]] = true;
+            xs[i] = this.points[ids[i]].getX();
+            ys[i] = this.points[ids[i]].getY();
+        }
+        int height = 32 - Integer.numberOfLeadingZeros(n);
+        stacks = ThreadLocal.withInitial(() -> new SearchStack(height));
+    }
+
+    /**
+     * Returns the tree order of the points: the index, in the list this tree
+     * was built from, of the point at each position.
+     */
+    public int[] treeOrder() {
+        return ids.clone();
+    }
+
+    /* Arranges positions LO .. HI - 1 into a subtree split on x if SPLITSONX. */
+    private void build(int lo, int hi, boolean splitsOnX) {
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            select(lo, hi - 1, mid, splitsOnX);
+            build(lo, mid, !splitsOnX);
+            lo = mid + 1;
+            splitsOnX = !splitsOnX;
+        }
+    }
+
+    private double coordinate(int i, boolean x) {
+        return x ? xs[i] : ys[i];
+    }
+
+    /* Quickselect over positions LO .. HI, as in KDTree. */
+    private void select(int lo, int hi, int k, boolean x) {
+        while (hi > lo) {
+            int mid = (lo + hi) >>> 1;
+            if (coordinate(mid, x) < coordinate(lo, x)) {
+                swap(mid, lo);
+            }
+            if (coordinate(hi, x) < coordinate(lo, x)) {
+                swap(hi, lo);
+            }
+            if (coordinate(hi, x) < coordinate(mid, x)) {
+                swap(hi, mid);
+            }
+            swap(lo, mid);
+            double v = coordinate(lo, x);
+            int i = lo;
+            int j = hi + 1;
+            while (true) {
+                while (coordinate(++i, x) < v) {
+                    if (i == hi) {
+                        break;
+                    }
+                }
+                while (v < coordinate(--j, x)) {
+                    if (j == lo) {
+                        break;
+                    }
+                }
+                if (i >= j) {
+                    break;
+                }
+                swap(i, j);
+            }
+            swap(lo, j);
+            if (j < k) {
+                lo = j + 1;
+            } else if (j > k) {
+                hi = j - 1;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void swap(int i, int j) {
+        double x = xs[i];
+        xs[i] = xs[j];
+        xs[j] = x;
+        double y = ys[i];
+        ys[i] = ys[j];
+        ys[j] = y;
+        int id = ids[i];
+        ids[i] = ids[j];
+        ids[j] = id;
+    }
+
+    @Override
+    public Point nearest(double x, double y) {
+        return points[nearestIndex(x, y)];
+    }
+
+    /** Returns the index, in the list this tree was built from, of the point nearest to (X, Y). */
+    public int nearestIndex(double x, double y) {
+        SearchStack stack = stacks.get();
+        int[] ranges = stack.ranges;
+        double[] bounds = stack.bounds;
+        int best = -1;
+        double bestDist = Double.POSITIVE_INFINITY;
+        ranges[0] = 0;
+        ranges[1] = xs.length;
+        ranges[2] = 1;
+        bounds[0] = 0;
+        int size = 1;
+        while (size > 0) {
+            size--;
+            if (bounds[size] >= bestDist) {
+                continue;
+            }
+            int lo = ranges[3 * size];
+            int hi = ranges[3 * size + 1];
+            boolean splitsOnX = ranges[3 * size + 2] == 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                double dx = xs[mid] - x;
+                double dy = ys[mid] - y;
+                double d = dx * dx + dy * dy;
+                if (d < bestDist) {
+                    best = mid;
+                    bestDist = d;
+                }
+                double space = splitsOnX ? -dx : -dy;
+                /* Go down the side of the goal; come back for the other
+                 * side only if it could still hold something closer. */
+                int badLo = space < 0 ? mid + 1 : lo;
+                int badHi = space < 0 ? hi : mid;
+                if (badLo < badHi && space * space < bestDist) {
+                    ranges[3 * size] = badLo;
+                    ranges[3 * size + 1] = badHi;
+                    ranges[3 * size + 2] = splitsOnX ? 0 : 1;
+                    bounds[size] = space * space;
+                    size++;
+                }
+                if (space < 0) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+                splitsOnX = !splitsOnX;
+            }
+        }
+        return ids[best];
+    }
+
+    @Override
+    public List<Point> kNearest(double x, double y, int k) {
+        return pointsAt(kNearestIndices(x, y, k));
+    }
+
+    @Override
+    public List<Point> withinRadius(double x, double y, double r) {
+        return pointsAt(withinRadiusIndices(x, y, r));
+    }
+
+    /** Returns the indices of the K points nearest to (X, Y), nearest first. */
+    public int[] kNearestIndices(double x, double y, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        BoundedMaxHeap heap = new BoundedMaxHeap(k);
+        collect(x, y, Double.POSITIVE_INFINITY, heap);
+        return heap.drain();
+    }
+
+    /** Returns the indices of the points at most R away from (X, Y), nearest first. */
+    public int[] withinRadiusIndices(double x, double y, double r) {
+        if (!(r >= 0)) {
+            throw new IllegalArgumentException("radius must be non-negative");
+        }
+        BoundedMaxHeap heap = new BoundedMaxHeap(Integer.MAX_VALUE);
+        collect(x, y, r * r, heap);
+        return heap.drain();
+    }
+
+    /* Offers HEAP the index of every point within squared distance LIMIT of
+     * (X, Y), walking the tree like nearestIndex. */
+    private void collect(double x, double y, double limit, BoundedMaxHeap heap) {
+        SearchStack stack = stacks.get();
+        int[] ranges = stack.ranges;
+        double[] bounds = stack.bounds;
+        ranges[0] = 0;
+        ranges[1] = xs.length;
+        ranges[2] = 1;
+        bounds[0] = 0;
+        int size = 1;
+        while (size > 0) {
+            size--;
+            if (bounds[size] > Math.min(limit, heap.bound())) {
+                continue;
+            }
+            int lo = ranges[3 * size];
+            int hi = ranges[3 * size + 1];
+            boolean splitsOnX = ranges[3 * size + 2] == 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                double dx = xs[mid] - x;
+                double dy = ys[mid] - y;
+                double d = dx * dx + dy * dy;
+                if (d <= limit) {
+                    heap.offer(ids[mid], d);
+                }
+                double space = splitsOnX ? -dx : -dy;
+                int badLo = space < 0 ? mid + 1 : lo;
+                int badHi = space < 0 ? hi : mid;
+                if (badLo < badHi && space * space <= Math.min(limit, heap.bound())) {
+                    ranges[3 * size] = badLo;
+                    ranges[3 * size + 1] = badHi;
+                    ranges[3 * size + 2] = splitsOnX ? 0 : 1;
+                    bounds[size] = space * space;
+                    size++;
+                }
+                if (space < 0) {
+                    hi = mid;
+                } else {
+                    lo = mid + 1;
+                }
+                splitsOnX = !splitsOnX;
+            }
+        }
+    }
+
+    /**
+     * Calls ACTION with the index of every point in the rectangle from
+     * (MINX, MINY) to (MAXX, MAXY), edges included, in no particular order.
+     * ACTION must not query this tree itself, since they share a stack.
+     */
+    public void forEachInBox(double minX, double minY, double maxX, double maxY,
+                             IntConsumer action) {
+        SearchStack stack = stacks.get();
+        int[] ranges = stack.ranges;
+        ranges[0] = 0;
+        ranges[1] = xs.length;
+        ranges[2] = 1;
+        int size = 1;
+        while (size > 0) {
+            size--;
+            int lo = ranges[3 * size];
+            int hi = ranges[3 * size + 1];
+            boolean splitsOnX = ranges[3 * size + 2] == 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                double x = xs[mid];
+                double y = ys[mid];
+                if (x >= minX && x <= maxX && y >= minY && y <= maxY) {
+                    action.accept(ids[mid]);
+                }
+                double split = splitsOnX ? x : y;
+                /* Points equal to the split can be on either side. */
+                boolean left = mid > lo && (splitsOnX ? minX : minY) <= split;
+                boolean right = mid + 1 < hi && (splitsOnX ? maxX : maxY) >= split;
+                if (left && right) {
+                    ranges[3 * size] = mid + 1;
+                    ranges[3 * size + 1] = hi;
+                    ranges[3 * size + 2] = splitsOnX ? 0 : 1;
+                    size++;
+                }
+                if (left) {
+                    hi = mid;
+                } else if (right) {
+                    lo = mid + 1;
+                } else {
+                    break;
+                }
+                splitsOnX = !splitsOnX;
+            }
+        }
+    }
+
+    private List<Point> pointsAt(int[] indices) {
+        List<Point> result = new ArrayList<>(indices.length);
+        for (int i : indices) {
+            result.add(points[i]);
+        }
+        return result;
+    }
+}
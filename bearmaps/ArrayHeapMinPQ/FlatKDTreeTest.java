@@ -0,0 +1,127 @@
+package bearmaps;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class FlatKDTreeTest {
+    private static final double DELTA = 0.00000001;
+
+    @Test
+    public void SameDistanceRandom() {
+        Random random = new Random(15);
+        for (int trial = 0; trial < 20; trial++) {
+            List<Point> points = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                points.add(new Point(10 * random.nextDouble() - 5.0, 10 * random.nextDouble() - 5.0));
+            }
+            NaivePointSet nn = new NaivePointSet(points);
+            FlatKDTree kd = new FlatKDTree(points);
+            for (int i = 0; i < 100; i++) {
+                double x = 12 * random.nextDouble() - 6.0;
+                double y = 12 * random.nextDouble() - 6.0;
+                Point retNPS = nn.nearest(x, y);
+                Point retKD = kd.nearest(x, y);
+                assertEquals(distance(retNPS, x, y), distance(retKD, x, y), DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void IndexIntoOriginalList() {
+        // Duplicate coordinates and sorted input
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            points.add(new Point(i / 2, i % 7));
+        }
+        FlatKDTree kd = new FlatKDTree(points);
+        Random random = new Random(16);
+        for (int i = 0; i < 1000; i++) {
+            double x = 2600 * random.nextDouble() - 50;
+            double y = 10 * random.nextDouble() - 2;
+            int index = kd.nearestIndex(x, y);
+            assertSame(kd.nearest(x, y), points.get(index));
+            assertEquals(distance(new NaivePointSet(points).nearest(x, y), x, y),
+                    distance(points.get(index), x, y), DELTA);
+        }
+    }
+
+    @Test
+    public void BoxMatchesScan() {
+        Random random = new Random(17);
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 3000; i++) {
+            points.add(new Point(random.nextInt(200) / 20.0, random.nextInt(200) / 20.0));
+        }
+        FlatKDTree kd = new FlatKDTree(points);
+        for (int trial = 0; trial < 200; trial++) {
+            double minX = 11 * random.nextDouble() - 1;
+            double minY = 11 * random.nextDouble() - 1;
+            double maxX = minX + 3 * random.nextDouble();
+            double maxY = minY + 3 * random.nextDouble();
+            boolean[] expected = new boolean[points.size()];
+            for (int i = 0; i < points.size(); i++) {
+                Point p = points.get(i);
+                expected[i] = p.getX() >= minX && p.getX() <= maxX
+                        && p.getY() >= minY && p.getY() <= maxY;
+            }
+            boolean[] actual = new boolean[points.size()];
+            kd.forEachInBox(minX, minY, maxX, maxY, i -> {
+                assertFalse(actual[i]);
+                actual[i] = true;
+            });
+            assertTrue(Arrays.equals(expected, actual));
+        }
+        // A degenerate box on grid coordinates, so edges are hit exactly
+        int[] count = new int[1];
+        kd.forEachInBox(2.0, 3.0, 2.0, 3.0, i -> count[0]++);
+        int expected = 0;
+        for (Point p : points) {
+            expected += p.getX() == 2.0 && p.getY() == 3.0 ? 1 : 0;
+        }
+        assertEquals(expected, count[0]);
+    }
+
+    @Test
+    public void RebuildFromTreeOrder() {
+        Random random = new Random(18);
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            points.add(new Point(random.nextDouble(), random.nextDouble()));
+        }
+        FlatKDTree kd = new FlatKDTree(points);
+        FlatKDTree copy = new FlatKDTree(points, kd.treeOrder());
+        assertTrue(Arrays.equals(kd.treeOrder(), copy.treeOrder()));
+        for (int i = 0; i < 500; i++) {
+            double x = 1.2 * random.nextDouble() - 0.1;
+            double y = 1.2 * random.nextDouble() - 0.1;
+            assertEquals(kd.nearestIndex(x, y), copy.nearestIndex(x, y));
+            assertTrue(Arrays.equals(kd.kNearestIndices(x, y, 5), copy.kNearestIndices(x, y, 5)));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void RebuildRejectsBadOrder() {
+        List<Point> points = List.of(new Point(0, 0), new Point(1, 1), new Point(2, 2));
+        new FlatKDTree(points, new int[]{0, 2, 2});
+    }
+
+    @Test
+    public void SinglePoint() {
+        Point p = new Point(1.0, 1.0);
+        FlatKDTree kd = new FlatKDTree(List.of(p));
+        assertEquals(0, kd.nearestIndex(3.0, 4.0));
+        assertSame(p, kd.nearest(-3.0, 4.0));
+    }
+
+    // Calculates the distance between a point and (x, y)
+    private double distance(Point p, double x, double y) {
+        return Math.sqrt(Math.pow(p.getX() - x, 2) + Math.pow(p.getY() - y, 2));
+    }
+}
@@ -0,0 +1,138 @@
+package bearmaps;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Indexed binary min-heap over the int items 0 .. capacity - 1 with double
+ * priorities. Mirrors the ExtrinsicMinPQ operations, but keeps the heap, the
+ * position of each item and its priority in primitive arrays, so no operation
+ * boxes or hashes anything.
+ */
+public class IntMinPQ {
+
+    // private instance variables
+    private int[] heap;
+    private int[] position;
+    private double[] priority;
+    private int size;
+
+    public IntMinPQ(int capacity) {
+        heap = new int[capacity];
+        position = new int[capacity];
+        priority = new double[capacity];
+        Arrays.fill(position, -1);
+    }
+
+    /* Adds ITEM with the given priority. Throws an IllegalArgumentException
+     * if ITEM is already present. */
+    public void add(int item, double p) {
+        if (contains(item)) {
+            throw new IllegalArgumentException();
+        }
+        heap[size] = item;
+        position[item] = size;
+        priority[item] = p;
+        size++;
+        siftUp(size - 1);
+    }
+
+    /* Returns true if ITEM is in the PQ. */
+    public boolean contains(int item) {
+        return position[item] >= 0;
+    }
+
+    /* Returns the minimum item. Throws NoSuchElementException if the PQ is empty. */
+    public int getSmallest() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return heap[0];
+    }
+
+    /* Returns the priority of the minimum item. Throws NoSuchElementException
+     * if the PQ is empty. */
+    public double smallestPriority() {
+        return priority[getSmallest()];
+    }
+
+    /* Removes and returns the minimum item. Throws NoSuchElementException if
+     * the PQ is empty. */
+    public int removeSmallest() {
+        int removed = getSmallest();
+        size--;
+        position[removed] = -1;
+        if (size > 0) {
+            heap[0] = heap[size];
+            position[heap[0]] = 0;
+            siftDown(0);
+        }
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /* Changes the priority of ITEM. Throws NoSuchElementException if the item
+     * isn't in the PQ. */
+    public void changePriority(int item, double p) {
+        if (!contains(item)) {
+            throw new NoSuchElementException();
+        }
+        double old = priority[item];
+        priority[item] = p;
+        if (p < old) {
+            siftUp(position[item]);
+        } else {
+            siftDown(position[item]);
+        }
+    }
+
+    /* Removes every item. Only touches the items still in the heap. */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            position[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int i) {
+        int item = heap[i];
+        double p = priority[item];
+        while (i > 0) {
+            int parent = (i - 1) / 2;
+            int parentItem = heap[parent];
+            if (priority[parentItem] <= p) {
+                break;
+            }
+            heap[i] = parentItem;
+            position[parentItem] = i;
+            i = parent;
+        }
+        heap[i] = item;
+        position[item] = i;
+    }
+
+    private void siftDown(int i) {
+        int item = heap[i];
+        double p = priority[item];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && priority[heap[child + 1]] < priority[heap[child]]) {
+                child++;
+            }
+            int childItem = heap[child];
+            if (priority[childItem] >= p) {
+                break;
+            }
+            heap[i] = childItem;
+            position[childItem] = i;
+            i = child;
+        }
+        heap[i] = item;
+        position[item] = i;
+    }
+}
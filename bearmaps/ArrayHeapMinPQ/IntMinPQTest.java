@@ -0,0 +1,56 @@
+package bearmaps;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+public class IntMinPQTest {
+
+    @Test
+    public void testEquivalenceRandom() {
+        NaiveMinPQ<Integer> naive = new NaiveMinPQ<>();
+        IntMinPQ pq = new IntMinPQ(1000);
+        for (int i = 0; i < 1000; i++) {
+            double p = Math.random();
+            naive.add(i, p);
+            pq.add(i, p);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals((int) naive.removeSmallest(), pq.removeSmallest());
+        }
+        assertEquals(0, pq.size());
+    }
+
+    @Test
+    public void testChangePriority() {
+        IntMinPQ pq = new IntMinPQ(100);
+        for (int i = 0; i < 100; i++) {
+            pq.add(i, 100 - i);
+        }
+        assertEquals(99, pq.getSmallest());
+        pq.changePriority(10, 0);
+        assertEquals(10, pq.removeSmallest());
+        pq.changePriority(99, 200);
+        assertEquals(98, pq.getSmallest());
+        assertEquals(2.0, pq.smallestPriority(), 0.0);
+        assertEquals(99, pq.size());
+    }
+
+    @Test
+    public void testContainsAndClear() {
+        IntMinPQ pq = new IntMinPQ(10);
+        for (int i = 0; i < 10; i += 2) {
+            pq.add(i, i);
+        }
+        assertTrue(pq.contains(4));
+        assertFalse(pq.contains(5));
+        pq.removeSmallest();
+        assertFalse(pq.contains(0));
+        pq.clear();
+        assertEquals(0, pq.size());
+        for (int i = 0; i < 10; i++) {
+            assertFalse(pq.contains(i));
+        }
+        pq.add(3, 1.0);
+        assertEquals(3, pq.getSmallest());
+    }
+}
@@ -0,0 +1,166 @@
+package bearmaps;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Radix heap over the int items 0 .. capacity - 1, for the same monotone
+ * workloads as RadixHeapMinPQ, with the same operations as IntMinPQ. Searches
+ * with non-negative weights and no heuristic, such as one-to-many Dijkstra,
+ * can use it in place of an IntMinPQ.
+ *
+ * Priorities below the last smallest priority are raised to it.
+ */
+public class IntRadixMinPQ {
+    private static final int BUCKETS = 65;
+
+    // private instance variables
+    private int[][] buckets;
+    private int[] counts;
+    /* The bucket and the position in it of each item, -1 if absent. */
+    private byte[] bucket;
+    private int[] slot;
+    private long[] key;
+    private long last;
+    private int size;
+
+    public IntRadixMinPQ(int capacity) {
+        buckets = new int[BUCKETS][];
+        counts = new int[BUCKETS];
+        for (int b = 0; b < BUCKETS; b++) {
+            buckets[b] = new int[4];
+        }
+        bucket = new byte[capacity];
+        slot = new int[capacity];
+        key = new long[capacity];
+        Arrays.fill(slot, -1);
+        last = 0L;
+    }
+
+    /* Returns the key of P: its bits, after raising it to the last smallest
+     * priority. Throws an IllegalArgumentException if it is NaN. */
+    private long toKey(double p) {
+        if (Double.isNaN(p)) {
+            throw new IllegalArgumentException("priority is NaN");
+        }
+        return p < Double.longBitsToDouble(last) ? last : Double.doubleToLongBits(p + 0.0);
+    }
+
+    private int bucketOf(long k) {
+        return k == last ? 0 : 64 - Long.numberOfLeadingZeros(k ^ last);
+    }
+
+    /* Adds ITEM with the given priority. Throws an IllegalArgumentException
+     * if ITEM is already present. */
+    public void add(int item, double p) {
+        if (contains(item)) {
+            throw new IllegalArgumentException();
+        }
+        key[item] = toKey(p);
+        insert(item);
+        size++;
+    }
+
+    private void insert(int item) {
+        int b = bucketOf(key[item]);
+        int n = counts[b];
+        if (n == buckets[b].length) {
+            buckets[b] = Arrays.copyOf(buckets[b], 2 * n);
+        }
+        buckets[b][n] = item;
+        counts[b] = n + 1;
+        bucket[item] = (byte) b;
+        slot[item] = n;
+    }
+
+    /* Takes ITEM out of its bucket, filling its slot with the bucket's last item. */
+    private void delete(int item) {
+        int b = bucket[item];
+        int n = counts[b] - 1;
+        int moved = buckets[b][n];
+        buckets[b][slot[item]] = moved;
+        slot[moved] = slot[item];
+        counts[b] = n;
+    }
+
+    /* Makes sure bucket 0 holds the smallest items, if there are any. */
+    private void refill() {
+        if (counts[0] > 0 || size == 0) {
+            return;
+        }
+        int b = 1;
+        while (counts[b] == 0) {
+            b++;
+        }
+        int[] items = buckets[b];
+        int n = counts[b];
+        long min = key[items[0]];
+        for (int i = 1; i < n; i++) {
+            min = Math.min(min, key[items[i]]);
+        }
+        last = min;
+        /* Every item of bucket b lands in a lower bucket. */
+        counts[b] = 0;
+        for (int i = 0; i < n; i++) {
+            insert(items[i]);
+        }
+    }
+
+    /* Returns true if ITEM is in the PQ. */
+    public boolean contains(int item) {
+        return slot[item] >= 0;
+    }
+
+    /* Returns the minimum item. Throws NoSuchElementException if the PQ is empty. */
+    public int getSmallest() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        refill();
+        return buckets[0][counts[0] - 1];
+    }
+
+    /* Returns the priority of the minimum item. Throws NoSuchElementException
+     * if the PQ is empty. */
+    public double smallestPriority() {
+        getSmallest();
+        return Double.longBitsToDouble(last);
+    }
+
+    /* Removes and returns the minimum item. Throws NoSuchElementException if
+     * the PQ is empty. */
+    public int removeSmallest() {
+        int removed = getSmallest();
+        counts[0]--;
+        slot[removed] = -1;
+        size--;
+        return removed;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /* Changes the priority of ITEM. Throws NoSuchElementException if the item
+     * isn't in the PQ. */
+    public void changePriority(int item, double p) {
+        if (!contains(item)) {
+            throw new NoSuchElementException();
+        }
+        delete(item);
+        key[item] = toKey(p);
+        insert(item);
+    }
+
+    /* Removes every item and forgets the last smallest priority. Only touches
+     * the items still in the PQ. */
+    public void clear() {
+        for (int b = 0; b < BUCKETS; b++) {
+            for (int i = 0; i < counts[b]; i++) {
+                slot[buckets[b][i]] = -1;
+            }
+            counts[b] = 0;
+        }
+        size = 0;
+        last = 0L;
+    }
+}
@@ -1,99 +1,263 @@
 package bearmaps;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
+/**
+ * 2-d tree built in one pass from a whole list of points. Each node splits its
+ * points at their median along its axis (x at the root, then alternating),
+ * found by quickselect, so the tree is balanced whatever order the points
+ * come in: its height is at most about log2(n) + 1, and building it takes
+ * O(n log n) time.
+ *
+ * Points equal to a node along its axis may end up on either side of it.
+ * nearest only skips a side if every point there is farther away along the
+ * axis than the best point so far, which holds for ties as well.
+ */
 public class KDTree implements PointSet {
+    /** Ranges this small are built sequentially by the parallel build. */
+    private static final int PARALLEL_THRESHOLD = 8192;
+
     // private variables
-    private Node KDTreeNode;
-    private static final double DELTA = 0.00001;
+    private Node root;
+    /* The points in the order the build left them; nodes refer to them by index. */
+    private Point[] points;
 
     // private class
-    private class Node {
-        private double x;
-        private double y;
+    private static class Node {
+        private final Point p;
+        private final int index;
+        private final double x;
+        private final double y;
+        private final boolean splitsOnX;
         private Node left;
         private Node right;
-        private int axis;
 
-        Node(Point p, int axis) {
+        Node(Point p, int index, boolean splitsOnX) {
+            this.p = p;
+            this.index = index;
             x = p.getX();
             y = p.getY();
-            this.axis = axis;
+            this.splitsOnX = splitsOnX;
         }
     }
 
-    private void constructor(Point p, Node KDTreeNode) {
-        double space;
-        if (KDTreeNode.axis == 1) {
-            space = KDTreeNode.x - p.getX();
-        } else {
-            space = KDTreeNode.y - p.getY();
+    // Constructor
+    public KDTree(List<Point> points) {
+        this.points = toArray(points);
+        root = build(this.points, 0, this.points.length, true);
+    }
+
+    /**
+     * Builds the same tree as KDTree(POINTS), building large subtrees in
+     * parallel on POOL.
+     */
+    public KDTree(List<Point> points, ForkJoinPool pool) {
+        this.points = toArray(points);
+        root = pool.invoke(new BuildTask(this.points, 0, this.points.length, true));
+    }
+
+    private static Point[] toArray(List<Point> points) {
+        if (points.isEmpty()) {
+            throw new IllegalArgumentException("a KDTree needs at least one point");
         }
-        if (space < DELTA) {
-            if (KDTreeNode.right == null) {
-                KDTreeNode.right = new Node(p, (KDTreeNode.axis + 1) % 2);
-            } else {
-                constructor(p, KDTreeNode.right);
+        return points.toArray(new Point[0]);
+    }
+
+    /* Builds the tree for POINTS[LO] .. POINTS[HI - 1], reordering them. */
+    private static Node build(Point[] points, int lo, int hi, boolean splitsOnX) {
+        if (lo >= hi) {
+            return null;
+        }
+        int mid = split(points, lo, hi, splitsOnX);
+        Node n = new Node(points[mid], mid, splitsOnX);
+        n.left = build(points, lo, mid, !splitsOnX);
+        n.right = build(points, mid + 1, hi, !splitsOnX);
+        return n;
+    }
+
+    /* Moves the median of POINTS[LO] .. POINTS[HI - 1] to the middle of the
+     * range, with no larger point before it and no smaller point after it,
+     * and returns its index. */
+    private static int split(Point[] points, int lo, int hi, boolean splitsOnX) {
+        int mid = (lo + hi) >>> 1;
+        select(points, lo, hi - 1, mid, splitsOnX);
+        return mid;
+    }
+
+    private static class BuildTask extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+
+        private final Point[] points;
+        private final int lo;
+        private final int hi;
+        private final boolean splitsOnX;
+
+        BuildTask(Point[] points, int lo, int hi, boolean splitsOnX) {
+            this.points = points;
+            this.lo = lo;
+            this.hi = hi;
+            this.splitsOnX = splitsOnX;
+        }
+
+        @Override
+        protected Node compute() {
+            if (hi - lo <= PARALLEL_THRESHOLD) {
+                return build(points, lo, hi, splitsOnX);
             }
-        } else {
-            if (KDTreeNode.left == null) {
-                KDTreeNode.left = new Node(p, (KDTreeNode.axis + 1) % 2);
+            int mid = split(points, lo, hi, splitsOnX);
+            Node n = new Node(points[mid], mid, splitsOnX);
+            /* The two halves are disjoint ranges of the array. */
+            BuildTask left = new BuildTask(points, lo, mid, !splitsOnX);
+            left.fork();
+            n.right = new BuildTask(points, mid + 1, hi, !splitsOnX).compute();
+            n.left = left.join();
+            return n;
+        }
+    }
+
+    private static double coordinate(Point p, boolean x) {
+        return x ? p.getX() : p.getY();
+    }
+
+    /* Quickselect: rearranges POINTS[LO] .. POINTS[HI] so that POINTS[K] is
+     * the one that would be there if they were sorted along the axis. */
+    private static void select(Point[] points, int lo, int hi, int k, boolean x) {
+        while (hi > lo) {
+            int j = partition(points, lo, hi, x);
+            if (j < k) {
+                lo = j + 1;
+            } else if (j > k) {
+                hi = j - 1;
             } else {
-                constructor(p, KDTreeNode.left);
+                return;
             }
         }
     }
 
-    // Constructor
-    public KDTree(List<Point> points) {
-        KDTreeNode = new Node(points.get(0), 1);
-        for (Point p : points) {
-            constructor(p, KDTreeNode);
+    /* Partitions POINTS[LO] .. POINTS[HI] around the median of its first,
+     * middle and last points, and returns the pivot's final index. Scans stop
+     * on points equal to the pivot, so many equal points still split evenly. */
+    private static int partition(Point[] points, int lo, int hi, boolean x) {
+        int mid = (lo + hi) >>> 1;
+        if (coordinate(points[mid], x) < coordinate(points[lo], x)) {
+            swap(points, mid, lo);
+        }
+        if (coordinate(points[hi], x) < coordinate(points[lo], x)) {
+            swap(points, hi, lo);
         }
+        if (coordinate(points[hi], x) < coordinate(points[mid], x)) {
+            swap(points, hi, mid);
+        }
+        swap(points, lo, mid);
+        double v = coordinate(points[lo], x);
+        int i = lo;
+        int j = hi + 1;
+        while (true) {
+            while (coordinate(points[++i], x) < v) {
+                if (i == hi) {
+                    break;
+                }
+            }
+            while (v < coordinate(points[--j], x)) {
+                if (j == lo) {
+                    break;
+                }
+            }
+            if (i >= j) {
+                break;
+            }
+            swap(points, i, j);
+        }
+        swap(points, lo, j);
+        return j;
+    }
+
+    private static void swap(Point[] points, int i, int j) {
+        Point t = points[i];
+        points[i] = points[j];
+        points[j] = t;
+    }
+
+    /* Returns the number of nodes on the longest path from the root. */
+    int height() {
+        return height(root);
+    }
+
+    private static int height(Node n) {
+        return n == null ? 0 : 1 + Math.max(height(n.left), height(n.right));
     }
 
     @Override
     public Point nearest(double x, double y) {
-        Point pGoal = new Point(x, y);
-        Node n = recursiveNearest(KDTreeNode, pGoal, KDTreeNode);
-        return new Point(n.x, n.y);
+        return recursiveNearest(root, x, y, root).p;
     }
 
-    private Node recursiveNearest(Node current, Point pGoal, Node nearest) {
+    private Node recursiveNearest(Node current, double x, double y, Node nearest) {
         if (current == null) {
             return nearest;
         }
-        Point pCurrent = new Point(current.x, current.y);
-        Point pNearest = new Point(nearest.x, nearest.y);
-        if (Point.distance(pCurrent, pGoal) < Point.distance(pNearest, pGoal)) {
+        if (distance(current, x, y) < distance(nearest, x, y)) {
             nearest = current;
         }
-        Node goodSide;
-        Node badSide;
-        double space;
-        if (current.axis == 1) {
-            space = current.x - pGoal.getX();
-        } else {
-            space = current.y - pGoal.getY();
-        }
-        if (space < DELTA) {
-            goodSide = current.right;
-            badSide = current.left;
-        } else {
-            goodSide = current.left;
-            badSide = current.right;
-        }
-        nearest = recursiveNearest(goodSide, pGoal, nearest);
-        pNearest = new Point(nearest.x, nearest.y);
-        double dist = Point.distance(pNearest, pGoal);
-        if (current.axis == 1) {
-            if (Math.pow(Math.abs(current.x - pGoal.getX()), 2) - dist < DELTA) {
-                nearest = recursiveNearest(badSide, pGoal, nearest);
-            }
-        } else {
-            if (Math.pow(Math.abs(current.y - pGoal.getY()), 2) - dist < DELTA) {
-                nearest = recursiveNearest(badSide, pGoal, nearest);
-            }
+        double space = current.splitsOnX ? x - current.x : y - current.y;
+        Node goodSide = space < 0 ? current.left : current.right;
+        Node badSide = space < 0 ? current.right : current.left;
+        nearest = recursiveNearest(goodSide, x, y, nearest);
+        if (space * space < distance(nearest, x, y)) {
+            nearest = recursiveNearest(badSide, x, y, nearest);
         }
         return nearest;
     }
+
+    @Override
+    public List<Point> kNearest(double x, double y, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        BoundedMaxHeap heap = new BoundedMaxHeap(k);
+        collect(root, x, y, Double.POSITIVE_INFINITY, heap);
+        return pointsAt(heap.drain());
+    }
+
+    @Override
+    public List<Point> withinRadius(double x, double y, double r) {
+        if (!(r >= 0)) {
+            throw new IllegalArgumentException("radius must be non-negative");
+        }
+        BoundedMaxHeap heap = new BoundedMaxHeap(Integer.MAX_VALUE);
+        collect(root, x, y, r * r, heap);
+        return pointsAt(heap.drain());
+    }
+
+    /* Offers HEAP every point under CURRENT within squared distance LIMIT of
+     * (X, Y), skipping subtrees that can't hold one HEAP would keep. */
+    private void collect(Node current, double x, double y, double limit, BoundedMaxHeap heap) {
+        if (current == null) {
+            return;
+        }
+        double d = distance(current, x, y);
+        if (d <= limit) {
+            heap.offer(current.index, d);
+        }
+        double space = current.splitsOnX ? x - current.x : y - current.y;
+        collect(space < 0 ? current.left : current.right, x, y, limit, heap);
+        if (space * space <= Math.min(limit, heap.bound())) {
+            collect(space < 0 ? current.right : current.left, x, y, limit, heap);
+        }
+    }
+
+    private List<Point> pointsAt(int[] indices) {
+        List<Point> result = new ArrayList<>(indices.length);
+        for (int i : indices) {
+            result.add(points[i]);
+        }
+        return result;
+    }
+
+    /* Squared distance from N to (X, Y), as in Point.distance. */
+    private static double distance(Node n, double x, double y) {
+        return (n.x - x) * (n.x - x) + (n.y - y) * (n.y - y);
+    }
 }
@@ -2,7 +2,11 @@ package bearmaps;
 
 import org.junit.Test;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import edu.princeton.cs.algs4.Stopwatch;
 
 public class KDTreeTest {
@@ -104,6 +108,77 @@ public class KDTreeTest {
         }
     }
 
+    @Test
+    public void BalancedOnSortedInput() {
+        // Points in sorted order made the old one-at-a-time tree a linked list
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 100000; i++) {
+            points.add(new Point(i, i));
+        }
+        KDTree kd = new KDTree(points);
+        assertTrue(kd.height() <= 17);
+        Point ret = kd.nearest(5000.4, 4999.8);
+        assertEquals(5000.0, ret.getX(), DELTA);
+    }
+
+    @Test
+    public void SameDistanceTiesAndParallel() {
+        // Many points share coordinates, so splits have ties on both sides
+        Random random = new Random(14);
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            points.add(new Point(random.nextInt(50), random.nextInt(50)));
+        }
+        NaivePointSet nn = new NaivePointSet(points);
+        KDTree kd = new KDTree(points);
+        KDTree parallel = new KDTree(points, new ForkJoinPool(4));
+        for (int i = 0; i < 1000; i++) {
+            double x = 60 * random.nextDouble() - 5.0;
+            double y = 60 * random.nextDouble() - 5.0;
+            Point retNPS = nn.nearest(x, y);
+            Point retKD = kd.nearest(x, y);
+            Point retParallel = parallel.nearest(x, y);
+            double expected = distance(retNPS.getX(), x, retNPS.getY(), y);
+            assertEquals(expected, distance(retKD.getX(), x, retKD.getY(), y), DELTA);
+            assertEquals(expected, distance(retParallel.getX(), x, retParallel.getY(), y), DELTA);
+        }
+    }
+
+    @Test
+    public void KNearestAndRadiusRandom() {
+        Random random = new Random(16);
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            // Coarse coordinates, so there are duplicates and ties
+            points.add(new Point(random.nextInt(100) / 10.0, random.nextInt(100) / 10.0));
+        }
+        NaivePointSet nn = new NaivePointSet(points);
+        KDTree kd = new KDTree(points);
+        FlatKDTree flat = new FlatKDTree(points);
+        for (int i = 0; i < 200; i++) {
+            double x = 12 * random.nextDouble() - 1.0;
+            double y = 12 * random.nextDouble() - 1.0;
+            int k = 1 + random.nextInt(20);
+            double r = random.nextDouble();
+            assertSameDistances(nn.kNearest(x, y, k), kd.kNearest(x, y, k), x, y);
+            assertSameDistances(nn.kNearest(x, y, k), flat.kNearest(x, y, k), x, y);
+            assertSameDistances(nn.withinRadius(x, y, r), kd.withinRadius(x, y, r), x, y);
+            assertSameDistances(nn.withinRadius(x, y, r), flat.withinRadius(x, y, r), x, y);
+        }
+        // More than there are
+        assertEquals(2000, kd.kNearest(0, 0, 5000).size());
+        assertEquals(0, kd.withinRadius(-50, -50, 1).size());
+    }
+
+    private void assertSameDistances(List<Point> expected, List<Point> actual, double x, double y) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Point e = expected.get(i);
+            Point a = actual.get(i);
+            assertEquals(distance(e.getX(), x, e.getY(), y), distance(a.getX(), x, a.getY(), y), DELTA);
+        }
+    }
+
     @Test
     public void timeTest() {
         // Construct a set of 100000 points
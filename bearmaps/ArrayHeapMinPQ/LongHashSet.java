@@ -0,0 +1,96 @@
+package bearmaps;
+
+/**
+ * Set of long keys kept in one open-addressed array with linear probing, so
+ * it stores 8 to 16 bytes per key instead of a boxed Long and a hash map
+ * entry. Keys can't be removed. 0 marks an empty slot, so whether the set
+ * holds the key 0 is kept on the side.
+ */
+public class LongHashSet {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] slots;
+    private int size;
+    private boolean hasZero;
+
+    public LongHashSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /** Creates a set that holds EXPECTED keys without growing. */
+    public LongHashSet(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < 2L * expected) {
+            capacity *= 2;
+        }
+        slots = new long[capacity];
+    }
+
+    /* Returns the slot KEY hashes to, spreading nearby ids over the table. */
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /** Adds KEY and returns true, or returns false if it is already present. */
+    public boolean add(long key) {
+        if (key == 0) {
+            if (hasZero) {
+                return false;
+            }
+            hasZero = true;
+            size++;
+            return true;
+        }
+        int mask = slots.length - 1;
+        int i = slot(key, mask);
+        while (slots[i] != 0) {
+            if (slots[i] == key) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        slots[i] = key;
+        size++;
+        /* Keep the table at most half full, so probe runs stay short. */
+        if (2 * size > slots.length) {
+            grow();
+        }
+        return true;
+    }
+
+    /** Returns true if KEY is in the set. */
+    public boolean contains(long key) {
+        if (key == 0) {
+            return hasZero;
+        }
+        int mask = slots.length - 1;
+        int i = slot(key, mask);
+        while (slots[i] != 0) {
+            if (slots[i] == key) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] old = slots;
+        slots = new long[2 * old.length];
+        int mask = slots.length - 1;
+        for (long key : old) {
+            if (key != 0) {
+                int i = slot(key, mask);
+                while (slots[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                slots[i] = key;
+            }
+        }
+    }
+}
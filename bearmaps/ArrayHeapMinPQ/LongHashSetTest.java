@@ -0,0 +1,47 @@
+package bearmaps;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class LongHashSetTest {
+
+    @Test
+    public void testMatchesHashSet() {
+        Random random = new Random(22);
+        Set<Long> expected = new HashSet<>();
+        LongHashSet set = new LongHashSet();
+        for (int i = 0; i < 50000; i++) {
+            /* Small ranges force duplicates; large ones collide in the low bits. */
+            long key = i % 2 == 0 ? random.nextInt(20000) - 10000 : random.nextLong() << 20;
+            assertEquals(expected.add(key), set.add(key));
+        }
+        assertEquals(expected.size(), set.size());
+        for (int i = 0; i < 50000; i++) {
+            long key = random.nextInt(40000) - 20000;
+            assertEquals(expected.contains(key), set.contains(key));
+        }
+        for (long key : expected) {
+            assertTrue(set.contains(key));
+        }
+    }
+
+    @Test
+    public void testZeroAndExtremes() {
+        LongHashSet set = new LongHashSet(2);
+        assertFalse(set.contains(0));
+        assertTrue(set.add(0));
+        assertFalse(set.add(0));
+        assertTrue(set.add(Long.MIN_VALUE));
+        assertTrue(set.add(Long.MAX_VALUE));
+        assertTrue(set.add(-1));
+        assertTrue(set.contains(0));
+        assertTrue(set.contains(Long.MIN_VALUE));
+        assertTrue(set.contains(Long.MAX_VALUE));
+        assertTrue(set.contains(-1));
+        assertFalse(set.contains(1));
+        assertEquals(4, set.size());
+    }
+}
@@ -0,0 +1,124 @@
+package bearmaps;
+
+/**
+ * Map from long keys to int values kept in two open-addressed arrays with
+ * linear probing, like LongHashSet, so a lookup is one probe sequence over
+ * primitives instead of boxing the key and chasing a hash map entry. Meant
+ * for mapping OSM ids to dense indices: values should be non-negative, since
+ * get returns -1 for a missing key. Keys can't be removed. 0 marks an empty
+ * slot, so the value of the key 0 is kept on the side.
+ */
+public class LongIntHashMap {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private int[] values;
+    private int size;
+    private boolean hasZero;
+    private int zeroValue;
+
+    public LongIntHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /** Creates a map that holds EXPECTED keys without growing. */
+    public LongIntHashMap(int expected) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < 2L * expected) {
+            capacity *= 2;
+        }
+        keys = new long[capacity];
+        values = new int[capacity];
+    }
+
+    /* Returns the slot KEY hashes to, spreading nearby ids over the table. */
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /** Maps KEY to VALUE and returns the value KEY had, or -1 if it had none. */
+    public int put(long key, int value) {
+        if (key == 0) {
+            int old = hasZero ? zeroValue : -1;
+            if (!hasZero) {
+                hasZero = true;
+                size++;
+            }
+            zeroValue = value;
+            return old;
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                int old = values[i];
+                values[i] = value;
+                return old;
+            }
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+        /* Keep the table at most half full, so probe runs stay short. */
+        if (2 * size > keys.length) {
+            grow();
+        }
+        return -1;
+    }
+
+    /** Returns the value of KEY, or -1 if KEY is not in the map. */
+    public int get(long key) {
+        if (key == 0) {
+            return hasZero ? zeroValue : -1;
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /** Returns true if KEY is in the map. */
+    public boolean containsKey(long key) {
+        if (key == 0) {
+            return hasZero;
+        }
+        int mask = keys.length - 1;
+        int i = slot(key, mask);
+        while (keys[i] != 0) {
+            if (keys[i] == key) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[2 * oldKeys.length];
+        values = new int[keys.length];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != 0) {
+                int i = slot(oldKeys[j], mask);
+                while (keys[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+}
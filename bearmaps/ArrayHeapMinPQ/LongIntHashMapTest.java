@@ -0,0 +1,53 @@
+package bearmaps;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class LongIntHashMapTest {
+
+    @Test
+    public void testMatchesHashMap() {
+        Random random = new Random(25);
+        Map<Long, Integer> expected = new HashMap<>();
+        LongIntHashMap map = new LongIntHashMap();
+        for (int i = 0; i < 50000; i++) {
+            /* Small ranges force overwrites; large ones collide in the low bits. */
+            long key = i % 2 == 0 ? random.nextInt(20000) - 10000 : random.nextLong() << 20;
+            Integer old = expected.put(key, i);
+            assertEquals(old == null ? -1 : (int) old, map.put(key, i));
+        }
+        assertEquals(expected.size(), map.size());
+        for (int i = 0; i < 50000; i++) {
+            long key = random.nextInt(40000) - 20000;
+            Integer value = expected.get(key);
+            assertEquals(value == null ? -1 : (int) value, map.get(key));
+            assertEquals(value != null, map.containsKey(key));
+        }
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void testZeroAndExtremes() {
+        LongIntHashMap map = new LongIntHashMap(2);
+        assertEquals(-1, map.get(0));
+        assertFalse(map.containsKey(0));
+        assertEquals(-1, map.put(0, 7));
+        assertEquals(7, map.put(0, 8));
+        assertEquals(-1, map.put(Long.MIN_VALUE, 1));
+        assertEquals(-1, map.put(Long.MAX_VALUE, 2));
+        assertEquals(-1, map.put(-1, 3));
+        assertEquals(8, map.get(0));
+        assertEquals(1, map.get(Long.MIN_VALUE));
+        assertEquals(2, map.get(Long.MAX_VALUE));
+        assertEquals(3, map.get(-1));
+        assertEquals(-1, map.get(1));
+        assertTrue(map.containsKey(0));
+        assertFalse(map.containsKey(1));
+        assertEquals(4, map.size());
+    }
+}
@@ -1,4 +1,5 @@
 package bearmaps;
+import java.util.ArrayList;
 import java.util.List;
 
 public class NaivePointSet implements PointSet {
@@ -25,6 +26,41 @@ public class NaivePointSet implements PointSet {
         return closest;
     }
 
+    @Override
+    public List<Point> kNearest(double x, double y, int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be positive");
+        }
+        BoundedMaxHeap heap = new BoundedMaxHeap(k);
+        for (int i = 0; i < points.size(); i++) {
+            heap.offer(i, distance(x, points.get(i).getX(), y, points.get(i).getY()));
+        }
+        return pointsAt(heap.drain());
+    }
+
+    @Override
+    public List<Point> withinRadius(double x, double y, double r) {
+        if (!(r >= 0)) {
+            throw new IllegalArgumentException("radius must be non-negative");
+        }
+        BoundedMaxHeap heap = new BoundedMaxHeap(Integer.MAX_VALUE);
+        for (int i = 0; i < points.size(); i++) {
+            double d = distance(x, points.get(i).getX(), y, points.get(i).getY());
+            if (d <= r) {
+                heap.offer(i, d);
+            }
+        }
+        return pointsAt(heap.drain());
+    }
+
+    private List<Point> pointsAt(int[] indices) {
+        List<Point> result = new ArrayList<>(indices.length);
+        for (int i : indices) {
+            result.add(points.get(i));
+        }
+        return result;
+    }
+
     // Calculates the distance between two points
     private double distance(double X1, double X2, double Y1, double Y2) {
         double inside = Math.pow(X1 - X2, 2) + Math.pow(Y1 - Y2, 2);
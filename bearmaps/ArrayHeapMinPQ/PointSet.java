@@ -1,5 +1,13 @@
 package bearmaps;
+import java.util.List;
 
 public interface PointSet {
     Point nearest(double x, double y);
+
+    /* Returns the K points nearest to (X, Y), nearest first, or all of them
+     * if there are fewer than K. */
+    List<Point> kNearest(double x, double y, int k);
+
+    /* Returns the points at most R away from (X, Y), nearest first. */
+    List<Point> withinRadius(double x, double y, double r);
 }
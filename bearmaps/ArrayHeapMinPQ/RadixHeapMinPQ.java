@@ -0,0 +1,173 @@
+package bearmaps;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.NoSuchElementException;
+
+/**
+ * Radix heap: a priority queue for monotone workloads, where no item is ever
+ * given a priority below the last smallest priority returned. That is the case
+ * for Dijkstra with non-negative weights, and for A* with a consistent
+ * heuristic.
+ *
+ * The bits of a non-negative double sort the same way as the double itself.
+ * Bucket 0 holds the items whose priority equals the last smallest one; bucket
+ * i > 0 holds the items whose priority first differs from it in bit i - 1.
+ * Removing from an empty bucket 0 empties the lowest non-empty bucket i into
+ * lower buckets, and every item only ever moves down, so operations take
+ * amortised O(log C) time for priorities up to C. The buckets are plain
+ * arrays that are scanned from end to end.
+ *
+ * Rounding can push a priority very slightly below the last smallest one even
+ * when the heuristic is consistent, so priorities below it are raised to it
+ * rather than rejected.
+ */
+public class RadixHeapMinPQ<T> implements ExtrinsicMinPQ<T> {
+    private static final int BUCKETS = 65;
+    private static final int BUCKET_BITS = 7;
+    private static final int BUCKET_MASK = (1 << BUCKET_BITS) - 1;
+
+    // private instance variables
+    private Object[][] items;
+    private long[][] keys;
+    private int[] counts;
+    /* index.get(item) is the position of item in its bucket, shifted left by
+     * BUCKET_BITS, plus the bucket. */
+    private HashMap<T, Long> index;
+    private long last;
+    private int size;
+
+    public RadixHeapMinPQ() {
+        items = new Object[BUCKETS][];
+        keys = new long[BUCKETS][];
+        counts = new int[BUCKETS];
+        for (int b = 0; b < BUCKETS; b++) {
+            items[b] = new Object[4];
+            keys[b] = new long[4];
+        }
+        index = new HashMap<>();
+        last = 0L;
+    }
+
+    /* Returns the key of PRIORITY: its bits, after raising it to the last
+     * smallest priority. Throws an IllegalArgumentException if it is NaN. */
+    private long key(double priority) {
+        if (Double.isNaN(priority)) {
+            throw new IllegalArgumentException("priority is NaN");
+        }
+        /* Adding 0.0 turns -0.0 into 0.0. */
+        long key = Double.doubleToLongBits(priority + 0.0);
+        return priority < Double.longBitsToDouble(last) ? last : key;
+    }
+
+    private int bucketOf(long key) {
+        return key == last ? 0 : 64 - Long.numberOfLeadingZeros(key ^ last);
+    }
+
+    @Override
+    public void add(T item, double priority) {
+        if (contains(item)) {
+            throw new IllegalArgumentException();
+        }
+        insert(item, key(priority));
+        size++;
+    }
+
+    private void insert(T item, long key) {
+        int b = bucketOf(key);
+        int n = counts[b];
+        if (n == items[b].length) {
+            items[b] = Arrays.copyOf(items[b], 2 * n);
+            keys[b] = Arrays.copyOf(keys[b], 2 * n);
+        }
+        items[b][n] = item;
+        keys[b][n] = key;
+        counts[b] = n + 1;
+        index.put(item, ((long) n << BUCKET_BITS) | b);
+    }
+
+    /* Removes the entry at position I of bucket B, filling its slot with the
+     * last entry of the bucket. */
+    @SuppressWarnings("unchecked")
+    private void delete(int b, int i) {
+        int n = counts[b] - 1;
+        if (i != n) {
+            items[b][i] = items[b][n];
+            keys[b][i] = keys[b][n];
+            index.put((T) items[b][i], ((long) i << BUCKET_BITS) | b);
+        }
+        items[b][n] = null;
+        counts[b] = n;
+    }
+
+    /* Makes sure bucket 0 holds the smallest items, if there are any. */
+    @SuppressWarnings("unchecked")
+    private void refill() {
+        if (counts[0] > 0 || size == 0) {
+            return;
+        }
+        int b = 1;
+        while (counts[b] == 0) {
+            b++;
+        }
+        long min = keys[b][0];
+        for (int i = 1; i < counts[b]; i++) {
+            min = Math.min(min, keys[b][i]);
+        }
+        last = min;
+        /* All of bucket b agrees with the new last on bit b - 1 and above, so
+         * every entry lands in a lower bucket. */
+        for (int i = 0; i < counts[b]; i++) {
+            insert((T) items[b][i], keys[b][i]);
+            items[b][i] = null;
+        }
+        counts[b] = 0;
+    }
+
+    @Override
+    public boolean contains(T item) {
+        return index.containsKey(item);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T getSmallest() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        refill();
+        return (T) items[0][counts[0] - 1];
+    }
+
+    /* Returns the priority of the minimum item. Throws NoSuchElementException
+     * if the PQ is empty. */
+    public double smallestPriority() {
+        getSmallest();
+        return Double.longBitsToDouble(last);
+    }
+
+    @Override
+    public T removeSmallest() {
+        T removed = getSmallest();
+        index.remove(removed);
+        int n = counts[0] - 1;
+        items[0][n] = null;
+        counts[0] = n;
+        size--;
+        return removed;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void changePriority(T item, double priority) {
+        Long location = index.get(item);
+        if (location == null) {
+            throw new NoSuchElementException();
+        }
+        delete((int) (location & BUCKET_MASK), (int) (location >>> BUCKET_BITS));
+        insert(item, key(priority));
+    }
+}
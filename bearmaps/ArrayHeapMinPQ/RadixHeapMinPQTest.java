@@ -0,0 +1,86 @@
+package bearmaps;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class RadixHeapMinPQTest {
+
+    /* Like Dijkstra: every new priority is at least the last one removed. */
+    @Test
+    public void testMonotoneRandom() {
+        Random random = new Random(63);
+        RadixHeapMinPQ<Integer> heap = new RadixHeapMinPQ<>();
+        IntRadixMinPQ intHeap = new IntRadixMinPQ(200);
+        Map<Integer, Double> priorities = new HashMap<>();
+        Map<Integer, Double> intPriorities = new HashMap<>();
+        double last = 0;
+        for (int step = 0; step < 5000; step++) {
+            if (random.nextInt(5) < 3) {
+                int item = random.nextInt(200);
+                double p = last + random.nextInt(4) * random.nextDouble() * 10;
+                if (priorities.containsKey(item)) {
+                    heap.changePriority(item, p);
+                } else {
+                    heap.add(item, p);
+                }
+                if (intPriorities.containsKey(item)) {
+                    intHeap.changePriority(item, p);
+                } else {
+                    intHeap.add(item, p);
+                }
+                priorities.put(item, p);
+                intPriorities.put(item, p);
+            } else if (!priorities.isEmpty() && !intPriorities.isEmpty()) {
+                double min = smallest(priorities);
+                double intMin = smallest(intPriorities);
+                assertEquals(min, heap.smallestPriority(), 0.0);
+                assertEquals(intMin, intHeap.smallestPriority(), 0.0);
+                assertEquals(min, priorities.remove(heap.removeSmallest()), 0.0);
+                assertEquals(intMin, intPriorities.remove(intHeap.removeSmallest()), 0.0);
+                last = Math.max(min, intMin);
+            }
+            assertEquals(priorities.size(), heap.size());
+            assertEquals(intPriorities.size(), intHeap.size());
+        }
+    }
+
+    private static double smallest(Map<Integer, Double> priorities) {
+        double min = Double.POSITIVE_INFINITY;
+        for (double p : priorities.values()) {
+            min = Math.min(min, p);
+        }
+        return min;
+    }
+
+    @Test
+    public void testRaisesPrioritiesBelowSmallest() {
+        RadixHeapMinPQ<String> heap = new RadixHeapMinPQ<>();
+        heap.add("a", 5);
+        heap.add("b", 7);
+        assertEquals("a", heap.removeSmallest());
+        heap.add("c", 4.999999);
+        assertEquals(5.0, heap.smallestPriority(), 0.0);
+        assertEquals("c", heap.removeSmallest());
+        assertEquals("b", heap.removeSmallest());
+        assertEquals(0, heap.size());
+    }
+
+    @Test
+    public void testContainsAndClear() {
+        IntRadixMinPQ heap = new IntRadixMinPQ(10);
+        heap.add(3, 1.5);
+        heap.add(7, 0.5);
+        assertTrue(heap.contains(3));
+        assertEquals(7, heap.removeSmallest());
+        assertFalse(heap.contains(7));
+        heap.clear();
+        assertFalse(heap.contains(3));
+        assertEquals(0, heap.size());
+        heap.add(3, 0.0);
+        assertEquals(3, heap.getSmallest());
+    }
+}
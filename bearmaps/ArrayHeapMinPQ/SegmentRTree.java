@@ -0,0 +1,309 @@
+package bearmaps;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Packed R-tree over line segments, for finding the segment nearest to a
+ * location. It is bulk loaded once with Sort-Tile-Recursive (STR): each level
+ * is sorted into vertical slices by x, each slice by y, and every NODE_SIZE
+ * consecutive boxes get a parent, until one root is left. Nodes end up full
+ * and spatially tight, and the whole tree lives in flat arrays.
+ *
+ * The boxes are stored level by level, the segments' own boxes first and the
+ * root last. A node's children are consecutive boxes of the level below, so a
+ * node only records where its children start.
+ *
+ * nearest is a best-first search: boxes wait in a heap ordered by their
+ * distance from the goal, and the search stops once the nearest box left is
+ * farther away than the nearest segment found. Distances are euclidean in x
+ * and y, like Point.distance.
+ */
+public class SegmentRTree {
+    /** How many children every node but the last of each level has. */
+    public static final int NODE_SIZE = 16;
+
+    private final double[] x1;
+    private final double[] y1;
+    private final double[] x2;
+    private final double[] y2;
+    private final double[] minX;
+    private final double[] minY;
+    private final double[] maxX;
+    private final double[] maxY;
+    /* For the box of a segment, the segment; for a node, its first child's box. */
+    private final int[] index;
+    /* The boxes of level l end before levelEnd[l]; level 0 holds the segments. */
+    private final int[] levelEnd;
+    private final ThreadLocal<BoxQueue> queues;
+
+    /* A binary min-heap of boxes by distance, reused by one thread's queries. */
+    private static class BoxQueue {
+        private int[] boxes = new int[64];
+        private double[] distances = new double[64];
+        private int size;
+
+        void push(int box, double distance) {
+            if (size == boxes.length) {
+                boxes = Arrays.copyOf(boxes, 2 * size);
+                distances = Arrays.copyOf(distances, 2 * size);
+            }
+            int i = size;
+            size++;
+            while (i > 0 && distances[(i - 1) / 2] > distance) {
+                boxes[i] = boxes[(i - 1) / 2];
+                distances[i] = distances[(i - 1) / 2];
+                i = (i - 1) / 2;
+            }
+            boxes[i] = box;
+            distances[i] = distance;
+        }
+
+        /* Removes the nearest box and returns it. */
+        int pop() {
+            int top = boxes[0];
+            size--;
+            int box = boxes[size];
+            double distance = distances[size];
+            int i = 0;
+            while (2 * i + 1 < size) {
+                int child = 2 * i + 1;
+                if (child + 1 < size && distances[child + 1] < distances[child]) {
+                    child++;
+                }
+                if (distances[child] >= distance) {
+                    break;
+                }
+                boxes[i] = boxes[child];
+                distances[i] = distances[child];
+                i = child;
+            }
+            boxes[i] = box;
+            distances[i] = distance;
+            return top;
+        }
+    }
+
+    /**
+     * Builds a tree over the segments from (X1[i], Y1[i]) to (X2[i], Y2[i]).
+     * The arrays are kept, not copied.
+     */
+    public SegmentRTree(double[] x1, double[] y1, double[] x2, double[] y2) {
+        this(x1, y1, x2, y2, null);
+    }
+
+    /**
+     * Builds the same tree as the constructor above, sorting each level in
+     * parallel on POOL.
+     */
+    public SegmentRTree(double[] x1, double[] y1, double[] x2, double[] y2, ForkJoinPool pool) {
+        int n = x1.length;
+        if (n == 0) {
+            throw new IllegalArgumentException("a SegmentRTree needs at least one segment");
+        }
+        this.x1 = x1;
+        this.y1 = y1;
+        this.x2 = x2;
+        this.y2 = y2;
+
+        int levels = 1;
+        int total = n;
+        for (int count = n; count > 1; count = (count + NODE_SIZE - 1) / NODE_SIZE) {
+            levels++;
+            total += (count + NODE_SIZE - 1) / NODE_SIZE;
+        }
+        minX = new double[total];
+        minY = new double[total];
+        maxX = new double[total];
+        maxY = new double[total];
+        index = new int[total];
+        levelEnd = new int[levels];
+        if (pool == null) {
+            pack(false);
+        } else {
+            /* Parallel sorts started from one of its threads run in POOL. */
+            pool.invoke(ForkJoinTask.adapt(() -> pack(true)));
+        }
+        queues = ThreadLocal.withInitial(BoxQueue::new);
+    }
+
+    /* Fills in the boxes, level by level. */
+    private void pack(boolean parallel) {
+        int n = x1.length;
+        for (int s = 0; s < n; s++) {
+            minX[s] = Math.min(x1[s], x2[s]);
+            minY[s] = Math.min(y1[s], y2[s]);
+            maxX[s] = Math.max(x1[s], x2[s]);
+            maxY[s] = Math.max(y1[s], y2[s]);
+            index[s] = s;
+        }
+        int start = 0;
+        int end = n;
+        int level = 0;
+        while (true) {
+            levelEnd[level] = end;
+            if (end - start == 1) {
+                return;
+            }
+            sortTiles(start, end, parallel);
+            int parent = end;
+            for (int first = start; first < end; first += NODE_SIZE) {
+                int last = Math.min(first + NODE_SIZE, end);
+                minX[parent] = Double.POSITIVE_INFINITY;
+                minY[parent] = Double.POSITIVE_INFINITY;
+                maxX[parent] = Double.NEGATIVE_INFINITY;
+                maxY[parent] = Double.NEGATIVE_INFINITY;
+                for (int b = first; b < last; b++) {
+                    minX[parent] = Math.min(minX[parent], minX[b]);
+                    minY[parent] = Math.min(minY[parent], minY[b]);
+                    maxX[parent] = Math.max(maxX[parent], maxX[b]);
+                    maxY[parent] = Math.max(maxY[parent], maxY[b]);
+                }
+                index[parent] = first;
+                parent++;
+            }
+            start = end;
+            end = parent;
+            level++;
+        }
+    }
+
+    /*
+    Reorders boxes START .. END - 1 into STR order. Sorting goes through long
+    keys holding a center coordinate, scaled to 31 bits, above the box's offset,
+    so it sorts primitives instead of boxed indices.
+     */
+    private void sortTiles(int start, int end, boolean parallel) {
+        int count = end - start;
+        int nodes = (count + NODE_SIZE - 1) / NODE_SIZE;
+        int sliceSize = (int) Math.ceil(Math.sqrt(nodes)) * NODE_SIZE;
+        long[] keys = new long[count];
+        double lo = Double.POSITIVE_INFINITY;
+        double hi = Double.NEGATIVE_INFINITY;
+        for (int b = start; b < end; b++) {
+            lo = Math.min(lo, minX[b] + maxX[b]);
+            hi = Math.max(hi, minX[b] + maxX[b]);
+        }
+        for (int i = 0; i < count; i++) {
+            keys[i] = scale(minX[start + i] + maxX[start + i], lo, hi) << 32 | i;
+        }
+        sort(keys, 0, count, parallel);
+
+        lo = Double.POSITIVE_INFINITY;
+        hi = Double.NEGATIVE_INFINITY;
+        for (int b = start; b < end; b++) {
+            lo = Math.min(lo, minY[b] + maxY[b]);
+            hi = Math.max(hi, minY[b] + maxY[b]);
+        }
+        for (int from = 0; from < count; from += sliceSize) {
+            int to = Math.min(from + sliceSize, count);
+            for (int k = from; k < to; k++) {
+                int i = (int) keys[k];
+                keys[k] = scale(minY[start + i] + maxY[start + i], lo, hi) << 32 | i;
+            }
+            sort(keys, from, to, parallel);
+        }
+
+        double[][] columns = {minX, minY, maxX, maxY};
+        double[] moved = new double[count];
+        for (double[] column : columns) {
+            for (int k = 0; k < count; k++) {
+                moved[k] = column[start + (int) keys[k]];
+            }
+            System.arraycopy(moved, 0, column, start, count);
+        }
+        int[] movedIndex = new int[count];
+        for (int k = 0; k < count; k++) {
+            movedIndex[k] = index[start + (int) keys[k]];
+        }
+        System.arraycopy(movedIndex, 0, index, start, count);
+    }
+
+    /* Returns V scaled from LO .. HI to 0 .. 2^31 - 1, so keys stay positive. */
+    private static long scale(double v, double lo, double hi) {
+        if (!(hi > lo)) {
+            return 0;
+        }
+        return (long) ((v - lo) / (hi - lo) * Integer.MAX_VALUE);
+    }
+
+    private static void sort(long[] keys, int from, int to, boolean parallel) {
+        if (parallel) {
+            Arrays.parallelSort(keys, from, to);
+        } else {
+            Arrays.sort(keys, from, to);
+        }
+    }
+
+    /** Returns the number of segments. */
+    public int size() {
+        return x1.length;
+    }
+
+    /** Returns the index of the segment nearest to (X, Y). */
+    public int nearest(double x, double y) {
+        int root = index.length - 1;
+        if (root < x1.length) {
+            return 0;
+        }
+        BoxQueue queue = queues.get();
+        queue.size = 0;
+        int best = -1;
+        double bestDist = Double.POSITIVE_INFINITY;
+        queue.push(root, boxDistance(root, x, y));
+        while (queue.size > 0 && queue.distances[0] < bestDist) {
+            int node = queue.pop();
+            int first = index[node];
+            int level = 0;
+            while (levelEnd[level] <= first) {
+                level++;
+            }
+            int end = Math.min(first + NODE_SIZE, levelEnd[level]);
+            for (int b = first; b < end; b++) {
+                if (level == 0) {
+                    double d = distance(index[b], x, y);
+                    if (d < bestDist) {
+                        best = index[b];
+                        bestDist = d;
+                    }
+                } else {
+                    double d = boxDistance(b, x, y);
+                    if (d < bestDist) {
+                        queue.push(b, d);
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /* Squared distance from (X, Y) to box B, 0 if it is inside. */
+    private double boxDistance(int b, double x, double y) {
+        double dx = Math.max(0, Math.max(minX[b] - x, x - maxX[b]));
+        double dy = Math.max(0, Math.max(minY[b] - y, y - maxY[b]));
+        return dx * dx + dy * dy;
+    }
+
+    /**
+     * Returns how far along SEGMENT the point nearest to (X, Y) is, from 0 at
+     * (x1, y1) to 1 at (x2, y2).
+     */
+    public double fraction(int segment, double x, double y) {
+        double dx = x2[segment] - x1[segment];
+        double dy = y2[segment] - y1[segment];
+        double length = dx * dx + dy * dy;
+        if (length == 0) {
+            return 0;
+        }
+        double t = ((x - x1[segment]) * dx + (y - y1[segment]) * dy) / length;
+        return Math.min(1, Math.max(0, t));
+    }
+
+    /** Returns the squared distance from (X, Y) to SEGMENT. */
+    public double distance(int segment, double x, double y) {
+        double t = fraction(segment, x, y);
+        double dx = x1[segment] + t * (x2[segment] - x1[segment]) - x;
+        double dy = y1[segment] + t * (y2[segment] - y1[segment]) - y;
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,61 @@
+package bearmaps;
+
+import org.junit.Test;
+import static org.junit.Assert.assertEquals;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class SegmentRTreeTest {
+    private static final double DELTA = 1e-12;
+
+    /* Returns the squared distance from (X, Y) to the nearest segment, by brute force. */
+    private static double naiveNearest(SegmentRTree tree, double x, double y) {
+        double best = Double.POSITIVE_INFINITY;
+        for (int s = 0; s < tree.size(); s++) {
+            best = Math.min(best, tree.distance(s, x, y));
+        }
+        return best;
+    }
+
+    @Test
+    public void testMatchesNaive() {
+        Random random = new Random(18);
+        for (int n : new int[]{1, 2, 15, 16, 17, 300, 5000}) {
+            double[] x1 = new double[n];
+            double[] y1 = new double[n];
+            double[] x2 = new double[n];
+            double[] y2 = new double[n];
+            for (int i = 0; i < n; i++) {
+                // Short road-like segments, some of them points
+                x1[i] = random.nextDouble();
+                y1[i] = random.nextDouble();
+                x2[i] = i % 10 == 0 ? x1[i] : x1[i] + 0.05 * random.nextGaussian();
+                y2[i] = i % 10 == 0 ? y1[i] : y1[i] + 0.05 * random.nextGaussian();
+            }
+            SegmentRTree tree = new SegmentRTree(x1, y1, x2, y2);
+            SegmentRTree parallel = new SegmentRTree(x1, y1, x2, y2, new ForkJoinPool(2));
+            for (int i = 0; i < 500; i++) {
+                double x = 1.4 * random.nextDouble() - 0.2;
+                double y = 1.4 * random.nextDouble() - 0.2;
+                double expected = naiveNearest(tree, x, y);
+                assertEquals(expected, tree.distance(tree.nearest(x, y), x, y), DELTA);
+                assertEquals(expected, parallel.distance(parallel.nearest(x, y), x, y), DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void testFraction() {
+        SegmentRTree tree = new SegmentRTree(new double[]{0, 5}, new double[]{0, 5},
+                new double[]{4, 5}, new double[]{0, 5});
+        assertEquals(0, tree.nearest(1, 1));
+        assertEquals(0.25, tree.fraction(0, 1, 1), DELTA);
+        assertEquals(1.0, tree.distance(0, 1, 1), DELTA);
+        // Past either end, the nearest point is that end
+        assertEquals(0.0, tree.fraction(0, -3, 1), DELTA);
+        assertEquals(1.0, tree.fraction(0, 9, -2), DELTA);
+        // A segment that is a single point
+        assertEquals(1, tree.nearest(5, 6));
+        assertEquals(0.0, tree.fraction(1, 5, 6), DELTA);
+    }
+}
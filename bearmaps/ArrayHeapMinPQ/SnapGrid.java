@@ -0,0 +1,244 @@
+package bearmaps;
+import java.util.Arrays;
+
+/**
+ * Precomputed nearest-point lookup over a fixed bounding box. The box is cut
+ * into a grid of equal cells, and every cell stores the indices of the only
+ * points that can be nearest to some location inside it. A query is then one
+ * cell lookup plus a few distance checks, with no allocation.
+ *
+ * If some point is at most D away from every corner of a cell, every location
+ * in the cell is within D of it, so only points at most D away from the cell
+ * itself can be nearest to a location in it. Cells with more than
+ * MAX_CANDIDATES such points store none, and nearest returns -1 for them and
+ * for locations outside the box; callers fall back to a KDTree there.
+ *
+ * Distances are euclidean in x and y, like Point.distance.
+ */
+public class SnapGrid {
+    /** The most candidates a cell stores before giving up on it. */
+    public static final int MAX_CANDIDATES = 32;
+    /** How many cells over uses per point. */
+    private static final int CELLS_PER_POINT = 4;
+
+    private final double[] xs;
+    private final double[] ys;
+    private final double minX;
+    private final double maxY;
+    private final double cellWidth;
+    private final double cellHeight;
+    private final int cols;
+    private final int rows;
+    /* The candidates of cell c are candidates[cellStart[c]] .. candidates[cellStart[c + 1] - 1]. */
+    private final int[] cellStart;
+    private final int[] candidates;
+
+    /**
+     * Builds a grid over the box from (MINX, MAXY) at the upper left to
+     * (MAXX, MINY) at the lower right, with CELLS_PER_POINT cells per point.
+     */
+    public static SnapGrid over(double[] xs, double[] ys, double minX, double maxY,
+                                double maxX, double minY) {
+        double aspect = (maxX - minX) / (maxY - minY);
+        double cells = Math.min(Math.max(CELLS_PER_POINT * xs.length, 1), 1 << 22);
+        int cols = (int) Math.max(1, Math.round(Math.sqrt(cells * aspect)));
+        int rows = (int) Math.max(1, Math.round(cells / cols));
+        return new SnapGrid(xs, ys, minX, maxY, maxX, minY, cols, rows);
+    }
+
+    /**
+     * Builds a COLS by ROWS grid over the box from (MINX, MAXY) at the upper
+     * left to (MAXX, MINY) at the lower right, for the points (XS[i], YS[i]).
+     * Points may lie outside the box.
+     */
+    public SnapGrid(double[] xs, double[] ys, double minX, double maxY, double maxX,
+                    double minY, int cols, int rows) {
+        this.xs = xs;
+        this.ys = ys;
+        this.minX = minX;
+        this.maxY = maxY;
+        this.cols = cols;
+        this.rows = rows;
+        cellWidth = (maxX - minX) / cols;
+        cellHeight = (maxY - minY) / rows;
+
+        /* Bin the points by cell, clamping outside points to the border cells. */
+        int cells = cols * rows;
+        int[] binStart = new int[cells + 1];
+        for (int i = 0; i < xs.length; i++) {
+            binStart[cell(xs[i], ys[i]) + 1]++;
+        }
+        for (int c = 0; c < cells; c++) {
+            binStart[c + 1] += binStart[c];
+        }
+        int[] bins = new int[xs.length];
+        int[] fill = Arrays.copyOf(binStart, cells);
+        for (int i = 0; i < xs.length; i++) {
+            bins[fill[cell(xs[i], ys[i])]++] = i;
+        }
+
+        cellStart = new int[cells + 1];
+        int[] found = new int[16];
+        int size = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                double bound = ringSearch(binStart, bins, col, row,
+                        Double.POSITIVE_INFINITY, null, 0);
+                if (found.length < size + MAX_CANDIDATES + 1) {
+                    found = Arrays.copyOf(found, 2 * (size + MAX_CANDIDATES + 1));
+                }
+                /* Widened a little so rounding can't drop a point right on the edge. */
+                int count = (int) ringSearch(binStart, bins, col, row,
+                        bound * (1 + 1e-9), found, size);
+                size += count > MAX_CANDIDATES ? 0 : count;
+                cellStart[row * cols + col + 1] = size;
+            }
+        }
+        candidates = Arrays.copyOf(found, size);
+    }
+
+    /**
+     * Restores a COLS by ROWS grid over the same box and points from the
+     * arrays cellStarts() and candidates() returned for it, e.g. from a
+     * snapshot on disk, without searching for candidates again. Throws an
+     * IllegalArgumentException if the arrays don't describe such a grid.
+     */
+    public SnapGrid(double[] xs, double[] ys, double minX, double maxY, double maxX,
+                    double minY, int cols, int rows, int[] cellStart, int[] candidates) {
+        if (cols < 1 || rows < 1 || cellStart.length != cols * rows + 1
+                || cellStart[0] != 0 || cellStart[cols * rows] != candidates.length) {
+            throw new IllegalArgumentException("cells don't match a " + cols + " by "
+                    + rows + " grid");
+        }
+        for (int c = 0; c < cols * rows; c++) {
+            if (cellStart[c] > cellStart[c + 1]) {
+                throw new IllegalArgumentException("cell " + c + " ends before it starts");
+            }
+        }
+        for (int i : candidates) {
+            if (i < 0 || i >= xs.length) {
+                throw new IllegalArgumentException("candidate " + i + " is not a point");
+            }
+        }
+        this.xs = xs;
+        this.ys = ys;
+        this.minX = minX;
+        this.maxY = maxY;
+        this.cols = cols;
+        this.rows = rows;
+        cellWidth = (maxX - minX) / cols;
+        cellHeight = (maxY - minY) / rows;
+        this.cellStart = cellStart;
+        this.candidates = candidates;
+    }
+
+    /*
+    Visits the bins in rings of cells around cell (COL, ROW), stopping once no
+    point in a further ring can be within sqrt(LIMIT) of the cell. If OUT is null,
+    returns the smallest squared distance from a point to the farthest corner of
+    the cell, tightening LIMIT as it goes. Otherwise writes the points within
+    sqrt(LIMIT) of the cell to OUT from index START, stops after
+    MAX_CANDIDATES + 1 of them, and returns how many it wrote.
+     */
+    private double ringSearch(int[] binStart, int[] bins, int col, int row, double limit,
+                              int[] out, int start) {
+        double left = minX + col * cellWidth;
+        double right = left + cellWidth;
+        double top = maxY - row * cellHeight;
+        double bottom = top - cellHeight;
+        double best = limit;
+        int count = 0;
+        double side = Math.min(cellWidth, cellHeight);
+        for (int k = 0; k <= Math.max(cols, rows); k++) {
+            double ringBound = Math.max(0, (k - 1) * side);
+            if (ringBound * ringBound > best) {
+                break;
+            }
+            for (int r = row - k; r <= row + k; r++) {
+                if (r < 0 || r >= rows) {
+                    continue;
+                }
+                /* Only the border of the ring: every column on its top and
+                 * bottom rows, and the two end columns in between. */
+                int step = (r == row - k || r == row + k) ? 1 : Math.max(1, 2 * k);
+                for (int c = col - k; c <= col + k; c += step) {
+                    if (c < 0 || c >= cols) {
+                        continue;
+                    }
+                    int b = r * cols + c;
+                    for (int j = binStart[b]; j < binStart[b + 1]; j++) {
+                        int i = bins[j];
+                        double x = xs[i];
+                        double y = ys[i];
+                        if (out == null) {
+                            double dx = Math.max(x - left, right - x);
+                            double dy = Math.max(y - bottom, top - y);
+                            best = Math.min(best, dx * dx + dy * dy);
+                        } else {
+                            double dx = Math.max(0, Math.max(left - x, x - right));
+                            double dy = Math.max(0, Math.max(bottom - y, y - top));
+                            if (dx * dx + dy * dy <= limit) {
+                                out[start + count] = i;
+                                count++;
+                                if (count > MAX_CANDIDATES) {
+                                    return count;
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return out == null ? best : count;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    /** Returns where the candidates of each cell start, then where the last ones end. */
+    public int[] cellStarts() {
+        return cellStart.clone();
+    }
+
+    /** Returns the candidates of all cells, row by row. */
+    public int[] candidates() {
+        return candidates.clone();
+    }
+
+    private int cell(double x, double y) {
+        int col = (int) Math.floor((x - minX) / cellWidth);
+        int row = (int) Math.floor((maxY - y) / cellHeight);
+        col = Math.min(Math.max(col, 0), cols - 1);
+        row = Math.min(Math.max(row, 0), rows - 1);
+        return row * cols + col;
+    }
+
+    /**
+     * Returns the index of the point nearest to (X, Y), or -1 if (X, Y) is
+     * outside the box or in a cell with too many candidates.
+     */
+    public int nearest(double x, double y) {
+        double col = (x - minX) / cellWidth;
+        double row = (maxY - y) / cellHeight;
+        if (!(col >= 0 && col < cols && row >= 0 && row < rows)) {
+            return -1;
+        }
+        int c = (int) row * cols + (int) col;
+        int best = -1;
+        double bestDist = Double.POSITIVE_INFINITY;
+        for (int j = cellStart[c]; j < cellStart[c + 1]; j++) {
+            int i = candidates[j];
+            double d = (xs[i] - x) * (xs[i] - x) + (ys[i] - y) * (ys[i] - y);
+            if (d < bestDist) {
+                best = i;
+                bestDist = d;
+            }
+        }
+        return best;
+    }
+}
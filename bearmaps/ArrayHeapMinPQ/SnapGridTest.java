@@ -0,0 +1,57 @@
+package bearmaps;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class SnapGridTest {
+
+    /* Clustered points, some outside the box, queried inside and outside it. */
+    @Test
+    public void testMatchesNaive() {
+        Random random = new Random(64);
+        int n = 3000;
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (i % 3 == 0) {
+                xs[i] = random.nextDouble() * 12 - 1;
+                ys[i] = random.nextDouble() * 7 - 1;
+            } else {
+                xs[i] = 2 + random.nextGaussian() * 0.3;
+                ys[i] = 3 + random.nextGaussian() * 0.3;
+            }
+            points.add(new Point(xs[i], ys[i]));
+        }
+        NaivePointSet naive = new NaivePointSet(points);
+        SnapGrid grid = SnapGrid.over(xs, ys, 0, 5, 10, 0);
+        int answered = 0;
+        for (int q = 0; q < 5000; q++) {
+            double x = random.nextDouble() * 12 - 1;
+            double y = random.nextDouble() * 7 - 1;
+            int i = grid.nearest(x, y);
+            if (i < 0) {
+                continue;
+            }
+            answered++;
+            Point expected = naive.nearest(x, y);
+            Point goal = new Point(x, y);
+            assertEquals(Point.distance(expected, goal),
+                    Point.distance(points.get(i), goal), 1e-12);
+        }
+        assertTrue(answered > 2500);
+    }
+
+    @Test
+    public void testOutsideBox() {
+        SnapGrid grid = new SnapGrid(new double[]{1, 2}, new double[]{1, 2}, 0, 3, 3, 0, 4, 4);
+        assertEquals(-1, grid.nearest(-0.5, 1));
+        assertEquals(-1, grid.nearest(1, 3.5));
+        assertEquals(0, grid.nearest(0.2, 0.2));
+        assertEquals(1, grid.nearest(2.9, 2.9));
+    }
+}
@@ -1,57 +1,417 @@
 package bearmaps.proj2d;
 
+import bearmaps.FlatKDTree;
+import bearmaps.Point;
+import bearmaps.SegmentRTree;
+import bearmaps.SnapGrid;
+import bearmaps.proj2c.streetmap.ContractionHierarchy;
+import bearmaps.proj2c.streetmap.IndexedStreetGraph;
+import bearmaps.proj2c.streetmap.Landmarks;
 import bearmaps.proj2c.streetmap.StreetMapGraph;
 import bearmaps.proj2c.streetmap.Node;
+import bearmaps.proj2c.streetmap.RouteEngine;
+import bearmaps.proj2c.streetmap.SnapshotIO;
+import bearmaps.proj2d.utils.Constants;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
 import java.util.LinkedList;
 import java.util.*;
-import bearmaps.proj2ab.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.LongConsumer;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParserFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
 
 /**
  * An augmented graph that is more powerful that a standard StreetMapGraph.
  * Specifically, it supports the following additional operations:
  *
+ * The graph, its place names and its point indexes can be saved to a binary
+ * snapshot, which readSnapshot loads far faster than the OSM XML can be
+ * parsed. Run main to write one for a map:
+ *     java bearmaps.proj2d.AugmentedStreetMapGraph berkeley-2019.osm.xml berkeley-2019.snap
  *
  * @author Alan Yao, Josh Hug, ________
  */
 public class AugmentedStreetMapGraph extends StreetMapGraph {
-    private HashMap<Point, Node> pointToNode;
+    /* Roughly how much shorter a degree of longitude is than one of latitude here. */
+    private static final double LON_SCALE =
+            Math.cos(Math.toRadians((Constants.ROOT_ULLAT + Constants.ROOT_LRLAT) / 2));
+    private static final int MAGIC = 0x424d534e;
+    private static final int VERSION = 1;
+
     private HashMap<String, String> fullNames;
     private HashMap<String, List<Node>> names;
-    private KDTree kd;
+    /* points.get(i) is the location of node snapIds[i]; both are indexed by kd and snapGrid. */
     private List<Point> points;
+    private long[] snapIds;
+    /* snapVertices[i] is the index of node snapIds[i] in indexed(). */
+    private int[] snapVertices;
+    /* The most any edge spans in longitude and in latitude. */
+    private double maxEdgeLon;
+    private double maxEdgeLat;
+    private FlatKDTree kd;
+    private SnapGrid snapGrid;
+    /* Road segment s joins vertices segmentFrom[s] and segmentTo[s] of indexed(). */
+    private SegmentRTree segments;
+    private int[] segmentFrom;
+    private int[] segmentTo;
+    private RouteEngine engine;
+    private RouteCache routeCache;
 
+    /**
+     * Builds the graph of the OSM XML file at DBPATH, parsed in parallel on
+     * the common pool, along with the names of its places.
+     */
     public AugmentedStreetMapGraph(String dbPath) {
-        super(dbPath);
-        // You might find it helpful to uncomment the line below:
-        List<Node> nodes = this.getNodes();
-        pointToNode = new HashMap<>();
+        super(StreetMapGraph.readFromXMLParallel(dbPath, ForkJoinPool.commonPool()));
+        fullNames = new HashMap<>();
+        names = new HashMap<>();
+        readPlaceNames(dbPath);
+
+        /* clean() only keeps nodes with edges, so every vertex is a snap point. */
+        IndexedStreetGraph g = indexed();
+        points = new ArrayList<>(g.size());
+        snapIds = new long[g.size()];
+        snapVertices = new int[g.size()];
+        for (int v = 0; v < g.size(); v++) {
+            points.add(new Point(g.lon(v), g.lat(v)));
+            snapIds[v] = g.id(v);
+            snapVertices[v] = v;
+        }
+        kd = new FlatKDTree(points);
+        if (Constants.USE_SNAP_GRID) {
+            buildSnapGrid(0, 0, null, null);
+        }
+        buildIndexes();
+    }
+
+    /*
+    Adds every node of the OSM XML file at DBPATH that has a name tag to the
+    place names, whether it is on a road or not.
+     */
+    private void readPlaceNames(String dbPath) {
+        try {
+            SAXParserFactory.newInstance().newSAXParser().parse(new File(dbPath),
+                    new DefaultHandler() {
+                        private Node node;
+
+                        @Override
+                        public void startElement(String uri, String localName, String qName,
+                                                 Attributes attributes) {
+                            if (qName.equals("node")) {
+                                node = Node.of(Long.parseLong(attributes.getValue("id")),
+                                        Double.parseDouble(attributes.getValue("lat")),
+                                        Double.parseDouble(attributes.getValue("lon")));
+                            } else if (node != null && qName.equals("tag")
+                                    && "name".equals(attributes.getValue("k"))) {
+                                named(attributes.getValue("v"), node);
+                            }
+                        }
+
+                        @Override
+                        public void endElement(String uri, String localName, String qName) {
+                            if (qName.equals("node")) {
+                                node = null;
+                            }
+                        }
+                    });
+        } catch (ParserConfigurationException | SAXException | IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /*
+    Restores a graph from the snapshot IN, positioned after its header. See
+    writeSnapshot for what is in it.
+     */
+    private AugmentedStreetMapGraph(ByteBuffer in) throws IOException {
+        super(in);
+        IndexedStreetGraph g = indexed();
         fullNames = new HashMap<>();
         names = new HashMap<>();
-        points = new ArrayList<>();
+        int nameCount = SnapshotIO.readCount(in);
+        for (int i = 0; i < nameCount; i++) {
+            String name = SnapshotIO.readString(in);
+            int count = SnapshotIO.readCount(in);
+            for (int j = 0; j < count; j++) {
+                named(name, Node.of(in.getLong(), in.getDouble(), in.getDouble()));
+            }
+        }
+
+        int k = SnapshotIO.readCount(in);
+        snapVertices = SnapshotIO.readInts(in, k);
+        int[] order = SnapshotIO.readInts(in, k);
+        snapIds = new long[k];
+        points = new ArrayList<>(k);
+        for (int i = 0; i < k; i++) {
+            int v = snapVertices[i];
+            if (v < 0 || v >= g.size()) {
+                throw new IOException("snap point " + i + " is not a vertex");
+            }
+            snapIds[i] = g.id(v);
+            points.add(new Point(g.lon(v), g.lat(v)));
+        }
+        kd = new FlatKDTree(points, order);
+
+        /* The grid is only reused if it was built over the same root tile. */
+        double[] tile = SnapshotIO.readDoubles(in, 4);
+        boolean sameTile = tile[0] == Constants.ROOT_ULLON && tile[1] == Constants.ROOT_ULLAT
+                && tile[2] == Constants.ROOT_LRLON && tile[3] == Constants.ROOT_LRLAT;
+        int cols = SnapshotIO.readCount(in);
+        int rows = SnapshotIO.readCount(in);
+        int[] cellStarts = SnapshotIO.readInts(in, cols == 0 ? 0 : cols * rows + 1);
+        int[] candidates = SnapshotIO.readInts(in, SnapshotIO.readCount(in));
+        if (Constants.USE_SNAP_GRID) {
+            if (sameTile && cols > 0) {
+                buildSnapGrid(cols, rows, cellStarts, candidates);
+            } else {
+                buildSnapGrid(0, 0, null, null);
+            }
+        }
+        buildIndexes();
+    }
+
+    /*
+    Builds the rest of what is derived from the graph and the snap points,
+    which is cheap enough to redo instead of keeping in the snapshot.
+     */
+    private void buildIndexes() {
+        measureEdges();
+        if (Constants.SNAP_TO_EDGES) {
+            buildSegmentIndex();
+        }
+        engine = new RouteEngine(this, loadHierarchy(Constants.CH_PATH),
+                loadLandmarks(Constants.LANDMARKS_PATH));
+        routeCache = new RouteCache(Constants.ROUTE_CACHE_WEIGHT);
+    }
+
+    /* Finds how far edges reach, for edgesInBox. */
+    private void measureEdges() {
+        IndexedStreetGraph g = indexed();
+        for (int v = 0; v < g.size(); v++) {
+            for (int e = g.firstEdge(v); e < g.firstEdge(v + 1); e++) {
+                int w = g.target(e);
+                maxEdgeLon = Math.max(maxEdgeLon, Math.abs(g.lon(v) - g.lon(w)));
+                maxEdgeLat = Math.max(maxEdgeLat, Math.abs(g.lat(v) - g.lat(w)));
+            }
+        }
+    }
+
+    /*
+    Indexes every road once in a SegmentRTree. Roads always go both ways, so
+    only the direction from the lower to the higher vertex is kept.
+    Longitudes are scaled by the cosine of the root tile's latitude, so that
+    distances in the tree are in proportion to distances on the ground.
+     */
+    private void buildSegmentIndex() {
+        IndexedStreetGraph g = indexed();
+        int count = 0;
+        for (int v = 0; v < g.size(); v++) {
+            for (int e = g.firstEdge(v); e < g.firstEdge(v + 1); e++) {
+                count += v < g.target(e) ? 1 : 0;
+            }
+        }
+        if (count == 0) {
+            return;
+        }
+        segmentFrom = new int[count];
+        segmentTo = new int[count];
+        double[] x1 = new double[count];
+        double[] y1 = new double[count];
+        double[] x2 = new double[count];
+        double[] y2 = new double[count];
+        int s = 0;
+        for (int v = 0; v < g.size(); v++) {
+            for (int e = g.firstEdge(v); e < g.firstEdge(v + 1); e++) {
+                int w = g.target(e);
+                if (v < w) {
+                    segmentFrom[s] = v;
+                    segmentTo[s] = w;
+                    x1[s] = g.lon(v) * LON_SCALE;
+                    y1[s] = g.lat(v);
+                    x2[s] = g.lon(w) * LON_SCALE;
+                    y2[s] = g.lat(w);
+                    s++;
+                }
+            }
+        }
+        segments = new SegmentRTree(x1, y1, x2, y2, ForkJoinPool.commonPool());
+    }
+
+    /*
+    Indexes the same points as kd in a SnapGrid over the root tile. If
+    CELLSTARTS isn't null, the COLS by ROWS grid is restored from it and
+    CANDIDATES, as stored in a snapshot, instead of being built.
+     */
+    private void buildSnapGrid(int cols, int rows, int[] cellStarts, int[] candidates) {
+        double[] lons = new double[points.size()];
+        double[] lats = new double[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            Point p = points.get(i);
+            lons[i] = p.getX();
+            lats[i] = p.getY();
+        }
+        if (cellStarts == null) {
+            snapGrid = SnapGrid.over(lons, lats, Constants.ROOT_ULLON, Constants.ROOT_ULLAT,
+                    Constants.ROOT_LRLON, Constants.ROOT_LRLAT);
+        } else {
+            snapGrid = new SnapGrid(lons, lats, Constants.ROOT_ULLON, Constants.ROOT_ULLAT,
+                    Constants.ROOT_LRLON, Constants.ROOT_LRLAT, cols, rows, cellStarts,
+                    candidates);
+        }
+    }
+
+    /* Returns the landmark tables in the file at PATH, or null if there isn't a usable one. */
+    private Landmarks loadLandmarks(String path) {
+        if (!new File(path).exists()) {
+            return null;
+        }
+        try {
+            return Landmarks.read(path, indexed());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /* Returns the contraction hierarchy in the file at PATH, or null if there isn't a usable one. */
+    private ContractionHierarchy loadHierarchy(String path) {
+        if (!new File(path).exists()) {
+            return null;
+        }
+        try {
+            return ContractionHierarchy.read(path, indexed());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Writes this graph, which was built from the OSM XML file at DBPATH, to
+     * the file at path FILENAME, for readSnapshot. The header records the
+     * length and modification time of DBPATH, so a snapshot of an older map
+     * is not mistaken for one of the current map. After the header, the file
+     * holds the frozen graph (see StreetMapGraph.writeGraph), the place names
+     * with the nodes of each, the snap points as vertex indices in the order
+     * of the KD-tree over them, and the cells of the snap grid with the root
+     * tile they cover.
+     */
+    public void writeSnapshot(String filename, String dbPath) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(filename)))) {
+            File source = new File(dbPath);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(source.length());
+            out.writeLong(source.lastModified());
+            writeGraph(out);
+            out.writeInt(names.size());
+            for (Map.Entry<String, List<Node>> entry : names.entrySet()) {
+                SnapshotIO.writeString(out, fullNames.get(entry.getKey()));
+                out.writeInt(entry.getValue().size());
+                for (Node n : entry.getValue()) {
+                    out.writeLong(n.id());
+                    out.writeDouble(n.lat());
+                    out.writeDouble(n.lon());
+                }
+            }
+            out.writeInt(snapVertices.length);
+            SnapshotIO.writeInts(out, snapVertices);
+            SnapshotIO.writeInts(out, kd.treeOrder());
+            out.writeDouble(Constants.ROOT_ULLON);
+            out.writeDouble(Constants.ROOT_ULLAT);
+            out.writeDouble(Constants.ROOT_LRLON);
+            out.writeDouble(Constants.ROOT_LRLAT);
+            if (snapGrid == null) {
+                out.writeInt(0);
+                out.writeInt(0);
+                out.writeInt(0);
+            } else {
+                out.writeInt(snapGrid.cols());
+                out.writeInt(snapGrid.rows());
+                SnapshotIO.writeInts(out, snapGrid.cellStarts());
+                int[] candidates = snapGrid.candidates();
+                out.writeInt(candidates.length);
+                SnapshotIO.writeInts(out, candidates);
+            }
+        }
+    }
 
-        for (Node n: nodes) {
-            if (n.name() != null) {
-                named(n);
+    /**
+     * Loads a graph written by writeSnapshot. The file is memory-mapped and
+     * its arrays are copied out in bulk, so nothing is parsed, the KD-tree is
+     * not sorted again and the snap grid is not searched again. Throws an
+     * IOException if the file is not a snapshot of this version, is damaged,
+     * or was written from a different version of the OSM XML file at DBPATH
+     * than the one there now. If there is no file at DBPATH, the snapshot is
+     * taken as it is.
+     */
+    public static AugmentedStreetMapGraph readSnapshot(String filename, String dbPath)
+            throws IOException {
+        ByteBuffer in = SnapshotIO.map(filename);
+        try {
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IOException(filename + " is not a graph snapshot");
             }
-            if (!neighborEmpty(n)) {
-                Point p = new Point(n.lon(), n.lat());
-                pointToNode.put(p, n);
-                points.add(p);
+            long length = in.getLong();
+            long lastModified = in.getLong();
+            File source = new File(dbPath);
+            if (source.exists()
+                    && (source.length() != length || source.lastModified() != lastModified)) {
+                throw new IOException(filename + " is out of date with " + dbPath);
+            }
+            return new AugmentedStreetMapGraph(in);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException(filename + " is truncated or corrupt", e);
+        }
+    }
+
+    /**
+     * Returns the graph of the OSM XML file at DBPATH, loaded from the snapshot
+     * at SNAPSHOTPATH instead if there is a usable one written from that file.
+     */
+    public static AugmentedStreetMapGraph load(String dbPath, String snapshotPath) {
+        if (new File(snapshotPath).exists()) {
+            try {
+                return readSnapshot(snapshotPath, dbPath);
+            } catch (IOException e) {
+                e.printStackTrace();
             }
         }
-        kd = new KDTree(points);
+        return new AugmentedStreetMapGraph(dbPath);
     }
 
-    private boolean neighborEmpty(Node n) {
-        return (this.neighbors(n.id()).isEmpty());
+    /**
+     * Returns the route engine for this graph. It lives as long as the graph
+     * and keeps one search workspace per thread that uses it.
+     */
+    public RouteEngine routeEngine() {
+        return engine;
+    }
+
+    /**
+     * Returns the cache of routes found on this graph. It has to be invalidated
+     * if the graph or its route engine ever change.
+     */
+    public RouteCache routeCache() {
+        return routeCache;
     }
 
-    private void named(Node n) {
-        String clean = cleanString(n.name());
-        fullNames.put(clean, n.name());
+    private void named(String name, Node n) {
+        String clean = cleanString(name);
+        fullNames.put(clean, name);
         List<Node> nodeList;
         if (!names.containsKey(clean)) {
             nodeList = new ArrayList<>();
@@ -70,9 +430,148 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
      * @return The id of the node in the graph closest to the target.
      */
     public long closest(double lon, double lat) {
-        return pointToNode.get(kd.nearest(lon, lat)).id();
+        if (snapGrid != null) {
+            int i = snapGrid.nearest(lon, lat);
+            if (i >= 0) {
+                return snapIds[i];
+            }
+        }
+        return snapIds[kd.nearestIndex(lon, lat)];
     }
 
+    /**
+     * Returns the K vertices closest to the given longitude and latitude,
+     * closest first, e.g. to pick the one that is nearest by road instead.
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     * @param k How many vertices to return.
+     * @return The ids of the nodes, or of all of them if there are fewer than k.
+     */
+    public long[] closest(double lon, double lat, int k) {
+        int[] indices = kd.kNearestIndices(lon, lat, k);
+        long[] ids = new long[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            ids[i] = snapIds[indices[i]];
+        }
+        return ids;
+    }
+
+
+    /**
+     * Returns where the given longitude and latitude snap to on the nearest
+     * road, or null if roads aren't indexed (see Constants.SNAP_TO_EDGES) or
+     * there are none. The position along the road is rounded to a multiple of
+     * 1 / EdgeSnap.STEPS, so nearby queries share routes in the route cache.
+     * @param lon The target longitude.
+     * @param lat The target latitude.
+     */
+    public EdgeSnap snapToEdge(double lon, double lat) {
+        if (segments == null) {
+            return null;
+        }
+        double x = lon * LON_SCALE;
+        int s = segments.nearest(x, lat);
+        int step = (int) Math.round(segments.fraction(s, x, lat) * EdgeSnap.STEPS);
+        IndexedStreetGraph g = indexed();
+        int v = segmentFrom[s];
+        int w = segmentTo[s];
+        return new EdgeSnap(s, g.id(v), g.id(w), g.estimatedDistance(v, w), step);
+    }
+
+    /**
+     * A location snapped onto a road: the point fraction() of the way from
+     * node from() to node to(), which are joined by an edge of weight weight().
+     */
+    public static class EdgeSnap {
+        /** How many equal steps the position along a road is rounded to. */
+        public static final int STEPS = 64;
+
+        private final int segment;
+        private final long from;
+        private final long to;
+        private final double weight;
+        private final int step;
+
+        EdgeSnap(int segment, long from, long to, double weight, int step) {
+            this.segment = segment;
+            this.from = from;
+            this.to = to;
+            this.weight = weight;
+            this.step = step;
+        }
+
+        public long from() {
+            return from;
+        }
+
+        public long to() {
+            return to;
+        }
+
+        public double weight() {
+            return weight;
+        }
+
+        public double fraction() {
+            return (double) step / STEPS;
+        }
+
+        /** Returns true if OTHER is on the same road as this. */
+        public boolean sameEdge(EdgeSnap other) {
+            return segment == other.segment;
+        }
+
+        /** Returns a number that is the same for snaps to the same point of the same road. */
+        public long key() {
+            return (long) segment * (STEPS + 1) + step;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("EdgeSnap(%d -> %d at %.3f)", from, to, fraction());
+        }
+    }
+
+    /**
+     * Calls ACTION with the id of every vertex with edges that lies in the
+     * box with the given upper left and lower right corners, in no particular
+     * order. Takes O(sqrt(n) + k) time for k vertices in the box.
+     */
+    public void nodesInBox(double ullon, double ullat, double lrlon, double lrlat,
+                           LongConsumer action) {
+        kd.forEachInBox(ullon, lrlat, lrlon, ullat, i -> action.accept(snapIds[i]));
+    }
+
+    /** Receives the edges found by edgesInBox, as the indices of their ends in indexed(). */
+    public interface EdgeAction {
+        void accept(int from, int to);
+    }
+
+    /**
+     * Calls ACTION with both ends of every edge whose bounding box meets the
+     * box with the given upper left and lower right corners, such as the roads
+     * to draw in a raster. The ends are vertex indices, so their coordinates
+     * come straight from indexed().lon and lat. Edges are directed, so a
+     * two-way road is reported once in each direction.
+     */
+    public void edgesInBox(double ullon, double ullat, double lrlon, double lrlat,
+                           EdgeAction action) {
+        IndexedStreetGraph g = indexed();
+        /* An edge can only meet the box if it starts within an edge's reach of it. */
+        kd.forEachInBox(ullon - maxEdgeLon, lrlat - maxEdgeLat, lrlon + maxEdgeLon,
+                ullat + maxEdgeLat, i -> {
+                    int v = snapVertices[i];
+                    for (int e = g.firstEdge(v); e < g.firstEdge(v + 1); e++) {
+                        int w = g.target(e);
+                        if (Math.max(g.lon(v), g.lon(w)) >= ullon
+                                && Math.min(g.lon(v), g.lon(w)) <= lrlon
+                                && Math.max(g.lat(v), g.lat(w)) >= lrlat
+                                && Math.min(g.lat(v), g.lat(w)) <= ullat) {
+                            action.accept(v, w);
+                        }
+                    }
+                });
+    }
 
     /**
      * For Project Part III (gold points)
@@ -104,6 +603,10 @@ public class AugmentedStreetMapGraph extends StreetMapGraph {
     }
 
 
+    public static void main(String[] args) throws IOException {
+        new AugmentedStreetMapGraph(args[0]).writeSnapshot(args[1], args[0]);
+    }
+
     /**
      * Useful for Part III. Do not modify.
      * Helper to process strings into their "cleaned" form, ignoring punctuation and capitalization.
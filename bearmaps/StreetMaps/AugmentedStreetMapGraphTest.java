@@ -0,0 +1,116 @@
+package bearmaps.proj2d;
+
+import bearmaps.proj2c.streetmap.IndexedStreetGraph;
+import bearmaps.proj2c.streetmap.StreetMapGraph;
+import bearmaps.proj2d.utils.Constants;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Random;
+
+public class AugmentedStreetMapGraphTest {
+    private static final String BERKELEY = "bearmaps/AStarSolver/input/berkeley-street-data.simple";
+
+    /*
+    Writes the Berkeley graph as OSM XML to a temporary file: every node, a
+    named place off the roads, and a residential way for every road.
+     */
+    static File berkeleyXML() throws IOException {
+        IndexedStreetGraph graph = StreetMapGraph.readFromSimpleFormat(BERKELEY).indexed();
+        File file = File.createTempFile("berkeley", ".osm.xml");
+        file.deleteOnExit();
+        try (Writer out = new BufferedWriter(new FileWriter(file))) {
+            out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<osm version=\"0.6\">\n");
+            for (int v = 0; v < graph.size(); v++) {
+                out.write(" <node id=\"" + graph.id(v) + "\" lat=\"" + graph.lat(v)
+                        + "\" lon=\"" + graph.lon(v) + "\"/>\n");
+            }
+            out.write(" <node id=\"1\" lat=\"37.8716\" lon=\"-122.2727\">\n"
+                    + "  <tag k=\"name\" v=\"Caf&#233; &lt;Strada&gt;\"/>\n </node>\n");
+            for (int v = 0; v < graph.size(); v++) {
+                for (int e = graph.firstEdge(v); e < graph.firstEdge(v + 1); e++) {
+                    if (v < graph.target(e)) {
+                        out.write(" <way id=\"" + e + "\">\n  <nd ref=\"" + graph.id(v)
+                                + "\"/>\n  <nd ref=\"" + graph.id(graph.target(e))
+                                + "\"/>\n  <tag k=\"highway\" v=\"residential\"/>\n </way>\n");
+                    }
+                }
+            }
+            out.write("</osm>\n");
+        }
+        return file;
+    }
+
+    @Test
+    public void testReadFromXML() throws IOException {
+        IndexedStreetGraph expected = StreetMapGraph.readFromSimpleFormat(BERKELEY).indexed();
+        AugmentedStreetMapGraph g = new AugmentedStreetMapGraph(berkeleyXML().getPath());
+        IndexedStreetGraph graph = g.indexed();
+        /* The named place has no roads, so it is not a vertex. */
+        assertEquals(expected.size(), graph.size());
+        assertEquals(-1, graph.indexOf(1));
+        for (int v = 0; v < expected.size(); v++) {
+            int w = graph.indexOf(expected.id(v));
+            assertEquals(expected.lat(v), graph.lat(w), 0.0);
+            assertEquals(expected.lon(v), graph.lon(w), 0.0);
+            assertEquals(expected.firstEdge(v + 1) - expected.firstEdge(v),
+                    graph.firstEdge(w + 1) - graph.firstEdge(w));
+            /* Exactly at a vertex, closest finds it or another at the same place. */
+            int closest = graph.indexOf(g.closest(expected.lon(v), expected.lat(v)));
+            assertEquals(expected.lon(v), graph.lon(closest), 0.0);
+            assertEquals(expected.lat(v), graph.lat(closest), 0.0);
+        }
+    }
+
+    @Test
+    public void testSnapshotOfChangedSourceIsRejected() throws IOException {
+        File source = berkeleyXML();
+        AugmentedStreetMapGraph g = new AugmentedStreetMapGraph(source.getPath());
+        File snapshot = File.createTempFile("berkeley", ".snap");
+        snapshot.deleteOnExit();
+        g.writeSnapshot(snapshot.getPath(), source.getPath());
+
+        AugmentedStreetMapGraph read =
+                AugmentedStreetMapGraph.readSnapshot(snapshot.getPath(), source.getPath());
+        assertEquals(g.indexed().size(), read.indexed().size());
+        Random random = new Random(21);
+        for (int i = 0; i < 100; i++) {
+            double lon = Constants.ROOT_ULLON
+                    + random.nextDouble() * (Constants.ROOT_LRLON - Constants.ROOT_ULLON);
+            double lat = Constants.ROOT_LRLAT
+                    + random.nextDouble() * (Constants.ROOT_ULLAT - Constants.ROOT_LRLAT);
+            assertEquals(g.closest(lon, lat), read.closest(lon, lat));
+        }
+
+        /* A different length, or the same length written at another time. */
+        try (FileWriter out = new FileWriter(source, true)) {
+            out.write("\n");
+        }
+        assertStale(snapshot, source);
+        /* So load parses the XML again instead. */
+        assertEquals(g.indexed().size(),
+                AugmentedStreetMapGraph.load(source.getPath(), snapshot.getPath())
+                        .indexed().size());
+        g.writeSnapshot(snapshot.getPath(), source.getPath());
+        assertTrue(source.setLastModified(source.lastModified() - 10000));
+        assertStale(snapshot, source);
+
+        /* Without the source there is nothing to compare with. */
+        assertTrue(source.delete());
+        assertNotNull(AugmentedStreetMapGraph.readSnapshot(snapshot.getPath(), source.getPath()));
+    }
+
+    /* Checks that the snapshot at SNAPSHOT is rejected for not matching SOURCE. */
+    private static void assertStale(File snapshot, File source) {
+        try {
+            AugmentedStreetMapGraph.readSnapshot(snapshot.getPath(), source.getPath());
+            fail("read a snapshot of a different source");
+        } catch (IOException e) {
+            /* Expected. */
+        }
+    }
+}
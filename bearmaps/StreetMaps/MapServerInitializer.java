@@ -21,7 +21,8 @@ public class MapServerInitializer {
      **/
     public static void initializeServer(Map<String, APIRouteHandler> apiHandlers){
 
-        Constants.SEMANTIC_STREET_GRAPH = new AugmentedStreetMapGraph(Constants.OSM_DB_PATH);
+        Constants.SEMANTIC_STREET_GRAPH = AugmentedStreetMapGraph.load(Constants.OSM_DB_PATH,
+                Constants.SNAPSHOT_PATH);
         staticFileLocation("/page");
         /* Allow for all origin requests (since this is not an authenticated server, we do not
          * care about CSRF).  */
@@ -0,0 +1,132 @@
+package bearmaps.proj2d;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded cache of routes, keyed by where a query snapped to: node ids, or
+ * the keys of AugmentedStreetMapGraph.EdgeSnaps when routes start on roads.
+ * Entries are evicted least recently used first once the routes held add up
+ * to more than the cache's weight limit, where a route weighs one plus its
+ * number of nodes.
+ *
+ * A cache is only valid for the graph and route engine it was filled from;
+ * call invalidate whenever either changes. All methods are thread safe.
+ */
+public class RouteCache {
+    private final long maxWeight;
+    private final LinkedHashMap<Key, List<Long>> routes;
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /** Creates an empty cache holding routes of total weight at most MAXWEIGHT. */
+    public RouteCache(long maxWeight) {
+        this.maxWeight = maxWeight;
+        /* Access order, so iteration starts at the least recently used route. */
+        routes = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /** Returns the cached route from SRC to DEST, or null if there is none. */
+    public synchronized List<Long> get(long src, long dest) {
+        List<Long> route = routes.get(new Key(src, dest));
+        if (route == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return route;
+    }
+
+    /**
+     * Caches ROUTE as the route from SRC to DEST, evicting the least recently
+     * used routes as needed, and returns the unmodifiable copy that was cached.
+     * Routes heavier than the whole cache are returned without being cached.
+     */
+    public synchronized List<Long> put(long src, long dest, List<Long> route) {
+        List<Long> copy = Collections.unmodifiableList(new ArrayList<>(route));
+        long w = weigh(copy);
+        if (w > maxWeight) {
+            return copy;
+        }
+        List<Long> old = routes.put(new Key(src, dest), copy);
+        if (old != null) {
+            weight -= weigh(old);
+        }
+        weight += w;
+        Iterator<Map.Entry<Key, List<Long>>> eldest = routes.entrySet().iterator();
+        while (weight > maxWeight) {
+            weight -= weigh(eldest.next().getValue());
+            eldest.remove();
+            evictions++;
+        }
+        return copy;
+    }
+
+    private static long weigh(List<Long> route) {
+        return 1 + route.size();
+    }
+
+    /** Removes every route, e.g. because the graph has changed. Keeps the counters. */
+    public synchronized void invalidate() {
+        routes.clear();
+        weight = 0;
+    }
+
+    /** Returns the number of routes in the cache. */
+    public synchronized int size() {
+        return routes.size();
+    }
+
+    /** Returns the total weight of the routes in the cache. */
+    public synchronized long weight() {
+        return weight;
+    }
+
+    public synchronized long hits() {
+        return hits;
+    }
+
+    public synchronized long misses() {
+        return misses;
+    }
+
+    public synchronized long evictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("RouteCache(%d routes, weight %d/%d, %d hits, %d misses, "
+                + "%d evictions)", routes.size(), weight, maxWeight, hits, misses, evictions);
+    }
+
+    /** A (source, destination) pair of snap keys. */
+    private static class Key {
+        private final long src;
+        private final long dest;
+
+        Key(long src, long dest) {
+            this.src = src;
+            this.dest = dest;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Key) {
+                return src == ((Key) o).src && dest == ((Key) o).dest;
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(src) * 31 + Long.hashCode(dest);
+        }
+    }
+}
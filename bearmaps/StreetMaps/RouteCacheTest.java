@@ -0,0 +1,102 @@
+package bearmaps.proj2d;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RouteCacheTest {
+
+    @Test
+    public void testHitsAndMisses() {
+        RouteCache cache = new RouteCache(100);
+        assertNull(cache.get(1, 2));
+        List<Long> route = new ArrayList<>(List.of(1L, 5L, 2L));
+        List<Long> cached = cache.put(1, 2, route);
+        assertEquals(route, cached);
+        /* The cache keeps its own copy, which callers can't change. */
+        route.add(9L);
+        assertEquals(List.of(1L, 5L, 2L), cache.get(1, 2));
+        try {
+            cached.add(3L);
+            fail("cached routes should be unmodifiable");
+        } catch (UnsupportedOperationException e) {
+            /* Expected. */
+        }
+        /* Keys are ordered pairs. */
+        assertNull(cache.get(2, 1));
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        assertEquals(1, cache.size());
+        assertEquals(4, cache.weight());
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsedByWeight() {
+        /* Routes of 2 nodes weigh 3, so 3 of them fit in 10. */
+        RouteCache cache = new RouteCache(10);
+        cache.put(1, 1, List.of(1L, 1L));
+        cache.put(2, 2, List.of(2L, 2L));
+        cache.put(3, 3, List.of(3L, 3L));
+        assertEquals(9, cache.weight());
+        assertEquals(0, cache.evictions());
+
+        /* Using 1 makes 2 the least recently used. */
+        assertNotNull(cache.get(1, 1));
+        cache.put(4, 4, List.of(4L, 4L));
+        assertNull(cache.get(2, 2));
+        assertNotNull(cache.get(1, 1));
+        assertNotNull(cache.get(3, 3));
+        assertNotNull(cache.get(4, 4));
+        assertEquals(1, cache.evictions());
+        assertEquals(9, cache.weight());
+
+        /* A heavy route pushes out as many of the oldest as it needs to: 1, then 3. */
+        cache.put(5, 5, List.of(5L, 5L, 5L, 5L, 5L, 5L));
+        assertEquals(2, cache.size());
+        assertEquals(10, cache.weight());
+        assertEquals(3, cache.evictions());
+        assertNotNull(cache.get(5, 5));
+        assertNotNull(cache.get(4, 4));
+        assertNull(cache.get(1, 1));
+        assertNull(cache.get(3, 3));
+    }
+
+    @Test
+    public void testReplaceAndOversizedRoutes() {
+        RouteCache cache = new RouteCache(5);
+        cache.put(1, 2, List.of(1L, 2L));
+        cache.put(1, 2, List.of(1L, 3L, 2L));
+        assertEquals(1, cache.size());
+        assertEquals(4, cache.weight());
+        assertEquals(List.of(1L, 3L, 2L), cache.get(1, 2));
+
+        /* Heavier than the whole cache: returned, but not cached and nothing evicted. */
+        List<Long> huge = List.of(1L, 2L, 3L, 4L, 5L);
+        assertEquals(huge, cache.put(7, 8, huge));
+        assertNull(cache.get(7, 8));
+        assertEquals(1, cache.size());
+        assertEquals(0, cache.evictions());
+
+        /* The empty route of an unreachable pair is cached too. */
+        cache.put(3, 4, List.of());
+        assertEquals(List.of(), cache.get(3, 4));
+        assertEquals(5, cache.weight());
+    }
+
+    @Test
+    public void testInvalidateKeepsCounters() {
+        RouteCache cache = new RouteCache(100);
+        cache.put(1, 2, List.of(1L, 2L));
+        cache.get(1, 2);
+        cache.get(2, 3);
+        cache.invalidate();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.weight());
+        assertNull(cache.get(1, 2));
+        assertEquals(1, cache.hits());
+        assertEquals(2, cache.misses());
+        cache.put(1, 2, List.of(1L, 2L));
+        assertEquals(3, cache.weight());
+    }
+}
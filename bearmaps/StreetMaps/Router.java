@@ -1,10 +1,17 @@
 package bearmaps.proj2d;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import bearmaps.proj2c.*;
+import bearmaps.proj2c.streetmap.Isochrone;
+import bearmaps.proj2c.streetmap.RouteEngine;
+import bearmaps.proj2d.utils.Constants;
 
 
 /**
@@ -26,10 +33,238 @@ public class Router {
      */
     public static List<Long> shortestPath(AugmentedStreetMapGraph g, double stlon, double stlat,
                                           double destlon, double destlat) {
+        return shortestPath(g, stlon, stlat, destlon, destlat,
+                new CancellationToken(Constants.ROUTE_TIMEOUT));
+    }
+
+    /**
+     * Same as shortestPath above, but gives up as soon as the token is cancelled
+     * or expires, in which case the route is empty. Both locations snap to the
+     * nearest point on the nearest road if g has its roads indexed, and to the
+     * nearest node otherwise. Routes between the snapped locations come from
+     * g.routeCache() when it has them, and are added to it otherwise.
+     * @param g The graph to use.
+     * @param stlon The longitude of the start location.
+     * @param stlat The latitude of the start location.
+     * @param destlon The longitude of the destination location.
+     * @param destlat The latitude of the destination location.
+     * @param token Decides when to stop searching.
+     * @return A list of node id's in the order visited on the shortest path.
+     */
+    public static List<Long> shortestPath(AugmentedStreetMapGraph g, double stlon, double stlat,
+                                          double destlon, double destlat,
+                                          CancellationToken token) {
+        return shortestPath(g, stlon, stlat, destlon, destlat, token, g.routeCache());
+    }
+
+    /* Same as shortestPath above, but with CACHE instead of g.routeCache(), or none if null. */
+    private static List<Long> shortestPath(AugmentedStreetMapGraph g, double stlon, double stlat,
+                                           double destlon, double destlat,
+                                           CancellationToken token, RouteCache cache) {
+        AugmentedStreetMapGraph.EdgeSnap start = g.snapToEdge(stlon, stlat);
+        AugmentedStreetMapGraph.EdgeSnap end = g.snapToEdge(destlon, destlat);
+        if (start != null && end != null) {
+            return shortestPath(g, start, end, token, cache);
+        }
         long src = g.closest(stlon, stlat);
         long dest = g.closest(destlon, destlat);
-        return new WeirdSolver<>(g, src, dest, 20).solution();
-        //return null;
+        List<Long> route = cache == null ? null : cache.get(src, dest);
+        if (route != null) {
+            return route;
+        }
+        ShortestPathsSolver<Long> solver = g.routeEngine().shortestPath(src, dest, token);
+        if (cache == null || solver.outcome() == SolverOutcome.TIMEOUT) {
+            /* Another try with more time might succeed, so don't remember this one. */
+            return solver.solution();
+        }
+        return cache.put(src, dest, solver.solution());
+    }
+
+    /* Routes between two points on roads with g.routeEngine(), see below. */
+    private static List<Long> shortestPath(AugmentedStreetMapGraph g,
+                                           AugmentedStreetMapGraph.EdgeSnap start,
+                                           AugmentedStreetMapGraph.EdgeSnap end,
+                                           CancellationToken token, RouteCache cache) {
+        return shortestPath(g.routeEngine(), start, end, token, cache);
+    }
+
+    /*
+    Routes between two points on roads. Leaving START means going to either
+    end of its road first, and reaching END means coming from either end of
+    its road, so one search starts from both ends of the first road at what
+    getting there costs, and stops at whichever end of the last road is
+    cheapest once what's left of that road is added. The route lists the
+    nodes passed on the way, so it doesn't include the far ends of the two
+    roads. A trip along a single road passes neither of its ends, so it is
+    given as that road's two ends in the direction of travel, unless going
+    around is shorter. Routes cut short by TOKEN are not added to CACHE.
+     */
+    static List<Long> shortestPath(RouteEngine engine, AugmentedStreetMapGraph.EdgeSnap start,
+                                   AugmentedStreetMapGraph.EdgeSnap end,
+                                   CancellationToken token, RouteCache cache) {
+        List<Long> route = cache == null ? null : cache.get(start.key(), end.key());
+        if (route != null) {
+            return route;
+        }
+        long[] firsts = {start.to(), start.from()};
+        double[] firstCosts = {(1 - start.fraction()) * start.weight(),
+            start.fraction() * start.weight()};
+        long[] lasts = {end.from(), end.to()};
+        double[] lastCosts = {end.fraction() * end.weight(), (1 - end.fraction()) * end.weight()};
+
+        double best = Double.POSITIVE_INFINITY;
+        route = List.of();
+        if (start.sameEdge(end)) {
+            best = Math.abs(end.fraction() - start.fraction()) * start.weight();
+            route = start.fraction() <= end.fraction()
+                    ? List.of(start.from(), start.to()) : List.of(start.to(), start.from());
+        }
+        boolean complete = true;
+        if (Math.min(firstCosts[0], firstCosts[1]) + Math.min(lastCosts[0], lastCosts[1]) < best) {
+            ShortestPathsSolver<Long> solver =
+                    engine.shortestPath(firsts, firstCosts, lasts, lastCosts, token);
+            if (solver.outcome() == SolverOutcome.TIMEOUT) {
+                complete = false;
+            } else if (solver.outcome() == SolverOutcome.SOLVED
+                    && solver.solutionWeight() < best) {
+                route = solver.solution();
+            }
+        }
+        if (cache == null || !complete) {
+            /* Another try with more time might find a shorter one, so don't remember this one. */
+            return route;
+        }
+        return cache.put(start.key(), end.key(), route);
+    }
+
+    /**
+     * Routes every origin-destination pair in PAIRS on the common ForkJoin pool.
+     * @param g The graph to use.
+     * @param pairs The queries to answer.
+     * @return The route for each pair, in the same order as PAIRS; see shortestPath.
+     */
+    public static List<List<Long>> shortestPaths(AugmentedStreetMapGraph g, List<OdPair> pairs) {
+        return shortestPaths(g, pairs, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Routes every origin-destination pair in PAIRS, spread across the threads
+     * of POOL. All threads share G, which is not modified by routing; each one
+     * searches in its own workspace from g.routeEngine(). Batches neither read
+     * nor fill g.routeCache(), so they don't evict the routes interactive
+     * queries keep asking for, and workers never wait on its lock.
+     * @param g The graph to use.
+     * @param pairs The queries to answer.
+     * @param pool The pool to run the queries on.
+     * @return The route for each pair, in the same order as PAIRS; see shortestPath.
+     */
+    public static List<List<Long>> shortestPaths(AugmentedStreetMapGraph g, List<OdPair> pairs,
+                                                 ForkJoinPool pool) {
+        OdPair[] batch = pairs.toArray(new OdPair[0]);
+        /* Filled in place by the tasks, each writing only its own range. */
+        List<List<Long>> routes = new ArrayList<>(Collections.nCopies(batch.length, null));
+        pool.invoke(new BatchTask(g, batch, routes, 0, batch.length));
+        return routes;
+    }
+
+    /**
+     * Routes pairs LO (inclusive) to HI (exclusive) of a batch, splitting the
+     * range in half until it is small enough to run on one thread.
+     */
+    private static class BatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        /** Ranges this small are routed sequentially. */
+        private static final int THRESHOLD = 32;
+
+        private final AugmentedStreetMapGraph g;
+        private final OdPair[] batch;
+        private final List<List<Long>> routes;
+        private final int lo;
+        private final int hi;
+
+        BatchTask(AugmentedStreetMapGraph g, OdPair[] batch, List<List<Long>> routes, int lo,
+                  int hi) {
+            this.g = g;
+            this.batch = batch;
+            this.routes = routes;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= THRESHOLD) {
+                for (int i = lo; i < hi; i++) {
+                    OdPair pair = batch[i];
+                    routes.set(i, shortestPath(g, pair.stlon, pair.stlat, pair.destlon,
+                            pair.destlat, new CancellationToken(Constants.ROUTE_TIMEOUT), null));
+                }
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new BatchTask(g, batch, routes, lo, mid),
+                    new BatchTask(g, batch, routes, mid, hi));
+        }
+    }
+
+    /**
+     * An origin-destination pair for shortestPaths: a start location and a
+     * destination location.
+     */
+    public static class OdPair {
+        /** The longitude and latitude of the start and of the destination. */
+        final double stlon, stlat, destlon, destlat;
+
+        public OdPair(double stlon, double stlat, double destlon, double destlat) {
+            this.stlon = stlon;
+            this.stlat = stlat;
+            this.destlon = destlon;
+            this.destlat = destlat;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("(%f, %f) -> (%f, %f)", stlon, stlat, destlon, destlat);
+        }
+    }
+
+    /**
+     * Computes the network distance from each of the SOURCES to each of the
+     * TARGETS, both given as node ids of the graph. Runs one search per source
+     * that stops once it has reached every target, rather than one search per
+     * pair.
+     * @param g The graph to use.
+     * @param sources The node ids of the origins.
+     * @param targets The node ids of the destinations.
+     * @return A sources.size() by targets.size() matrix whose entry [i][j] is the
+     * distance from sources.get(i) to targets.get(j), or infinity if there is no
+     * path between them.
+     */
+    public static double[][] distanceMatrix(AugmentedStreetMapGraph g, List<Long> sources,
+                                            List<Long> targets) {
+        long[] sourceIds = new long[sources.size()];
+        for (int i = 0; i < sourceIds.length; i++) {
+            sourceIds[i] = sources.get(i);
+        }
+        long[] targetIds = new long[targets.size()];
+        for (int j = 0; j < targetIds.length; j++) {
+            targetIds[j] = targets.get(j);
+        }
+        return g.routeEngine().distanceMatrix(sourceIds, targetIds);
+    }
+
+    /**
+     * Finds every node within the given network distance of the node closest
+     * to a location.
+     * @param g The graph to use.
+     * @param lon The longitude of the location.
+     * @param lat The latitude of the location.
+     * @param distance The largest distance to travel, in miles.
+     * @return The reachable nodes and their convex hull.
+     */
+    public static Isochrone isochrone(AugmentedStreetMapGraph g, double lon, double lat,
+                                      double distance) {
+        return g.routeEngine().isochrone(g.closest(lon, lat), distance);
     }
 
     /**
@@ -0,0 +1,292 @@
+package bearmaps.proj2d;
+
+import bearmaps.proj2c.CancellationToken;
+import bearmaps.proj2c.ShortestPathsSolver;
+import bearmaps.proj2c.SolverOutcome;
+import bearmaps.proj2c.WeightedEdge;
+import bearmaps.proj2c.streetmap.HierarchyBuilder;
+import bearmaps.proj2c.streetmap.IndexedStreetGraph;
+import bearmaps.proj2c.streetmap.RouteEngine;
+import bearmaps.proj2c.streetmap.StreetMapGraph;
+import bearmaps.proj2d.AugmentedStreetMapGraph.EdgeSnap;
+import bearmaps.proj2d.utils.Constants;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+
+public class RouterTest {
+    private static final String BERKELEY = "bearmaps/AStarSolver/input/berkeley-street-data.simple";
+    private static final double DELTA = 1e-9;
+
+    /* Returns the point STEP / STEPS of the way along edge slot E of GRAPH, which leaves V. */
+    private static EdgeSnap snap(IndexedStreetGraph graph, int v, int e, int step) {
+        int w = graph.target(e);
+        return new EdgeSnap(e, graph.id(v), graph.id(w), graph.estimatedDistance(v, w), step);
+    }
+
+    /* Returns a random point on a random road of GRAPH. */
+    private static EdgeSnap randomSnap(IndexedStreetGraph graph, Random random) {
+        while (true) {
+            int v = random.nextInt(graph.size());
+            int edges = graph.firstEdge(v + 1) - graph.firstEdge(v);
+            if (edges > 0) {
+                int e = graph.firstEdge(v) + random.nextInt(edges);
+                return snap(graph, v, e, random.nextInt(EdgeSnap.STEPS + 1));
+            }
+        }
+    }
+
+    /* Returns the cheapest trip from START to END, trying every pair of road ends in turn. */
+    private static double bruteForce(RouteEngine engine, EdgeSnap start, EdgeSnap end) {
+        long[] firsts = {start.from(), start.to()};
+        double[] firstCosts = {start.fraction() * start.weight(),
+            (1 - start.fraction()) * start.weight()};
+        long[] lasts = {end.from(), end.to()};
+        double[] lastCosts = {end.fraction() * end.weight(), (1 - end.fraction()) * end.weight()};
+        double best = Double.POSITIVE_INFINITY;
+        if (start.sameEdge(end)) {
+            best = Math.abs(end.fraction() - start.fraction()) * start.weight();
+        }
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < 2; j++) {
+                ShortestPathsSolver<Long> solver = engine.shortestPath(firsts[i], lasts[j], 60);
+                if (solver.outcome() == SolverOutcome.SOLVED) {
+                    best = Math.min(best, firstCosts[i] + solver.solutionWeight() + lastCosts[j]);
+                }
+            }
+        }
+        return best;
+    }
+
+    /* Returns what ROUTE costs from START to END: getting on, the roads in between, and off. */
+    private static double cost(StreetMapGraph g, EdgeSnap start, EdgeSnap end, List<Long> route) {
+        if (route.isEmpty()) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double total = 0;
+        for (int i = 0; i + 1 < route.size(); i++) {
+            double edge = Double.POSITIVE_INFINITY;
+            for (WeightedEdge<Long> e : g.neighbors(route.get(i))) {
+                if (e.to().equals(route.get(i + 1))) {
+                    edge = Math.min(edge, e.weight());
+                }
+            }
+            assertTrue("no edge " + route.get(i) + " - " + route.get(i + 1),
+                    edge < Double.POSITIVE_INFINITY);
+            total += edge;
+        }
+        double on = Double.POSITIVE_INFINITY;
+        if (route.get(0) == start.from()) {
+            on = start.fraction() * start.weight();
+        }
+        if (route.get(0) == start.to()) {
+            on = Math.min(on, (1 - start.fraction()) * start.weight());
+        }
+        long last = route.get(route.size() - 1);
+        double off = Double.POSITIVE_INFINITY;
+        if (last == end.from()) {
+            off = end.fraction() * end.weight();
+        }
+        if (last == end.to()) {
+            off = Math.min(off, (1 - end.fraction()) * end.weight());
+        }
+        return on + total + off;
+    }
+
+    /* Checks that ENGINE's single search agrees with trying each pair of road ends. */
+    private static void assertMatchesBruteForce(StreetMapGraph g, RouteEngine engine, long seed) {
+        Random random = new Random(seed);
+        int leaveBackwards = 0;
+        int arriveBackwards = 0;
+        int unreachable = 0;
+        for (int i = 0; i < 200; i++) {
+            EdgeSnap start = randomSnap(g.indexed(), random);
+            EdgeSnap end = randomSnap(g.indexed(), random);
+            List<Long> route = Router.shortestPath(engine, start, end, new CancellationToken(60),
+                    null);
+            double expected = bruteForce(engine, start, end);
+            if (expected == Double.POSITIVE_INFINITY) {
+                assertTrue(route.isEmpty());
+                unreachable++;
+                continue;
+            }
+            assertEquals(start + " to " + end, expected, cost(g, start, end, route), DELTA);
+            leaveBackwards += route.get(0) == start.from() ? 1 : 0;
+            arriveBackwards += route.get(route.size() - 1) == end.to() ? 1 : 0;
+        }
+        /* Routes leave against the start road's direction and arrive against the end road's. */
+        assertTrue(leaveBackwards > 0);
+        assertTrue(arriveBackwards > 0);
+        assertTrue(unreachable > 0);
+    }
+
+    @Test
+    public void testMatchesBruteForce() {
+        StreetMapGraph g = StreetMapGraph.readFromSimpleFormat(BERKELEY);
+        assertMatchesBruteForce(g, new RouteEngine(g), 18);
+    }
+
+    @Test
+    public void testHierarchyMatchesBruteForce() {
+        StreetMapGraph g = StreetMapGraph.readFromSimpleFormat(BERKELEY);
+        RouteEngine engine = new RouteEngine(g, new HierarchyBuilder(g.indexed()).build(), null);
+        assertMatchesBruteForce(g, engine, 19);
+    }
+
+    @Test
+    public void testSameRoad() {
+        StreetMapGraph g = StreetMapGraph.readFromSimpleFormat(BERKELEY);
+        IndexedStreetGraph graph = g.indexed();
+        RouteEngine engine = new RouteEngine(g);
+        int v = 0;
+        while (graph.firstEdge(v) == graph.firstEdge(v + 1)) {
+            v++;
+        }
+        int e = graph.firstEdge(v);
+        long from = graph.id(v);
+        long to = graph.id(graph.target(e));
+        CancellationToken token = new CancellationToken(60);
+
+        /* Along the road, then back the other way: just its two ends, in travel order. */
+        assertEquals(List.of(from, to),
+                Router.shortestPath(engine, snap(graph, v, e, 10), snap(graph, v, e, 50), token,
+                        null));
+        assertEquals(List.of(to, from),
+                Router.shortestPath(engine, snap(graph, v, e, 50), snap(graph, v, e, 10), token,
+                        null));
+        assertEquals(List.of(from, to),
+                Router.shortestPath(engine, snap(graph, v, e, 30), snap(graph, v, e, 30), token,
+                        null));
+    }
+
+    @Test
+    public void testSnapAtNode() {
+        StreetMapGraph g = StreetMapGraph.readFromSimpleFormat(BERKELEY);
+        IndexedStreetGraph graph = g.indexed();
+        RouteEngine engine = new RouteEngine(g);
+        Random random = new Random(20);
+        int checked = 0;
+        for (int i = 0; i < 100; i++) {
+            EdgeSnap road = randomSnap(graph, random);
+            EdgeSnap other = randomSnap(graph, random);
+            /* Step 0 is the road's first node and step STEPS its last. */
+            int v = graph.indexOf(road.from());
+            int e = graph.firstEdge(v);
+            while (graph.id(graph.target(e)) != road.to()) {
+                e++;
+            }
+            EdgeSnap start = snap(graph, v, e, 0);
+            int w = graph.indexOf(other.from());
+            int f = graph.firstEdge(w);
+            while (graph.id(graph.target(f)) != other.to()) {
+                f++;
+            }
+            EdgeSnap end = snap(graph, w, f, EdgeSnap.STEPS);
+
+            ShortestPathsSolver<Long> solver = engine.shortestPath(road.from(), other.to(), 60);
+            List<Long> route = Router.shortestPath(engine, start, end, new CancellationToken(60),
+                    null);
+            if (solver.outcome() != SolverOutcome.SOLVED) {
+                assertTrue(route.isEmpty());
+                continue;
+            }
+            /* Nothing is paid to get on or off, so this is the route between the nodes. */
+            assertEquals(solver.solutionWeight(), cost(g, start, end, route), DELTA);
+            checked++;
+        }
+        assertTrue(checked > 0);
+    }
+
+    @Test
+    public void testCancelledRouteIsNotCached() {
+        StreetMapGraph g = StreetMapGraph.readFromSimpleFormat(BERKELEY);
+        RouteEngine engine = new RouteEngine(g);
+        Random random = new Random(21);
+        EdgeSnap start;
+        EdgeSnap end;
+        do {
+            start = randomSnap(g.indexed(), random);
+            end = randomSnap(g.indexed(), random);
+        } while (start.sameEdge(end) || bruteForce(engine, start, end) == Double.POSITIVE_INFINITY);
+        RouteCache cache = new RouteCache(1000);
+
+        CancellationToken cancelled = new CancellationToken(60);
+        cancelled.cancel();
+        assertTrue(Router.shortestPath(engine, start, end, cancelled, cache).isEmpty());
+        assertEquals(0, cache.size());
+
+        List<Long> route = Router.shortestPath(engine, start, end, new CancellationToken(60),
+                cache);
+        assertFalse(route.isEmpty());
+        assertEquals(1, cache.size());
+        assertEquals(route, cache.get(start.key(), end.key()));
+        /* Now even a cancelled search gets the whole route, from the cache. */
+        assertEquals(route, Router.shortestPath(engine, start, end, cancelled, cache));
+    }
+
+    /* Returns the squared distance from (X, Y) to the segment (X1, Y1) - (X2, Y2). */
+    private static double distance(double x, double y, double x1, double y1, double x2,
+                                   double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double length = dx * dx + dy * dy;
+        double t = length == 0 ? 0 : ((x - x1) * dx + (y - y1) * dy) / length;
+        t = Math.min(1, Math.max(0, t));
+        double ex = x1 + t * dx - x;
+        double ey = y1 + t * dy - y;
+        return ex * ex + ey * ey;
+    }
+
+    @Test
+    public void testSnapToEdge() throws IOException {
+        AugmentedStreetMapGraph g =
+                new AugmentedStreetMapGraph(AugmentedStreetMapGraphTest.berkeleyXML().getPath());
+        IndexedStreetGraph graph = g.indexed();
+        double scale = Math.cos(Math.toRadians((Constants.ROOT_ULLAT + Constants.ROOT_LRLAT) / 2));
+        Random random = new Random(22);
+        for (int i = 0; i < 200; i++) {
+            double lon = Constants.ROOT_ULLON
+                    + random.nextDouble() * (Constants.ROOT_LRLON - Constants.ROOT_ULLON);
+            double lat = Constants.ROOT_LRLAT
+                    + random.nextDouble() * (Constants.ROOT_ULLAT - Constants.ROOT_LRLAT);
+            double x = lon * scale;
+            double nearest = Double.POSITIVE_INFINITY;
+            for (int v = 0; v < graph.size(); v++) {
+                for (int e = graph.firstEdge(v); e < graph.firstEdge(v + 1); e++) {
+                    int w = graph.target(e);
+                    nearest = Math.min(nearest, distance(x, lat, graph.lon(v) * scale,
+                            graph.lat(v), graph.lon(w) * scale, graph.lat(w)));
+                }
+            }
+            EdgeSnap snap = g.snapToEdge(lon, lat);
+            int v = graph.indexOf(snap.from());
+            int w = graph.indexOf(snap.to());
+            assertEquals(nearest, distance(x, lat, graph.lon(v) * scale, graph.lat(v),
+                    graph.lon(w) * scale, graph.lat(w)), 1e-18);
+            assertEquals(graph.estimatedDistance(v, w), snap.weight(), 0.0);
+            assertTrue(snap.fraction() >= 0 && snap.fraction() <= 1);
+        }
+    }
+
+    @Test
+    public void testSnapToEdgeAtNode() throws IOException {
+        AugmentedStreetMapGraph g =
+                new AugmentedStreetMapGraph(AugmentedStreetMapGraphTest.berkeleyXML().getPath());
+        IndexedStreetGraph graph = g.indexed();
+        Random random = new Random(23);
+        for (int i = 0; i < 200; i++) {
+            int v = random.nextInt(graph.size());
+            if (graph.firstEdge(v) == graph.firstEdge(v + 1)) {
+                continue;
+            }
+            EdgeSnap snap = g.snapToEdge(graph.lon(v), graph.lat(v));
+            /* Exactly at a node is the very start or end of a road there. */
+            int at = graph.indexOf(snap.fraction() == 0 ? snap.from() : snap.to());
+            assertTrue(snap.fraction() == 0 || snap.fraction() == 1);
+            assertEquals(graph.lon(v), graph.lon(at), 0.0);
+            assertEquals(graph.lat(v), graph.lat(at), 0.0);
+        }
+    }
+}
@@ -20,7 +20,7 @@ import static spark.Spark.halt;
 public abstract class APIRouteHandler<Req, Res> implements Route {
 
     /** HTTP failed response. */
-    private static final int HALT_RESPONSE = 403;
+    protected static final int HALT_RESPONSE = 403;
 
     private Gson gson;
 
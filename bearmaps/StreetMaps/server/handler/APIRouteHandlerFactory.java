@@ -22,6 +22,8 @@ public class APIRouteHandlerFactory {
         handlerMap.put("route", new RoutingAPIHandler());
         handlerMap.put("clear_route", new ClearRouteAPIHandler());
         handlerMap.put("search", new SearchAPIHandler());
+        handlerMap.put("table", new TableAPIHandler());
+        handlerMap.put("isochrone", new IsochroneAPIHandler());
         handlerMap.put("", new RedirectAPIHandler());
     }
 
@@ -4,7 +4,9 @@ import bearmaps.proj2d.server.handler.APIRouteHandler;
 import spark.Request;
 import spark.Response;
 
-import static bearmaps.proj2d.utils.Constants.ROUTE_LIST;
+import java.util.List;
+
+import static bearmaps.proj2d.utils.Constants.ROUTE;
 
 
 /**
@@ -21,7 +23,7 @@ public class ClearRouteAPIHandler extends APIRouteHandler {
 
     @Override
     protected Object processRequest(Object requestParams, Response response) {
-        ROUTE_LIST.clear();
+        ROUTE.set(List.of());
         return true;
     }
 }
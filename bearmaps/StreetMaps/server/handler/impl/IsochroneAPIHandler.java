@@ -0,0 +1,63 @@
+package bearmaps.proj2d.server.handler.impl;
+
+import bearmaps.proj2c.streetmap.Isochrone;
+import bearmaps.proj2d.Router;
+import bearmaps.proj2d.server.handler.APIRouteHandler;
+import spark.Request;
+import spark.Response;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static bearmaps.proj2d.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
+
+/**
+ * Handles requests for the area that can be reached from a location without
+ * travelling more than some distance along the streets.
+ */
+public class IsochroneAPIHandler extends APIRouteHandler<Map<String, Double>, Map<String, Object>> {
+
+    /**
+     * Each isochrone request to the server will have the following parameters
+     * as keys in the params map.<br>
+     * lat : location latitude,<br> lon : location longitude,<br>
+     * distance : the largest network distance to travel, in miles.
+     **/
+    private static final String[] REQUIRED_ISOCHRONE_REQUEST_PARAMS = {"lat", "lon", "distance"};
+
+    @Override
+    protected Map<String, Double> parseRequestParams(Request request) {
+        Map<String, Double> params = getRequestParams(request, REQUIRED_ISOCHRONE_REQUEST_PARAMS);
+        if (!(params.get("distance") >= 0.0) || params.get("distance").isInfinite()) {
+            halt(HALT_RESPONSE, "Incorrect parameters - distance must be a non-negative number.");
+        }
+        return params;
+    }
+
+    /**
+     * Finds the nodes reachable from the node closest to the requested location.
+     * @param requestParams Map of the HTTP GET request's query parameters.
+     * @param response Not used by this function.
+     * @return A map of results for the front end as specified: <br>
+     * "nodes" : List of the ids of the reachable nodes, closest first. <br>
+     * "hull" : List of [lon, lat] corners of their convex hull, counter-clockwise. <br>
+     * "isochrone_success" : Boolean, whether the hull encloses an area (at least
+     *                       3 corners).
+     */
+    @Override
+    protected Map<String, Object> processRequest(Map<String, Double> requestParams,
+                                                 Response response) {
+        Isochrone isochrone = Router.isochrone(SEMANTIC_STREET_GRAPH,
+                requestParams.get("lon"), requestParams.get("lat"),
+                requestParams.get("distance"));
+        List<double[]> hull = isochrone.hull();
+
+        Map<String, Object> isochroneParams = new HashMap<>();
+        isochroneParams.put("nodes", isochrone.nodes());
+        isochroneParams.put("hull", hull);
+        isochroneParams.put("isochrone_success", hull.size() >= 3);
+        return isochroneParams;
+    }
+}
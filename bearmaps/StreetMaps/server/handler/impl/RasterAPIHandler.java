@@ -1,6 +1,6 @@
 package bearmaps.proj2d.server.handler.impl;
 
-import bearmaps.proj2d.AugmentedStreetMapGraph;
+import bearmaps.proj2c.streetmap.IndexedStreetGraph;
 import bearmaps.proj2d.server.handler.APIRouteHandler;
 import spark.Request;
 import spark.Response;
@@ -25,13 +25,6 @@ import static bearmaps.proj2d.utils.Constants.*;
  * @author rahul, Josh Hug, _________
  */
 public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<String, Object>> {
-    // corner variables
-    private double ullon;
-    private double lrlon;
-    private double ullat;
-    private double lrlat;
-    private double w;
-    private  double h;
 
     /**
      * Each raster request to the server will have the following parameters
@@ -98,15 +91,14 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
          */
         Map<String, Object> results = new HashMap<>();
         // "ullat", "ullon", "lrlat", "lrlon", "w", "h"
-        ullat = requestParams.get(REQUIRED_RASTER_REQUEST_PARAMS[0]);
-        ullon = requestParams.get(REQUIRED_RASTER_REQUEST_PARAMS[1]);
-        lrlat = requestParams.get(REQUIRED_RASTER_REQUEST_PARAMS[2]);
-        lrlon = requestParams.get(REQUIRED_RASTER_REQUEST_PARAMS[3]);
-        w = requestParams.get(REQUIRED_RASTER_REQUEST_PARAMS[4]);
-        h = requestParams.get(REQUIRED_RASTER_REQUEST_PARAMS[5]);
-        double[] resultOrderParams = {ullon, ullat, lrlon, lrlat};
-
-        if (notCovered()) {
+        // One handler serves every request thread, so the query lives in locals.
+        double ullat = requestParams.get(REQUIRED_RASTER_REQUEST_PARAMS[0]);
+        double ullon = requestParams.get(REQUIRED_RASTER_REQUEST_PARAMS[1]);
+        double lrlat = requestParams.get(REQUIRED_RASTER_REQUEST_PARAMS[2]);
+        double lrlon = requestParams.get(REQUIRED_RASTER_REQUEST_PARAMS[3]);
+        double w = requestParams.get(REQUIRED_RASTER_REQUEST_PARAMS[4]);
+
+        if (notCovered(ullon, ullat, lrlon, lrlat)) {
             // "render_grid", "raster_ul_lon", "raster_ul_lat",
             // "raster_lr_lon", "raster_lr_lat", "depth", "query_success"
             /*
@@ -173,7 +165,7 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
         return ((ROOT_ULLAT - s) * num / (ROOT_ULLAT - ROOT_LRLAT));
     }
 
-    private boolean notCovered() {
+    private boolean notCovered(double ullon, double ullat, double lrlon, double lrlat) {
         return ((ullon > ROOT_LRLON) || (lrlon < ROOT_ULLON) || (ullat < ROOT_LRLAT) || (lrlat > ROOT_ULLAT));
     }
 
@@ -258,21 +250,41 @@ public class RasterAPIHandler extends APIRouteHandler<Map<String, Double>, Map<S
 
         final double wdpp = (lrlon - ullon) / img.getWidth();
         final double hdpp = (ullat - lrlat) / img.getHeight();
-        AugmentedStreetMapGraph graph = SEMANTIC_STREET_GRAPH;
-        List<Long> route = ROUTE_LIST;
+        IndexedStreetGraph graph = SEMANTIC_STREET_GRAPH.indexed();
+        List<Long> route = ROUTE.get();
 
-        if (route != null && !route.isEmpty()) {
-            Graphics2D g2d = (Graphics2D) graphic;
-            g2d.setColor(Constants.ROUTE_STROKE_COLOR);
-            g2d.setStroke(new BasicStroke(Constants.ROUTE_STROKE_WIDTH_PX,
+        Graphics2D g2d = (Graphics2D) graphic;
+        if (Constants.DRAW_ROADS) {
+            g2d.setColor(Constants.ROAD_STROKE_COLOR);
+            g2d.setStroke(new BasicStroke(Constants.ROAD_STROKE_WIDTH_PX,
                     BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
-            route.stream().reduce((v, w) -> {
+            /* Only the roads in the raster, from the spatial index. */
+            SEMANTIC_STREET_GRAPH.edgesInBox(ullon, ullat, lrlon, lrlat, (v, w) ->
                 g2d.drawLine((int) ((graph.lon(v) - ullon) * (1 / wdpp)),
                         (int) ((ullat - graph.lat(v)) * (1 / hdpp)),
                         (int) ((graph.lon(w) - ullon) * (1 / wdpp)),
-                        (int) ((ullat - graph.lat(w)) * (1 / hdpp)));
-                return w;
-            });
+                        (int) ((ullat - graph.lat(w)) * (1 / hdpp))));
+        }
+
+        if (route != null && !route.isEmpty()) {
+            g2d.setColor(Constants.ROUTE_STROKE_COLOR);
+            g2d.setStroke(new BasicStroke(Constants.ROUTE_STROKE_WIDTH_PX,
+                    BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            for (int i = 0; i + 1 < route.size(); i++) {
+                int v = graph.indexOf(route.get(i));
+                int w = graph.indexOf(route.get(i + 1));
+                /* Skip the parts of the route that can't cross the raster. */
+                if (v >= 0 && w >= 0
+                        && Math.max(graph.lon(v), graph.lon(w)) >= ullon
+                        && Math.min(graph.lon(v), graph.lon(w)) <= lrlon
+                        && Math.max(graph.lat(v), graph.lat(w)) >= lrlat
+                        && Math.min(graph.lat(v), graph.lat(w)) <= ullat) {
+                    g2d.drawLine((int) ((graph.lon(v) - ullon) * (1 / wdpp)),
+                            (int) ((ullat - graph.lat(v)) * (1 / hdpp)),
+                            (int) ((graph.lon(w) - ullon) * (1 / wdpp)),
+                            (int) ((ullat - graph.lat(w)) * (1 / hdpp)));
+                }
+            }
         }
 
         rasteredImageParams.put("raster_width", img.getWidth());
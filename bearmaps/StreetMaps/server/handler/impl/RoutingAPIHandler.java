@@ -1,5 +1,6 @@
 package bearmaps.proj2d.server.handler.impl;
 
+import bearmaps.proj2c.CancellationToken;
 import bearmaps.proj2d.Router;
 import bearmaps.proj2d.server.handler.APIRouteHandler;
 import spark.Request;
@@ -9,8 +10,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static bearmaps.proj2d.utils.Constants.ROUTE_REQUEST_BUDGET;
 import static bearmaps.proj2d.utils.Constants.SEMANTIC_STREET_GRAPH;
-import static bearmaps.proj2d.utils.Constants.ROUTE_LIST;
+import static bearmaps.proj2d.utils.Constants.ROUTE;
 
 /**
  * Handles requests from the web browser for routes between locations. The
@@ -38,13 +40,16 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
      * street directions between the given points. THis method has been
      * completed for you.
      *
-     * The route to draw on the map should be added to the end of
-     * bearmaps.proj2d.utils.Constants.ROUTE_LIST. This is a LinkedList of longs,
+     * The route to draw on the map replaces the one in
+     * bearmaps.proj2d.utils.Constants.ROUTE. This is a List of longs,
      * where each long corresponds to one point on the map.
      *
      * Street directions can also be provided in the form of text as a return
      * value to this function.
      *
+     * The search gives up after ROUTE_REQUEST_BUDGET seconds, in which case no
+     * route is drawn.
+     *
      * @param requestParams Map of the HTTP GET request's query parameters - the starting lat/long
      *                      and the destination lat/lon.
      *
@@ -58,12 +63,13 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
      */
     @Override
     protected Map<String, Object> processRequest(Map<String, Double> requestParams, Response response) {
+        CancellationToken token = new CancellationToken(ROUTE_REQUEST_BUDGET);
         List<Long> route = Router.shortestPath(
                 SEMANTIC_STREET_GRAPH,
                 requestParams.get("start_lon"), requestParams.get("start_lat"),
-                requestParams.get("end_lon"), requestParams.get("end_lat"));
-        ROUTE_LIST.addAll(route);
-        String directions = getDirectionsText();
+                requestParams.get("end_lon"), requestParams.get("end_lat"), token);
+        ROUTE.set(route);
+        String directions = getDirectionsText(route);
 
         Map<String, Object> routeParams = new HashMap<>();
         routeParams.put("routing_success", !route.isEmpty());
@@ -73,12 +79,12 @@ public class RoutingAPIHandler extends APIRouteHandler<Map<String, Double>, Map<
     }
 
     /**
-     * Takes the route of this MapServer and converts it into an HTML friendly
+     * Takes the route found for this request and converts it into an HTML friendly
      * String to be passed to the frontend.
      */
-    private String getDirectionsText() {
+    private String getDirectionsText(List<Long> route) {
 
-        List<Router.NavigationDirection> directions = Router.routeDirections(SEMANTIC_STREET_GRAPH, ROUTE_LIST);
+        List<Router.NavigationDirection> directions = Router.routeDirections(SEMANTIC_STREET_GRAPH, route);
         if (directions == null || directions.isEmpty()) {
             return "";
         }
@@ -0,0 +1,110 @@
+package bearmaps.proj2d.server.handler.impl;
+
+import bearmaps.proj2d.Router;
+import bearmaps.proj2d.server.handler.APIRouteHandler;
+import bearmaps.proj2d.utils.Tuple;
+import spark.Request;
+import spark.Response;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static bearmaps.proj2d.utils.Constants.SEMANTIC_STREET_GRAPH;
+import static spark.Spark.halt;
+
+/**
+ * Handles requests for the distances between every one of a list of origins and
+ * every one of a list of destinations, e.g. for picking the closest of several
+ * places or planning a tour.
+ */
+public class TableAPIHandler extends APIRouteHandler<Tuple<List<Long>, List<Long>>,
+        Map<String, Object>> {
+
+    /** Requests asking for more entries than this are refused. */
+    private static final int MAX_TABLE_ENTRIES = 10000;
+
+    /**
+     * Each table request has the following parameters, each a list of
+     * semicolon separated lon,lat pairs:<br>
+     * sources : the origins, one per row of the table,<br>
+     * targets : the destinations, one per column of the table.
+     */
+    private static final String[] REQUIRED_TABLE_REQUEST_PARAMS = {"sources", "targets"};
+
+    /** Snaps every location in the request to the closest node of the graph. */
+    @Override
+    protected Tuple<List<Long>, List<Long>> parseRequestParams(Request request) {
+        for (String param : REQUIRED_TABLE_REQUEST_PARAMS) {
+            if (request.queryParams(param) == null) {
+                halt(HALT_RESPONSE, "Request failed - parameters missing.");
+            }
+        }
+        List<Long> sources = parseLocations(request.queryParams("sources"));
+        List<Long> targets = parseLocations(request.queryParams("targets"));
+        if ((long) sources.size() * targets.size() > MAX_TABLE_ENTRIES) {
+            halt(HALT_RESPONSE, "Request failed - table too large.");
+        }
+        return new Tuple<>(sources, targets);
+    }
+
+    /* Returns the closest node to each lon,lat pair in LOCATIONS. */
+    private List<Long> parseLocations(String locations) {
+        List<Long> nodes = new ArrayList<>();
+        for (String location : locations.split(";")) {
+            String[] lonLat = location.split(",");
+            if (lonLat.length != 2) {
+                halt(HALT_RESPONSE, "Incorrect parameters - provide lon,lat pairs.");
+            }
+            try {
+                nodes.add(SEMANTIC_STREET_GRAPH.closest(
+                        Double.parseDouble(lonLat[0].trim()), Double.parseDouble(lonLat[1].trim())));
+            } catch (NumberFormatException e) {
+                e.printStackTrace();
+                halt(HALT_RESPONSE, "Incorrect parameters - provide numbers.");
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Computes the distance table between the snapped locations.
+     * @param requestParams The node closest to each source and to each target.
+     * @param response Not used by this function.
+     * @return A map of results for the front end as specified: <br>
+     * "sources" : List of the node ids the sources were snapped to. <br>
+     * "targets" : List of the node ids the targets were snapped to. <br>
+     * "distances" : Array of rows, one per source, of the distance to each
+     *               target, or null if the target can't be reached. <br>
+     * "table_success" : Boolean, whether every target can be reached from every source.
+     */
+    @Override
+    protected Map<String, Object> processRequest(Tuple<List<Long>, List<Long>> requestParams,
+                                                 Response response) {
+        List<Long> sources = requestParams.getFirst();
+        List<Long> targets = requestParams.getSecond();
+        double[][] matrix = Router.distanceMatrix(SEMANTIC_STREET_GRAPH, sources, targets);
+
+        /* JSON has no infinity, so unreachable entries are sent as null. */
+        boolean complete = true;
+        Double[][] distances = new Double[matrix.length][];
+        for (int i = 0; i < matrix.length; i++) {
+            distances[i] = new Double[matrix[i].length];
+            for (int j = 0; j < matrix[i].length; j++) {
+                if (matrix[i][j] == Double.POSITIVE_INFINITY) {
+                    complete = false;
+                } else {
+                    distances[i][j] = matrix[i][j];
+                }
+            }
+        }
+
+        Map<String, Object> tableParams = new HashMap<>();
+        tableParams.put("sources", sources);
+        tableParams.put("targets", targets);
+        tableParams.put("distances", distances);
+        tableParams.put("table_success", complete);
+        return tableParams;
+    }
+}
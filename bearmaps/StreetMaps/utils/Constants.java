@@ -3,8 +3,8 @@ package bearmaps.proj2d.utils;
 import bearmaps.proj2d.AugmentedStreetMapGraph;
 
 import java.awt.*;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A class holding all the constant values used throughout the project
@@ -27,6 +27,57 @@ public class Constants {
      **/
     public static final String OSM_DB_PATH = "../library-fa20/data/proj2d_xml/berkeley-2019.osm.xml";
 
+    /**
+     * The binary snapshot of the OSM XML file, written by running
+     * bearmaps.proj2d.AugmentedStreetMapGraph. The server starts from it when it
+     * exists and parses the XML file otherwise.
+     */
+    public static final String SNAPSHOT_PATH = "../library-fa20/data/proj2d_xml/berkeley-2019.snap";
+
+    /**
+     * The contraction hierarchy for the OSM XML file, written by
+     * bearmaps.proj2c.streetmap.HierarchyBuilder. Routing falls back to plain A*
+     * if the file doesn't exist.
+     */
+    public static final String CH_PATH = "../library-fa20/data/proj2d_xml/berkeley-2019.ch";
+
+    /**
+     * The ALT landmark tables for the OSM XML file, written by
+     * bearmaps.proj2c.streetmap.Landmarks. Only used when there is no contraction
+     * hierarchy; A* uses the great-circle distance if the file doesn't exist.
+     */
+    public static final String LANDMARKS_PATH = "../library-fa20/data/proj2d_xml/berkeley-2019.alt";
+
+    /**
+     * How many seconds a route search may take before it gives up, unless the
+     * caller gives it a CancellationToken of its own.
+     */
+    public static final double ROUTE_TIMEOUT = 5.0;
+
+    /**
+     * How many seconds the server spends on a route request before answering
+     * without a route, so abandoned requests don't keep a core busy.
+     */
+    public static final double ROUTE_REQUEST_BUDGET = 2.0;
+
+    /**
+     * How many routes the route cache can hold, counted as the total number of
+     * nodes on them plus one per route.
+     */
+    public static final long ROUTE_CACHE_WEIGHT = 500000;
+
+    /**
+     * Whether AugmentedStreetMapGraph.closest answers from a precomputed grid
+     * over the root tile, falling back to its KDTree only where the grid can't.
+     */
+    public static final boolean USE_SNAP_GRID = true;
+
+    /**
+     * Whether routes start and end at the nearest point on the nearest road,
+     * possibly between two nodes, instead of at the nearest node.
+     */
+    public static final boolean SNAP_TO_EDGES = true;
+
     /** The tile images are in the IMG_ROOT folder. */
     public static final String IMG_ROOT = "../library-fa20/data/proj2d_imgs/";
 
@@ -36,14 +87,29 @@ public class Constants {
     /** Route stroke information: typically roads are not more than 5px wide. */
     public static final float ROUTE_STROKE_WIDTH_PX = 5.0f;
 
+    /**
+     * Whether rastered images also get every road in them drawn over the tiles,
+     * e.g. to check the street data against the imagery.
+     */
+    public static final boolean DRAW_ROADS = false;
+
+    /** Road stroke information: dark gray with some transparency. */
+    public static final Color ROAD_STROKE_COLOR = new Color(64, 64, 64, 160);
+
+    /** Road stroke information: thinner than the route, so the route stays on top. */
+    public static final float ROAD_STROKE_WIDTH_PX = 2.0f;
+
     /** Each tile is 256x256 pixels. */
     public static final int TILE_SIZE = 256;
 
     public static AugmentedStreetMapGraph SEMANTIC_STREET_GRAPH;
 
     /**
-     * This is used to maintain a single List of route so that the same instance(object) is accessed
-     * from everywhere in the code. Enum is a cleaner way to achieve such a singleton pattern.
+     * The route drawn on rastered images. The map shows one route at a time, so
+     * there is a single one for the whole server, kept on purpose. Requests only
+     * ever swap in a whole new route, never edit the current one, so concurrent
+     * requests can't join two routes together and readers always see a
+     * complete route; the last request to set it wins.
      */
-    public static final List<Long> ROUTE_LIST = new LinkedList<>();
+    public static final AtomicReference<List<Long>> ROUTE = new AtomicReference<>(List.of());
 }